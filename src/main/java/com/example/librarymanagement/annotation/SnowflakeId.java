@@ -0,0 +1,16 @@
+package com.example.librarymanagement.annotation;
+
+import com.example.librarymanagement.util.SnowflakeIdentifierGenerator;
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Đánh dấu @Id kiểu Long được sinh bởi SnowflakeIdGenerator trước khi INSERT
+@IdGeneratorType(SnowflakeIdentifierGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface SnowflakeId {
+}
@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 @Configuration
 public class AwsConfig {
@@ -17,4 +18,12 @@ public class AwsConfig {
                 .region(Region.of(awsRegion))
                 .build();
     }
+
+    // Dùng chung cho mọi lần presign: credentials / region chỉ resolve một lần, Spring gọi close() khi tắt
+    @Bean
+    public S3Presigner s3Presigner() {
+        return S3Presigner.builder()
+                .region(Region.of(awsRegion))
+                .build();
+    }
 }
@@ -0,0 +1,10 @@
+package com.example.librarymanagement.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Bật @Scheduled cho các tác vụ định kỳ (flush presence, last-seen, ...)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
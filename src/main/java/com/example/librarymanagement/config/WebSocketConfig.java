@@ -1,15 +1,60 @@
 package com.example.librarymanagement.config;
 
+import com.example.librarymanagement.handler.CustomHandshakeInterceptor;
+import com.example.librarymanagement.handler.SendBufferHandlerDecoratorFactory;
+import com.example.librarymanagement.handler.StompAuthInterceptor;
+import com.example.librarymanagement.handler.UserHandshakeHandler;
+import com.example.librarymanagement.handler.UserPresenceInterceptor;
+import com.example.librarymanagement.handler.WireFormatConverter;
+import com.example.librarymanagement.handler.WireFormatInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    private final CustomHandshakeInterceptor customHandshakeInterceptor;
+    private final UserHandshakeHandler userHandshakeHandler;
+    private final StompAuthInterceptor stompAuthInterceptor;
+    private final UserPresenceInterceptor userPresenceInterceptor;
+    private final WireFormatInterceptor wireFormatInterceptor;
+    private final SendBufferHandlerDecoratorFactory sendBufferHandlerDecoratorFactory;
+    private final int sendTimeLimitMs;
+    private final int sendBufferSizeLimit;
+    private final int messageSizeLimit;
+    private final WebSocketExecutorMode executorMode;
+
+    public WebSocketConfig(CustomHandshakeInterceptor customHandshakeInterceptor,
+                           UserHandshakeHandler userHandshakeHandler,
+                           StompAuthInterceptor stompAuthInterceptor,
+                           UserPresenceInterceptor userPresenceInterceptor,
+                           WireFormatInterceptor wireFormatInterceptor,
+                           SendBufferHandlerDecoratorFactory sendBufferHandlerDecoratorFactory,
+                           @Value("${chat.websocket.send-time-limit-ms}") int sendTimeLimitMs,
+                           @Value("${chat.websocket.send-buffer-size-limit}") int sendBufferSizeLimit,
+                           @Value("${chat.websocket.message-size-limit}") int messageSizeLimit,
+                           @Value("${chat.websocket.executor-mode}") WebSocketExecutorMode executorMode) {
+        this.customHandshakeInterceptor = customHandshakeInterceptor;
+        this.userHandshakeHandler = userHandshakeHandler;
+        this.stompAuthInterceptor = stompAuthInterceptor;
+        this.userPresenceInterceptor = userPresenceInterceptor;
+        this.wireFormatInterceptor = wireFormatInterceptor;
+        this.sendBufferHandlerDecoratorFactory = sendBufferHandlerDecoratorFactory;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+        this.messageSizeLimit = messageSizeLimit;
+        this.executorMode = executorMode;
+    }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
@@ -22,19 +67,70 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.setApplicationDestinationPrefixes("/app");
         // Prefix for user-specific destinations
         config.setUserDestinationPrefix("/user");
+        // Frame gửi tới cùng một session được chuyển xuống clientOutboundChannel theo đúng thứ tự publish,
+        // bắt buộc ở mọi chế độ executor vì client dựa vào seq liên tục để phát hiện frame bị mất
+        config.setPreservePublishOrder(true);
     }
 
-    // Khai báo endpoint mà client sẽ kết nối WebSocket tới backend
+    /*
+     * Khai báo endpoint mà client sẽ kết nối WebSocket tới backend:
+     * /ws-native → WebSocket thuần (không framing SockJS), hỗ trợ permessage-deflate và binary frame (CBOR)
+     * /ws        → SockJS, fallback cho client / mạng không dùng được WebSocket
+     * */
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(customHandshakeInterceptor)
+                .setHandshakeHandler(userHandshakeHandler);
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
+                .addInterceptors(customHandshakeInterceptor) // ?token= của client cũ, xác thực ở CONNECT
+                .setHandshakeHandler(userHandshakeHandler)
                 .withSockJS();
+        // Frame từ cùng một session được xử lý tuần tự trên clientInboundChannel
+        registry.setPreserveReceiveOrder(executorMode == WebSocketExecutorMode.VIRTUAL);
     }
 
+    /*
+     * Giới hạn gửi theo từng session. Buffer thực sự nằm trong SendBufferSessionDecorator
+     * (áp dụng SlowConsumerPolicy); giới hạn của Spring đặt cùng giá trị làm lưới an toàn.
+     * */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit) // frame client gửi lên
+                .addDecoratorFactory(sendBufferHandlerDecoratorFactory);
+    }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-//        registration.interceptors(preses)
+        // Xác thực CONNECT đứng đầu: các interceptor sau đã thấy StompPrincipal của session
+        registration.interceptors(stompAuthInterceptor, userPresenceInterceptor, wireFormatInterceptor);
+        if (executorMode == WebSocketExecutorMode.VIRTUAL) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Encode payload theo định dạng (JSON / CBOR) mà từng session đã chọn khi CONNECT
+        registration.interceptors(wireFormatInterceptor);
+        if (executorMode == WebSocketExecutorMode.VIRTUAL) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-outbound-"));
+        }
+    }
+
+    /*
+     * Outbound: WireFormatConverter đứng đầu để object được encode muộn theo session nhận.
+     * Inbound: converter CBOR chỉ nhận frame SEND có content-type application/cbor, còn lại vẫn là JSON.
+     * Trả về true để giữ các converter mặc định (String, byte[], JSON).
+     * */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(0, new WireFormatConverter());
+        messageConverters.add(wireFormatInterceptor.createCborConverter());
+        return true;
     }
 }
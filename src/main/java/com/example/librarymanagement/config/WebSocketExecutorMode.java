@@ -0,0 +1,13 @@
+package com.example.librarymanagement.config;
+
+/*
+ * Executor chạy clientInboundChannel / clientOutboundChannel và pool ghi socket (ws-send).
+ * PLATFORM: pool thread cố định mặc định của Spring.
+ * VIRTUAL:  mỗi task một virtual thread; handler block (ghi DB, presign S3) không chiếm thread của client khác.
+ *           Vì không còn giới hạn số thread, thứ tự frame trong từng session được giữ bằng hàng đợi tuần tự
+ *           theo session (preserveReceiveOrder / preservePublishOrder).
+ * */
+public enum WebSocketExecutorMode {
+    PLATFORM,
+    VIRTUAL
+}
@@ -0,0 +1,119 @@
+package com.example.librarymanagement.controller;
+
+import com.example.librarymanagement.dto.ApiResponse;
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.MessageRead;
+import com.example.librarymanagement.dto.chat.ResumeRequest;
+import com.example.librarymanagement.dto.chat.TypingIndicator;
+import com.example.librarymanagement.exception.BadRequestException;
+import com.example.librarymanagement.exception.MessageQueueFullException;
+import com.example.librarymanagement.exception.ResourceNotFoundException;
+import com.example.librarymanagement.exception.UnauthorizedException;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.MessageIngestService;
+import com.example.librarymanagement.service.inter.ReadReceiptService;
+import com.example.librarymanagement.service.inter.TypingRelayService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.util.ChatMessageMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.stereotype.Controller;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+@Slf4j
+@Controller
+@RequiredArgsConstructor
+public class ChatController {
+    private final MessageIngestService messageIngestService;
+    private final ChatDeliveryService chatDeliveryService;
+    private final TypingRelayService typingRelayService;
+    private final ReadReceiptService readReceiptService;
+    private final UserCardService userCardService;
+
+    // Client gửi tới /app/chat.send
+    @MessageMapping("/chat.send")
+    public void sendMessage(@Payload ChatMessage message, SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        // Chỉ lấy các field client được phép gửi, người gửi luôn lấy từ session
+        ChatMessage request = ChatMessage.builder()
+                .clientMessageId(message.getClientMessageId())
+                .conversationId(message.getConversationId())
+                .parentId(message.getParentId())
+                .content(message.getContent())
+                .sender(getUserId(headerAccessor))
+                .build();
+
+        messageIngestService.submit(request).whenComplete((saved, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                chatDeliveryService.sendToSession(sessionId, "/queue/errors", toError(cause));
+                return;
+            }
+            // Ack chỉ gửi cho session đã gửi tin nhắn, sau khi batch đã commit
+            chatDeliveryService.sendToSession(sessionId, "/queue/ack", saved);
+            // Bản gửi đi mới gắn người gửi, bản trong cache / inbox giữ nguyên để tên và avatar luôn lấy mới
+            ChatMessage outbound = ChatMessageMapper.withSender(saved, userCardService.getCard(saved.getSender()));
+            chatDeliveryService.deliverToConversation(saved.getConversationId(), outbound);
+        });
+    }
+
+    // Client gửi tới /app/chat.typing, frame được gom và phát theo tick tới /user/queue/typing
+    @MessageMapping("/chat.typing")
+    public void typing(@Payload TypingIndicator indicator, SimpMessageHeaderAccessor headerAccessor) {
+        indicator.setUserId(getUserId(headerAccessor));
+        typingRelayService.onTyping(indicator);
+    }
+
+    // Client gửi tới /app/chat.read, read pointer được gộp và phát theo tick tới /user/queue/read
+    @MessageMapping("/chat.read")
+    public void markRead(@Payload MessageRead read, SimpMessageHeaderAccessor headerAccessor) {
+        read.setUserId(getUserId(headerAccessor));
+        readReceiptService.onRead(read);
+    }
+
+    /*
+     * Client gửi tới /app/chat.resume sau khi kết nối lại và subscribe xong (frame tới destination chưa subscribe bị bỏ),
+     * kèm seq lớn nhất đã nhận. Frame bị lỡ được gửi lại với seq gốc, sau đó là ResumeState trên /user/queue/resume.
+     * */
+    @MessageMapping("/chat.resume")
+    public void resume(@Payload ResumeRequest request, SimpMessageHeaderAccessor headerAccessor) {
+        Integer userId = getUserId(headerAccessor);
+        long lastSeq = request.getLastSeq() != null ? request.getLastSeq() : -1;
+        chatDeliveryService.resume(userId, headerAccessor.getSessionId(), lastSeq);
+    }
+
+    @MessageExceptionHandler
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public ApiResponse<Void> handleException(RuntimeException ex) {
+        return toError(ex);
+    }
+
+    /*
+     * Chỉ các exception do ứng dụng chủ động ném (lỗi của request) mới trả message cho client.
+     * Lỗi còn lại (JDBC, I/O...) có thể chứa SQL, tên bảng, đường dẫn → log chi tiết, client nhận thông báo chung.
+     * */
+    private ApiResponse<Void> toError(Throwable cause) {
+        if (cause instanceof BadRequestException || cause instanceof ResourceNotFoundException
+                || cause instanceof UnauthorizedException || cause instanceof MessageQueueFullException) {
+            return ApiResponse.error("Message not sent", cause.getMessage());
+        }
+        log.error("Chat message failed", cause);
+        return ApiResponse.error("Message not sent", "An unexpected error occurred");
+    }
+
+    private Integer getUserId(SimpMessageHeaderAccessor headerAccessor) {
+        Map<String, Object> attributes = headerAccessor.getSessionAttributes();
+        Object userId = attributes != null ? attributes.get("userId") : null;
+        if (userId == null) {
+            throw new UnauthorizedException("WebSocket session is not authenticated");
+        }
+        return (Integer) userId;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.librarymanagement.controller;
+
+import com.example.librarymanagement.dto.ApiResponse;
+import com.example.librarymanagement.dto.chat.AddMemberRequest;
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.EditMessageRequest;
+import com.example.librarymanagement.dto.chat.InboxItem;
+import com.example.librarymanagement.dto.chat.MessageRead;
+import com.example.librarymanagement.dto.chat.UpdateMemberRoleRequest;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.service.inter.ConversationService;
+import com.example.librarymanagement.service.inter.InboxService;
+import com.example.librarymanagement.service.inter.ReadReceiptService;
+import com.example.librarymanagement.service.inter.UnreadCountService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/conversations")
+@RequiredArgsConstructor
+public class ConversationController {
+    private final ConversationService conversationService;
+    private final ReadReceiptService readReceiptService;
+    private final UnreadCountService unreadCountService;
+    private final InboxService inboxService;
+
+    // Danh sách conversation của user hiện tại, mới hoạt động trước; ?before=<activityId> → trang tiếp theo
+    @GetMapping("/inbox")
+    public ResponseEntity<ApiResponse<CursorPage<InboxItem>>> getInbox(
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "30") int limit,
+            Authentication authentication
+    ) {
+        CursorPage<InboxItem> inbox = inboxService.getInbox(before, limit, authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully", inbox));
+    }
+
+    // conversationId → số tin chưa đọc cho mọi conversation của user hiện tại, phục vụ từ bộ nhớ
+    @GetMapping("/unread-counts")
+    public ResponseEntity<ApiResponse<Map<Long, Integer>>> getUnreadCounts(Authentication authentication) {
+        Map<Long, Integer> counts = unreadCountService.getUnreadCounts(authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully", counts));
+    }
+
+    // Không truyền cursor → trang mới nhất; ?before=<id> → cũ hơn; ?after=<id> → mới hơn
+    @GetMapping("/{conversationId}/messages")
+    public ResponseEntity<ApiResponse<CursorPage<ChatMessage>>> getMessages(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int limit,
+            Authentication authentication
+    ) {
+        CursorPage<ChatMessage> messages = conversationService.getMessages(conversationId,
+                before,
+                after,
+                limit,
+                authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully", messages));
+    }
+
+    // Read pointer đã gộp của user hiện tại, phục vụ từ bộ nhớ
+    @GetMapping("/{conversationId}/read-pointer")
+    public ResponseEntity<ApiResponse<MessageRead>> getReadPointer(@PathVariable Long conversationId,
+                                                                   Authentication authentication) {
+        MessageRead pointer = readReceiptService.getReadPointer(conversationId, authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully", pointer));
+    }
+
+    @PutMapping("/{conversationId}/messages/{messageId}")
+    public ResponseEntity<ApiResponse<ChatMessage>> editMessage(@PathVariable Long conversationId,
+                                                                @PathVariable Long messageId,
+                                                                @Valid @RequestBody EditMessageRequest req,
+                                                                Authentication authentication) {
+        ChatMessage message = conversationService.editMessage(conversationId,
+                messageId,
+                req.getContent(),
+                authentication);
+        return ResponseEntity.ok(ApiResponse.success("Message updated successfully", message));
+    }
+
+    @DeleteMapping("/{conversationId}/messages/{messageId}")
+    public ResponseEntity<Void> deleteMessage(@PathVariable Long conversationId,
+                                              @PathVariable Long messageId,
+                                              Authentication authentication) {
+        conversationService.deleteMessage(conversationId, messageId, authentication);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/{conversationId}/members")
+    public ResponseEntity<ApiResponse<Void>> addMember(@PathVariable Long conversationId,
+                                                       @Valid @RequestBody AddMemberRequest req,
+                                                       Authentication authentication) {
+        conversationService.addMember(conversationId, req, authentication);
+        return ResponseEntity.ok(ApiResponse.success("Member added successfully"));
+    }
+
+    @PatchMapping("/{conversationId}/members/{userId}")
+    public ResponseEntity<ApiResponse<Void>> updateMemberRole(@PathVariable Long conversationId,
+                                                              @PathVariable Integer userId,
+                                                              @Valid @RequestBody UpdateMemberRoleRequest req,
+                                                              Authentication authentication) {
+        conversationService.updateMemberRole(conversationId, userId, req, authentication);
+        return ResponseEntity.ok(ApiResponse.success("Member role updated successfully"));
+    }
+
+    @DeleteMapping("/{conversationId}/members/{userId}")
+    public ResponseEntity<Void> removeMember(@PathVariable Long conversationId,
+                                             @PathVariable Integer userId,
+                                             Authentication authentication) {
+        conversationService.removeMember(conversationId, userId, authentication);
+        return ResponseEntity.noContent().build();
+    }
+}
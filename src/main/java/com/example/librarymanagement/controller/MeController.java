@@ -1,8 +1,10 @@
 package com.example.librarymanagement.controller;
 
 import com.example.librarymanagement.dto.ApiResponse;
+import com.example.librarymanagement.dto.chat.OfflineBatch;
 import com.example.librarymanagement.dto.user.request.EmailChangeRequest;
 import com.example.librarymanagement.dto.user.response.UserResponse;
+import com.example.librarymanagement.service.inter.OfflineQueueService;
 import com.example.librarymanagement.service.inter.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class MeController {
     private final UserService userService;
+    private final OfflineQueueService offlineQueueService;
 
     @GetMapping
     public ResponseEntity<ApiResponse<UserResponse>> getMe(Authentication authentication) {
@@ -41,4 +44,21 @@ public class MeController {
         userService.confirmEmailChange(token);
         return ResponseEntity.ok(ApiResponse.success("Email update successfully"));
     }
+
+    // Tin nhắn đến trong lúc user offline, gọi sau khi đăng nhập; ?from=<nextOffset> → lô tiếp theo
+    @GetMapping("/offline-messages")
+    public ResponseEntity<ApiResponse<OfflineBatch>> getOfflineMessages(@RequestParam(required = false) Long from,
+                                                                        @RequestParam(defaultValue = "200") int limit,
+                                                                        Authentication authentication) {
+        OfflineBatch batch = offlineQueueService.getPending(from, limit, authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully", batch));
+    }
+
+    // Client đã lưu mọi tin nhắn trước offset (nextOffset của lô cuối cùng đã xử lý)
+    @PostMapping("/offline-messages/ack")
+    public ResponseEntity<ApiResponse<Void>> acknowledgeOfflineMessages(@RequestParam long offset,
+                                                                        Authentication authentication) {
+        offlineQueueService.acknowledge(offset, authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully"));
+    }
 }
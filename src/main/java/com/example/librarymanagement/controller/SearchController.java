@@ -0,0 +1,37 @@
+package com.example.librarymanagement.controller;
+
+import com.example.librarymanagement.dto.ApiResponse;
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.service.inter.MessageSearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequiredArgsConstructor
+public class SearchController {
+    private final MessageSearchService messageSearchService;
+
+    // ?q="cụm từ chính xác" hoặc ?q=từ khoá (từ cuối khớp tiền tố); ?before=<id> → trang tiếp theo
+    @GetMapping("/search/messages")
+    public ResponseEntity<ApiResponse<CursorPage<ChatMessage>>> searchMessages(
+            @RequestParam Integer workspaceId,
+            @RequestParam("q") String query,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "20") int limit,
+            Authentication authentication
+    ) {
+        CursorPage<ChatMessage> results = messageSearchService.search(workspaceId, query, before, limit, authentication);
+        return ResponseEntity.ok(ApiResponse.success("successfully", results));
+    }
+
+    @PostMapping("/admin/search/reindex")
+    public ResponseEntity<ApiResponse<Void>> reindex() {
+        if (!messageSearchService.startReindex()) {
+            return ResponseEntity.ok(ApiResponse.success("Reindex is already running"));
+        }
+        return ResponseEntity.accepted().body(ApiResponse.success("Reindex started"));
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.librarymanagement.dto.chat;
+
+import com.example.librarymanagement.entity.ConversationMember;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AddMemberRequest {
+    @NotNull(message = "User ID is required")
+    private Integer userId;
+
+    private ConversationMember.ConversationMemberRole role; // Mặc định MEMBER
+}
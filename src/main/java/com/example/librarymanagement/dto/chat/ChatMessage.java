@@ -6,17 +6,20 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatMessage {
-    private Integer id;
-    private Integer conversationId;
+    private Long id;
+    private String clientMessageId; // ID tạm do client sinh ra, dùng để khớp ack với tin nhắn đã gửi
+    private Long conversationId;
     private Integer sender;
-    private Integer parentId; // Dùng nếu có tin nhắn trả lời (reply) → ID của tin nhắn gốc
+    private Long parentId; // Dùng nếu có tin nhắn trả lời (reply) → ID của tin nhắn gốc
+    private ParentPreview parent; // Chỉ có trong lịch sử tin nhắn
     private String content;
     private String senderName;
     private String senderAvatar;
     private Long createdAt;
     private Long updatedAt;
+    private Long deletedAt; // Tin nhắn đã bị xoá (soft delete) → content = null
 }
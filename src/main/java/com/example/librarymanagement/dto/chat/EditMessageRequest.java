@@ -0,0 +1,16 @@
+package com.example.librarymanagement.dto.chat;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EditMessageRequest {
+    @NotBlank(message = "Content is required")
+    private String content;
+}
@@ -0,0 +1,21 @@
+package com.example.librarymanagement.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+// Một dòng trong danh sách conversation của user
+public class InboxItem {
+    private Long conversationId;
+    private String name;
+    private String type;
+    private ChatMessage lastMessage; // null nếu conversation chưa có tin nhắn
+    private Integer unreadCount;
+    // Id tin nhắn cuối (hoặc id conversation nếu chưa có tin nhắn); snowflake nên tăng theo thời gian → dùng làm cursor
+    private Long activityId;
+}
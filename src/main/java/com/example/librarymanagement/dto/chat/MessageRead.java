@@ -1,8 +1,17 @@
 package com.example.librarymanagement.dto.chat;
 
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
 public class MessageRead {
     private Integer userId; // ID của người dùng đã đọc tin nhắn
-    private Integer conversationId;
-    private Integer lastMessageId;
+    private Long conversationId;
+    private Long lastMessageId;
     private Long readAt;
 }
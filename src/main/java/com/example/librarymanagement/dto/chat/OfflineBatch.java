@@ -0,0 +1,22 @@
+package com.example.librarymanagement.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+/*
+ * Một lô tin nhắn đến trong lúc user offline, theo thứ tự commit (cũ → mới).
+ * nextOffset truyền vào ?from= để đọc tiếp và vào /ack sau khi client đã lưu các tin nhắn này.
+ * */
+public class OfflineBatch {
+    private List<ChatMessage> messages;
+    private Long nextOffset;
+    private Boolean hasMore;
+}
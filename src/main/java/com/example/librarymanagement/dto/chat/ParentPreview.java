@@ -0,0 +1,18 @@
+package com.example.librarymanagement.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+// Trích dẫn rút gọn của tin nhắn được trả lời, đủ để hiển thị mà không cần tải tin nhắn gốc
+public class ParentPreview {
+    private Long id;
+    private Integer sender;
+    private String content; // Tối đa PREVIEW_LENGTH ký tự, null nếu tin nhắn gốc đã bị xoá
+    private Boolean deleted;
+}
@@ -0,0 +1,15 @@
+package com.example.librarymanagement.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+// Client gửi sau khi kết nối lại và subscribe: seq lớn nhất đã nhận trên /user/queue/**
+public class ResumeRequest {
+    private Long lastSeq;
+}
@@ -0,0 +1,22 @@
+package com.example.librarymanagement.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+/*
+ * Kết quả resume, gửi tới /user/queue/resume sau các frame được replay.
+ * resync = true: replay buffer không còn đủ frame để lấp khoảng trống, client phải tải lại inbox / lịch sử
+ * và coi seq là điểm bắt đầu mới.
+ * */
+public class ResumeState {
+    private Boolean resync;
+    private Integer replayed;
+    // seq mới nhất đã cấp cho user tại thời điểm resume
+    private Long seq;
+}
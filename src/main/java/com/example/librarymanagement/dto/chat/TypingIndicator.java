@@ -11,6 +11,6 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class TypingIndicator {
     private Integer userId;
-    private Integer conversationId;
+    private Long conversationId;
     private Boolean typing;
 }
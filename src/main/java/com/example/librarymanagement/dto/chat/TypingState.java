@@ -0,0 +1,19 @@
+package com.example.librarymanagement.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+// Danh sách đầy đủ những người đang gõ trong một conversation (thay thế hoàn toàn trạng thái trước đó ở client)
+public class TypingState {
+    private Long conversationId;
+    private List<Integer> typingUserIds;
+    private Long timestamp;
+}
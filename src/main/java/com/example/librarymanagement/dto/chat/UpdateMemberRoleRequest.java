@@ -0,0 +1,17 @@
+package com.example.librarymanagement.dto.chat;
+
+import com.example.librarymanagement.entity.ConversationMember;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateMemberRoleRequest {
+    @NotNull(message = "Role is required")
+    private ConversationMember.ConversationMemberRole role;
+}
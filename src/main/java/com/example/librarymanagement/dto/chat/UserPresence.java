@@ -14,4 +14,6 @@ public class UserPresence {
     private Integer userId;
     private Boolean online;
     private Long timestamp;
+    // Chỉ có khi online = false
+    private Long lastSeenAt;
 }
@@ -0,0 +1,18 @@
+package com.example.librarymanagement.dto.user.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+// Thông tin tối thiểu để hiển thị người gửi, được cache dùng chung nên không có setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserCard {
+    private Integer id;
+    private String displayName;
+    private String avatarUrl; // Presigned URL với avatar upload, URL gốc với tài khoản social
+    private String roleName;
+}
@@ -0,0 +1,38 @@
+package com.example.librarymanagement.dto.util;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/*
+ * Phân trang theo cursor (keyset) thay cho offset: không COUNT(*) và không OFFSET,
+ * nên chi phí lấy trang thứ 10.000 bằng trang đầu tiên.
+ * items luôn được sắp xếp theo id tăng dần (cũ → mới).
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPage<T> {
+    private List<T> items;
+    private Integer limit;
+    private Long beforeCursor; // id nhỏ nhất trong trang → truyền vào ?before= để lấy các item cũ hơn
+    private Long afterCursor; // id lớn nhất trong trang → truyền vào ?after= để lấy các item mới hơn
+    private Boolean hasMore; // Còn dữ liệu theo hướng đang phân trang hay không
+
+    public static <T> CursorPage<T> of(List<T> items, int limit, boolean hasMore,
+                                       ToLongFunction<T> idExtractor) {
+        Long beforeCursor = items.isEmpty() ? null : idExtractor.applyAsLong(items.get(0));
+        Long afterCursor = items.isEmpty() ? null : idExtractor.applyAsLong(items.get(items.size() - 1));
+
+        return CursorPage.<T>builder()
+                .items(items)
+                .limit(limit)
+                .beforeCursor(beforeCursor)
+                .afterCursor(afterCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+}
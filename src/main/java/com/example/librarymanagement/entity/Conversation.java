@@ -1,5 +1,6 @@
 package com.example.librarymanagement.entity;
 
+import com.example.librarymanagement.annotation.SnowflakeId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -12,9 +13,9 @@ import lombok.*;
 @NoArgsConstructor
 public class Conversation {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     @Column(name = "id")
-    private Integer id;
+    private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "workspace_id", nullable = false)
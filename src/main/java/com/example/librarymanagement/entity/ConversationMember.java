@@ -1,5 +1,6 @@
 package com.example.librarymanagement.entity;
 
+import com.example.librarymanagement.annotation.SnowflakeId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -12,9 +13,9 @@ import lombok.*;
 @NoArgsConstructor
 public class ConversationMember {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     @Column(name = "id")
-    private Integer id;
+    private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id", nullable = false)
@@ -32,15 +33,19 @@ public class ConversationMember {
     private Long joinedAt;
 
     @Column(name = "last_read_message_id")
-    private Integer lastReadMessageId;
+    private Long lastReadMessageId;
 
     @Column(name = "last_read_at")
     private Long lastReadAt;
 
+    // Ghi định kỳ bởi UnreadCountService, không cập nhật qua entity
+    @Column(name = "unread_count", insertable = false, updatable = false)
+    private Integer unreadCount;
+
     @Column(name = "is_notif_enabled")
     private Boolean isNotifEnabled;
 
-    enum ConversationMemberRole {
+    public enum ConversationMemberRole {
         ADMIN, MEMBER, GUEST
     }
 
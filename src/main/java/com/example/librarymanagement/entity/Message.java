@@ -1,30 +1,36 @@
 package com.example.librarymanagement.entity;
 
+import com.example.librarymanagement.annotation.SnowflakeId;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.NoArgsConstructor;
+import lombok.*;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Keyset pagination: WHERE conversation_id = ? AND id < ? ORDER BY id DESC LIMIT ?
+        @Index(name = "idx_messages_conversation_id_id", columnList = "conversation_id, id")
+})
+@Getter
+@Setter
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     @Column(name = "id")
-    private Integer id;
+    private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id", nullable = false)
     private Conversation conversation;
 
-    @OneToOne(fetch = FetchType.LAZY)
-    @Column(name = "sender_id", nullable = false)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "sender_id", nullable = false)
     private User user;
 
-    @Column(name = "parent_id")
+    // Không có foreign key: tin nhắn gốc có thể đã được chuyển sang archive (xem V5)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "parent_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Message parent;
 
     @Column(name = "content", columnDefinition = "TEXT")
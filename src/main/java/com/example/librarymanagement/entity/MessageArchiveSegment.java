@@ -0,0 +1,68 @@
+package com.example.librarymanagement.entity;
+
+import com.example.librarymanagement.annotation.SnowflakeId;
+import jakarta.persistence.*;
+import lombok.*;
+
+/*
+ * Một file segment bất biến chứa các tin nhắn liên tiếp (theo id) của một conversation đã chuyển khỏi bảng messages.
+ * Mỗi segment là một mục của sparse index cấp 1 (id / createdAt đầu và cuối);
+ * index cấp 2 theo block nằm trong footer của file, bắt đầu tại indexOffset.
+ * */
+@Entity
+@Table(name = "message_archive_segments", indexes = {
+        // WHERE conversation_id = ? AND first_message_id < ? ORDER BY first_message_id DESC
+        @Index(name = "idx_archive_segments_conversation_first_id", columnList = "conversation_id, first_message_id")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageArchiveSegment {
+    @Id
+    @SnowflakeId
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "first_message_id", nullable = false)
+    private Long firstMessageId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "first_created_at", nullable = false)
+    private Long firstCreatedAt;
+
+    @Column(name = "last_created_at", nullable = false)
+    private Long lastCreatedAt;
+
+    @Column(name = "message_count", nullable = false)
+    private Integer messageCount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage", nullable = false)
+    private Storage storage;
+
+    @Column(name = "object_key", nullable = false)
+    private String objectKey;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "index_offset", nullable = false)
+    private Long indexOffset;
+
+    @Column(name = "created_at")
+    private Long createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = System.currentTimeMillis();
+    }
+
+    public enum Storage {LOCAL, S3}
+}
@@ -50,6 +50,10 @@ public class User implements UserDetails {
     @Column(name = "deleted_at")
     private Long deletedAt;
 
+    // Ghi theo batch bởi LastSeenService, không cập nhật qua entity
+    @Column(name = "last_seen_at", insertable = false, updatable = false)
+    private Long lastSeenAt;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private Long createdAt;
 
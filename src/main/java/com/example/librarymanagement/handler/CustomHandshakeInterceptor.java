@@ -1,7 +1,5 @@
 package com.example.librarymanagement.handler;
 
-import com.example.librarymanagement.security.util.JwtTokenProvider;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -12,30 +10,25 @@ import org.springframework.web.socket.server.HandshakeInterceptor;
 
 import java.util.Map;
 
+/*
+ * Handshake không xác thực: xác thực diễn ra ở frame CONNECT (StompAuthInterceptor).
+ * Client cũ vẫn truyền JWT qua ?token= → chỉ chuyển token vào attributes để CONNECT kiểm tra, không parse ở đây.
+ * */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class CustomHandshakeInterceptor implements HandshakeInterceptor {
-    private final JwtTokenProvider jwtTokenProvider;
 
     // Spring sẽ tự động gọi hàm beforeHandshake() trước khi kết nối WebSocket được chấp nhận
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
-                                   WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
-        if (request instanceof ServletServerHttpRequest) {
-            ServletServerHttpRequest servletRequest = (ServletServerHttpRequest) request;
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (request instanceof ServletServerHttpRequest servletRequest) {
             String token = servletRequest.getServletRequest().getParameter("token");
-
-            if (token != null && jwtTokenProvider.validateAccessToken(token)) {
-                Integer userId = Integer.parseInt(jwtTokenProvider.extractSubject(token,
-                        JwtTokenProvider.TokenKind.ACCESS));
-                attributes.put("userId", userId); // Gắn userId vào attributes của session WebSocke
-                log.info("WebSocket handshake successful for userId: {}", userId);
-                return true; // Cho phép handshake, tức là WebSocket connection được mở
+            if (token != null && !token.isBlank()) {
+                attributes.put(StompAuthInterceptor.HANDSHAKE_TOKEN_ATTRIBUTE, token);
             }
         }
-        log.warn("WebSocket handshake failed - invalid or missing token");
-        return false;
+        return true; // Cho phép handshake, session chưa CONNECT thành công không nhận / gửi được frame nào
     }
 
     @Override
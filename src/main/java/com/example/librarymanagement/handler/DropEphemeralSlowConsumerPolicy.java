@@ -0,0 +1,50 @@
+package com.example.librarymanagement.handler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*
+ * Chính sách mặc định, theo thứ tự ưu tiên:
+ * 1. Một frame gửi quá send-time-limit-ms → ngắt kết nối (client treo, giữ thread gửi).
+ * 2. Buffer vượt ephemeral-drop-threshold → bỏ frame typing / presence mới tới.
+ * 3. Buffer sắp vượt send-buffer-size-limit → bỏ các frame ephemeral đang chờ, vẫn không đủ thì ngắt kết nối.
+ * */
+@Component
+public class DropEphemeralSlowConsumerPolicy implements SlowConsumerPolicy {
+    private final List<String> ephemeralDestinations;
+    private final long ephemeralDropThreshold;
+    private final long sendBufferSizeLimit;
+    private final long sendTimeLimitMs;
+
+    public DropEphemeralSlowConsumerPolicy(@Value("${chat.websocket.ephemeral-destinations}") List<String> ephemeralDestinations,
+                                           @Value("${chat.websocket.ephemeral-drop-threshold}") long ephemeralDropThreshold,
+                                           @Value("${chat.websocket.send-buffer-size-limit}") long sendBufferSizeLimit,
+                                           @Value("${chat.websocket.send-time-limit-ms}") long sendTimeLimitMs) {
+        this.ephemeralDestinations = List.copyOf(ephemeralDestinations);
+        this.ephemeralDropThreshold = ephemeralDropThreshold;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+    }
+
+    @Override
+    public boolean isEphemeral(String destination) {
+        return ephemeralDestinations.contains(destination);
+    }
+
+    @Override
+    public Decision decide(SendBufferState state, int frameBytes, boolean ephemeral) {
+        if (state.sendInProgressMs() > sendTimeLimitMs) {
+            return Decision.DISCONNECT_TIMEOUT;
+        }
+        long after = state.bufferedBytes() + frameBytes;
+        if (ephemeral && after > ephemeralDropThreshold) {
+            return Decision.DROP;
+        }
+        if (after > sendBufferSizeLimit) {
+            return state.ephemeralBytes() > 0 ? Decision.SHED_EPHEMERAL : Decision.DISCONNECT_OVERFLOW;
+        }
+        return Decision.ENQUEUE;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.librarymanagement.handler;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Decoder;
+import jakarta.websocket.Encoder;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Upgrade strategy (Jakarta WebSocket 2.1, chạy trên Tomcat 10.1) điều khiển việc thương lượng permessage-deflate.
+ * Container tự đọc header Sec-WebSocket-Extensions của request, nên cấu hình được áp vào bước
+ * Configurator.getNegotiatedExtensions thay vì ở HandshakeHandler:
+ * - enabled = false → bỏ permessage-deflate khỏi kết quả thương lượng.
+ * - server/client-context-takeover = false → thêm server_no_context_takeover / client_no_context_takeover,
+ *   mỗi frame được nén độc lập (tỉ lệ nén thấp hơn nhưng không phụ thuộc lịch sử frame trước).
+ * Container nén mọi data frame một khi extension đã được chấp nhận (không có ngưỡng theo kích thước frame).
+ * */
+@Component
+public class PerMessageDeflateUpgradeStrategy extends StandardWebSocketUpgradeStrategy {
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    private final boolean enabled;
+    private final boolean serverContextTakeover;
+    private final boolean clientContextTakeover;
+
+    public PerMessageDeflateUpgradeStrategy(@Value("${chat.websocket.deflate.enabled}") boolean enabled,
+                                            @Value("${chat.websocket.deflate.server-context-takeover}") boolean serverContextTakeover,
+                                            @Value("${chat.websocket.deflate.client-context-takeover}") boolean clientContextTakeover) {
+        this.enabled = enabled;
+        this.serverContextTakeover = serverContextTakeover;
+        this.clientContextTakeover = clientContextTakeover;
+    }
+
+    @Override
+    protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                          ServerEndpointConfig endpointConfig, Map<String, String> pathParams)
+            throws Exception {
+        super.upgradeHttpToWebSocket(request, response, new DeflateEndpointConfig(endpointConfig), pathParams);
+    }
+
+    List<Extension> negotiate(List<Extension> negotiated) {
+        List<Extension> result = new ArrayList<>(negotiated.size());
+        for (Extension extension : negotiated) {
+            if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                result.add(extension);
+            } else if (enabled) {
+                result.add(withContextTakeover(extension));
+            }
+        }
+        return result;
+    }
+
+    private Extension withContextTakeover(Extension offer) {
+        List<Extension.Parameter> parameters = new ArrayList<>(offer.getParameters());
+        if (!serverContextTakeover && !hasParameter(parameters, SERVER_NO_CONTEXT_TAKEOVER)) {
+            parameters.add(new Parameter(SERVER_NO_CONTEXT_TAKEOVER, null));
+        }
+        if (!clientContextTakeover && !hasParameter(parameters, CLIENT_NO_CONTEXT_TAKEOVER)) {
+            parameters.add(new Parameter(CLIENT_NO_CONTEXT_TAKEOVER, null));
+        }
+        return new DeflateExtension(offer.getName(), List.copyOf(parameters));
+    }
+
+    private static boolean hasParameter(List<Extension.Parameter> parameters, String name) {
+        return parameters.stream().anyMatch(parameter -> name.equals(parameter.getName()));
+    }
+
+    private record DeflateExtension(String getName, List<Extension.Parameter> getParameters) implements Extension {
+    }
+
+    private record Parameter(String getName, String getValue) implements Extension.Parameter {
+    }
+
+    // Giữ nguyên cấu hình endpoint của Spring, chỉ thay bước thương lượng extension
+    private final class DeflateEndpointConfig implements ServerEndpointConfig {
+        private final ServerEndpointConfig delegate;
+        private final Configurator configurator;
+
+        DeflateEndpointConfig(ServerEndpointConfig delegate) {
+            this.delegate = delegate;
+            this.configurator = new DeflateConfigurator(delegate.getConfigurator());
+        }
+
+        @Override
+        public Class<?> getEndpointClass() {
+            return delegate.getEndpointClass();
+        }
+
+        @Override
+        public String getPath() {
+            return delegate.getPath();
+        }
+
+        @Override
+        public List<String> getSubprotocols() {
+            return delegate.getSubprotocols();
+        }
+
+        @Override
+        public List<Extension> getExtensions() {
+            return delegate.getExtensions();
+        }
+
+        @Override
+        public Configurator getConfigurator() {
+            return configurator;
+        }
+
+        @Override
+        public List<Class<? extends Encoder>> getEncoders() {
+            return delegate.getEncoders();
+        }
+
+        @Override
+        public List<Class<? extends Decoder>> getDecoders() {
+            return delegate.getDecoders();
+        }
+
+        @Override
+        public Map<String, Object> getUserProperties() {
+            return delegate.getUserProperties();
+        }
+    }
+
+    private final class DeflateConfigurator extends ServerEndpointConfig.Configurator {
+        private final ServerEndpointConfig.Configurator delegate;
+
+        DeflateConfigurator(ServerEndpointConfig.Configurator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+            return negotiate(delegate.getNegotiatedExtensions(installed, requested));
+        }
+
+        @Override
+        public String getNegotiatedSubprotocol(List<String> supported, List<String> requested) {
+            return delegate.getNegotiatedSubprotocol(supported, requested);
+        }
+
+        @Override
+        public boolean checkOrigin(String originHeaderValue) {
+            return delegate.checkOrigin(originHeaderValue);
+        }
+
+        @Override
+        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+            delegate.modifyHandshake(sec, request, response);
+        }
+
+        @Override
+        public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+            return delegate.getEndpointInstance(endpointClass);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.librarymanagement.handler;
+
+import com.example.librarymanagement.config.WebSocketExecutorMode;
+import com.example.librarymanagement.handler.SlowConsumerPolicy.Decision;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/*
+ * Bọc mọi session WebSocket (kể cả SockJS) trong SendBufferSessionDecorator trước khi tới STOMP handler,
+ * sở hữu pool thread gửi dùng chung và metric của buffer gửi:
+ *   chat.websocket.send.buffer.bytes      tổng byte đang chờ gửi trên node
+ *   chat.websocket.send.buffer.occupancy  phân bố byte trong buffer của session mỗi lần nhận frame
+ *   chat.websocket.frames.dropped{reason} frame ephemeral bị bỏ (dropped: khi tới, shed: khi đã nằm trong buffer)
+ *   chat.websocket.disconnects{reason}    session bị ngắt vì buffer-overflow / send-timeout
+ *   chat.websocket.deflate.*              byte gửi trên session permessage-deflate và ước lượng byte tiết kiệm được
+ *
+ * Container nén frame bên trong và không cho biết kích thước sau nén, nên cứ sample-every frame lại nén thử một frame
+ * (độc lập, không context takeover) để ước lượng tỉ lệ nén; với context takeover, mức tiết kiệm thực tế còn cao hơn.
+ * */
+@Component
+public class SendBufferHandlerDecoratorFactory implements WebSocketHandlerDecoratorFactory {
+    private final SlowConsumerPolicy policy;
+    private final Executor sendExecutor;
+    private final long sendTimeLimitMs;
+    private final ConcurrentHashMap<String, SendBufferSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    private final DistributionSummary occupancySummary;
+    private final Counter droppedCounter;
+    private final Counter shedCounter;
+    private final Map<Decision, Counter> disconnectCounters = new EnumMap<>(Decision.class);
+
+    private final int deflateSampleEvery;
+    private final Counter deflateInputCounter;
+    private final AtomicLong deflateFrames = new AtomicLong();
+    // Deflater dùng chung cho các frame mẫu (hiếm), tránh mỗi thread gửi giữ một Deflater native
+    private final Deflater sampleDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] sampleBuffer = new byte[8192];
+    private long sampledInput;
+    private long sampledOutput;
+
+    public SendBufferHandlerDecoratorFactory(SlowConsumerPolicy policy,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${chat.websocket.sender-threads}") int senderThreads,
+                                             @Value("${chat.websocket.executor-mode}") WebSocketExecutorMode executorMode,
+                                             @Value("${chat.websocket.deflate.sample-every}") int deflateSampleEvery,
+                                             @Value("${chat.websocket.send-time-limit-ms}") long sendTimeLimitMs) {
+        this.policy = policy;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.deflateSampleEvery = deflateSampleEvery;
+
+        if (executorMode == WebSocketExecutorMode.VIRTUAL) {
+            // Ghi socket block lâu với client chậm: mỗi session đang gửi giữ một virtual thread thay vì một thread pool
+            sendExecutor = new VirtualThreadTaskExecutor("ws-send-");
+        } else {
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setCorePoolSize(senderThreads);
+            pool.setMaxPoolSize(senderThreads);
+            pool.setThreadNamePrefix("ws-send-");
+            pool.setDaemon(true);
+            pool.initialize();
+            sendExecutor = pool;
+        }
+
+        Gauge.builder("chat.websocket.sessions", sessions, Map::size).register(meterRegistry);
+        Gauge.builder("chat.websocket.send.buffer.bytes", this, SendBufferHandlerDecoratorFactory::totalBufferedBytes)
+                .description("Bytes queued for delivery across all WebSocket sessions")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        occupancySummary = DistributionSummary.builder("chat.websocket.send.buffer.occupancy")
+                .description("Per-session send buffer size after each enqueued frame")
+                .baseUnit("bytes")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("chat.websocket.frames.dropped").tag("reason", "dropped")
+                .register(meterRegistry);
+        shedCounter = Counter.builder("chat.websocket.frames.dropped").tag("reason", "shed")
+                .register(meterRegistry);
+        disconnectCounters.put(Decision.DISCONNECT_OVERFLOW, Counter.builder("chat.websocket.disconnects")
+                .tag("reason", "buffer-overflow").register(meterRegistry));
+        disconnectCounters.put(Decision.DISCONNECT_TIMEOUT, Counter.builder("chat.websocket.disconnects")
+                .tag("reason", "send-timeout").register(meterRegistry));
+
+        deflateInputCounter = Counter.builder("chat.websocket.deflate.input.bytes")
+                .description("Uncompressed bytes sent on sessions that negotiated permessage-deflate")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.websocket.deflate.ratio", this, SendBufferHandlerDecoratorFactory::deflateRatio)
+                .description("Sampled compressed / uncompressed size")
+                .register(meterRegistry);
+        Gauge.builder("chat.websocket.deflate.saved.bytes", this,
+                        factory -> factory.deflateInputCounter.count() * (1 - factory.deflateRatio()))
+                .description("Estimated bytes saved by permessage-deflate")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                // Các callback sau đó Spring tra session đã bọc theo id, nên chỉ cần bọc ở đây
+                SendBufferSessionDecorator decorated =
+                        new SendBufferSessionDecorator(session, policy, SendBufferHandlerDecoratorFactory.this,
+                                sendExecutor, sendTimeLimitMs);
+                sessions.put(session.getId(), decorated);
+                session.getAttributes().put(WireFormatInterceptor.BINARY_FRAMES_ATTRIBUTE, decorated.supportsBinaryFrames());
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                SendBufferSessionDecorator decorated = sessions.remove(session.getId());
+                if (decorated != null) {
+                    decorated.release();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    // Session treo giữa lúc gửi sẽ không nhận frame mới nào để bị phát hiện, nên phải kiểm tra định kỳ
+    @Scheduled(fixedDelayString = "${chat.websocket.timeout-check-ms}")
+    public void checkSendTimeouts() {
+        for (SendBufferSessionDecorator session : sessions.values()) {
+            session.checkSendTimeout();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sendExecutor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+        synchronized (sampleDeflater) {
+            sampleDeflater.end();
+        }
+    }
+
+    void recordOccupancy(long bytes) {
+        occupancySummary.record(bytes);
+    }
+
+    void recordDropped() {
+        droppedCounter.increment();
+    }
+
+    void recordShed(int frames) {
+        if (frames > 0) {
+            shedCounter.increment(frames);
+        }
+    }
+
+    void recordDisconnect(Decision decision) {
+        Counter counter = disconnectCounters.get(decision);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    void recordDeflated(WebSocketMessage<?> message) {
+        int length = message.getPayloadLength();
+        deflateInputCounter.increment(length);
+        if (length == 0 || deflateFrames.incrementAndGet() % deflateSampleEvery != 0) {
+            return;
+        }
+        byte[] bytes = payloadBytes(message);
+        if (bytes == null) {
+            return;
+        }
+        synchronized (sampleDeflater) {
+            sampleDeflater.reset();
+            sampleDeflater.setInput(bytes);
+            sampleDeflater.finish();
+            long compressed = 0;
+            while (!sampleDeflater.finished()) {
+                compressed += sampleDeflater.deflate(sampleBuffer);
+            }
+            sampledInput += bytes.length;
+            sampledOutput += compressed;
+        }
+    }
+
+    private double deflateRatio() {
+        synchronized (sampleDeflater) {
+            return sampledInput == 0 ? 1 : (double) sampledOutput / sampledInput;
+        }
+    }
+
+    private static byte[] payloadBytes(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.asBytes();
+        }
+        if (message instanceof BinaryMessage binary) {
+            var buffer = binary.getPayload().duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return null;
+    }
+
+    private double totalBufferedBytes() {
+        long total = 0;
+        for (SendBufferSessionDecorator session : sessions.values()) {
+            total += session.getBufferedBytes();
+        }
+        return total;
+    }
+}
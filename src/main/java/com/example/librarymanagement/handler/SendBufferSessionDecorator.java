@@ -0,0 +1,305 @@
+package com.example.librarymanagement.handler;
+
+import com.example.librarymanagement.handler.SlowConsumerPolicy.Decision;
+import com.example.librarymanagement.handler.SlowConsumerPolicy.SendBufferState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/*
+ * Buffer gửi có giới hạn cho một session WebSocket.
+ * - sendMessage() không bao giờ block: frame được đưa vào hàng đợi riêng của session,
+ *   một task trên executor dùng chung ghi lần lượt từng frame (giữ đúng thứ tự, mỗi session tối đa một task).
+ *   Nhờ vậy client chậm chỉ giữ một thread gửi, không kéo theo thread của clientOutboundChannel.
+ * - Trước khi nhận frame, SlowConsumerPolicy quyết định nhận / bỏ / dọn frame ephemeral / ngắt kết nối.
+ * - Khi ngắt kết nối, close reason chứa gợi ý "resume" để client kết nối lại và đồng bộ lại trạng thái.
+ * - close() (vd. sau frame ERROR / RECEIPT của DISCONNECT) chờ ghi hết các frame đang chờ, tối đa send-time-limit-ms,
+ *   rồi mới đóng kết nối: frame cuối cùng báo lý do ngắt không bị mất trong hàng đợi.
+ * - StompSubProtocolHandler chỉ gửi binary frame cho content-type application/octet-stream, nên frame có
+ *   content-type nhị phân khác (CBOR, xem WireFormat) được chuyển thành BinaryMessage ở đây.
+ * */
+@Slf4j
+class SendBufferSessionDecorator extends WebSocketSessionDecorator {
+    private static final byte[] DESTINATION_HEADER = "\ndestination:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_TYPE_HEADER = "\ncontent-type:".getBytes(StandardCharsets.US_ASCII);
+
+    private final SlowConsumerPolicy policy;
+    private final SendBufferHandlerDecoratorFactory owner;
+    private final Executor executor;
+    private final boolean binaryFrames;
+    private final boolean deflate;
+    private final long closeTimeoutMs;
+
+    // Các field dưới đây được bảo vệ bởi lock của this
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private long bufferedBytes;
+    private long ephemeralBytes;
+    private boolean draining;
+    private boolean closed;
+    // close() đang chờ ghi nốt hàng đợi: không nhận thêm frame
+    private boolean closing;
+
+    // Thời điểm bắt đầu gửi frame hiện tại, 0 khi không gửi
+    private volatile long sendStartedAt;
+
+    SendBufferSessionDecorator(WebSocketSession delegate, SlowConsumerPolicy policy,
+                               SendBufferHandlerDecoratorFactory owner, Executor executor, long closeTimeoutMs) {
+        super(delegate);
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.policy = policy;
+        this.owner = owner;
+        this.executor = executor;
+        // SockJS chỉ truyền được text frame
+        this.binaryFrames = !(delegate instanceof SockJsSession);
+        this.deflate = delegate.getExtensions().stream()
+                .anyMatch(extension -> PerMessageDeflateUpgradeStrategy.PERMESSAGE_DEFLATE.equals(extension.getName()));
+    }
+
+    boolean supportsBinaryFrames() {
+        return binaryFrames;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        boolean ephemeral = false;
+        if (message instanceof TextMessage text) {
+            String destination = headerOf(text, DESTINATION_HEADER);
+            ephemeral = destination != null && policy.isEphemeral(destination);
+            if (binaryFrames) {
+                WireFormat format = WireFormat.fromContentType(headerOf(text, CONTENT_TYPE_HEADER));
+                if (format != null && format.isBinary()) {
+                    message = new BinaryMessage(text.asBytes());
+                }
+            }
+        }
+        Frame frame = new Frame(message, message.getPayloadLength(), ephemeral);
+
+        Decision decision;
+        int shed = 0;
+        long occupancy;
+        boolean startDrain = false;
+        synchronized (this) {
+            if (closed || closing) {
+                return;
+            }
+            decision = policy.decide(state(), frame.size(), frame.ephemeral());
+            if (decision == Decision.SHED_EPHEMERAL) {
+                shed = shedEphemeral();
+                decision = policy.decide(state(), frame.size(), frame.ephemeral());
+                if (decision == Decision.SHED_EPHEMERAL) {
+                    decision = Decision.DISCONNECT_OVERFLOW;
+                }
+            }
+            if (decision == Decision.ENQUEUE) {
+                queue.add(frame);
+                bufferedBytes += frame.size();
+                if (frame.ephemeral()) {
+                    ephemeralBytes += frame.size();
+                }
+                if (!draining) {
+                    draining = true;
+                    startDrain = true;
+                }
+            }
+            occupancy = bufferedBytes;
+        }
+
+        owner.recordShed(shed);
+        switch (decision) {
+            case ENQUEUE -> {
+                owner.recordOccupancy(occupancy);
+                if (startDrain) {
+                    executor.execute(this::drain);
+                }
+            }
+            case DROP -> owner.recordDropped();
+            default -> disconnect(decision);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        long deadline = System.currentTimeMillis() + closeTimeoutMs;
+        synchronized (this) {
+            closing = true;
+            try {
+                while (draining && !closed) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        log.debug("Closing WebSocket session {} with {} frames still queued", getId(), queue.size());
+                        break;
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        release();
+        getDelegate().close(status);
+    }
+
+    // Gọi định kỳ để phát hiện session bị treo khi không có frame mới nào tới
+    void checkSendTimeout() {
+        Decision decision;
+        synchronized (this) {
+            if (closed || sendStartedAt == 0) {
+                return;
+            }
+            decision = policy.decide(state(), 0, false);
+        }
+        if (decision == Decision.DISCONNECT_TIMEOUT || decision == Decision.DISCONNECT_OVERFLOW) {
+            disconnect(decision);
+        }
+    }
+
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    // Huỷ các frame còn chờ khi kết nối đã đóng
+    synchronized void release() {
+        closed = true;
+        queue.clear();
+        bufferedBytes = 0;
+        ephemeralBytes = 0;
+        notifyAll();
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                frame = closed ? null : queue.poll();
+                if (frame == null) {
+                    draining = false;
+                    // Đánh thức close() đang chờ hàng đợi rỗng
+                    notifyAll();
+                    return;
+                }
+                if (frame.ephemeral()) {
+                    ephemeralBytes -= frame.size();
+                }
+            }
+
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(frame.message());
+                if (deflate) {
+                    owner.recordDeflated(frame.message());
+                }
+            } catch (IOException | RuntimeException ex) {
+                // Kết nối đã hỏng, container sẽ gọi afterConnectionClosed
+                log.debug("Failed to send to WebSocket session {}: {}", getId(), ex.getMessage());
+                release();
+            } finally {
+                sendStartedAt = 0;
+                synchronized (this) {
+                    if (!closed) {
+                        bufferedBytes -= frame.size();
+                    }
+                }
+            }
+        }
+    }
+
+    private void disconnect(Decision decision) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        release();
+        owner.recordDisconnect(decision);
+        String reason = decision == Decision.DISCONNECT_TIMEOUT ? "send-timeout" : "buffer-overflow";
+        log.warn("Closing slow WebSocket session {} (user {}): {}", getId(), getPrincipal() != null
+                ? getPrincipal().getName() : null, reason);
+        try {
+            // Client đọc reason để biết nên kết nối lại và tải lại trạng thái thay vì báo lỗi cho người dùng
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE.withReason("slow-consumer:" + reason + ";resume"));
+        } catch (IOException ex) {
+            log.debug("Failed to close WebSocket session {}: {}", getId(), ex.getMessage());
+        }
+    }
+
+    private SendBufferState state() {
+        long startedAt = sendStartedAt;
+        long inProgress = startedAt == 0 ? 0 : System.currentTimeMillis() - startedAt;
+        return new SendBufferState(bufferedBytes, ephemeralBytes, inProgress);
+    }
+
+    private int shedEphemeral() {
+        int count = 0;
+        Iterator<Frame> it = queue.iterator();
+        while (it.hasNext()) {
+            Frame queued = it.next();
+            if (queued.ephemeral()) {
+                it.remove();
+                bufferedBytes -= queued.size();
+                count++;
+            }
+        }
+        ephemeralBytes = 0;
+        return count;
+    }
+
+    /*
+     * Đọc một header của frame STOMP trên bytes đã encode (StompSubProtocolHandler tạo TextMessage từ byte[]),
+     * chỉ quét phần header. Lưu ý: constructor TextMessage(byte[]) đã decode cả frame thành String cho mỗi session
+     * trước khi tới đây, chi phí đó không tránh được ở tầng này; hàm này chỉ không tạo thêm String / substring nào
+     * ngoài giá trị header cần đọc.
+     * */
+    static String headerOf(TextMessage message, byte[] header) {
+        byte[] frame = message.asBytes();
+        int limit = frame.length;
+        for (int i = 0; i < limit; i++) {
+            if (frame[i] != '\n') {
+                continue;
+            }
+            // Dòng trống → hết phần header
+            if (i + 1 < frame.length && frame[i + 1] == '\n') {
+                return null;
+            }
+            if (matches(frame, i, header)) {
+                int start = i + header.length;
+                int end = start;
+                while (end < frame.length && frame[end] != '\n') {
+                    end++;
+                }
+                return new String(frame, start, end - start, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(byte[] frame, int offset, byte[] header) {
+        if (offset + header.length > frame.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (frame[offset + i] != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Frame(WebSocketMessage<?> message, int size, boolean ephemeral) {
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.librarymanagement.handler;
+
+/*
+ * Chính sách xử lý client nhận chậm (slow consumer) trên từng session WebSocket.
+ * SendBufferSessionDecorator hỏi policy trước khi đưa mỗi frame vào buffer gửi của session,
+ * và bộ kiểm tra định kỳ hỏi lại (frameBytes = 0) để phát hiện session bị treo giữa chừng khi gửi.
+ * Muốn đổi chính sách chỉ cần khai báo một bean SlowConsumerPolicy khác với @Primary.
+ * */
+public interface SlowConsumerPolicy {
+
+    // Frame tới destination này có thể bỏ mà client vẫn tự hồi phục được (typing hết hạn, presence đọc lại)
+    boolean isEphemeral(String destination);
+
+    Decision decide(SendBufferState state, int frameBytes, boolean ephemeral);
+
+    enum Decision {
+        ENQUEUE,
+        // Bỏ frame hiện tại, session vẫn giữ
+        DROP,
+        // Bỏ các frame ephemeral đang chờ trong buffer rồi hỏi lại
+        SHED_EPHEMERAL,
+        DISCONNECT_OVERFLOW,
+        DISCONNECT_TIMEOUT
+    }
+
+    // bufferedBytes gồm cả frame đang gửi; sendInProgressMs = 0 khi không có frame nào đang gửi
+    record SendBufferState(long bufferedBytes, long ephemeralBytes, long sendInProgressMs) {
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.librarymanagement.handler;
+
+import com.example.librarymanagement.repository.JwtBlacklistRepository;
+import com.example.librarymanagement.security.util.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Xác thực session STOMP ở frame CONNECT, đăng ký đầu tiên trên clientInboundChannel:
+ * - Token lấy từ header "Authorization: Bearer ..." của CONNECT, hoặc ?token= lúc handshake (client cũ).
+ *   Token chỉ được parse / kiểm tra chữ ký và blacklist một lần ở CONNECT; StompPrincipal được gắn cho session
+ *   (Spring nhớ principal đặt ở CONNECT và gắn vào mọi frame sau) và cache ở đây cùng jti / thời điểm hết hạn.
+ * - Frame sau CONNECT chỉ tra map theo sessionId và so sánh thời điểm hết hạn, không đụng tới JWT hay DB.
+ * - CONNECT không hợp lệ và frame của session chưa xác thực bị bỏ, session nhận ERROR và bị đóng.
+ * - Session bị ngắt bằng frame ERROR (StompSubProtocolHandler đóng kết nối ngay sau ERROR) khi:
+ *   token hết hạn (phát hiện ở frame tới, kể cả heartbeat, hoặc ở lần kiểm tra định kỳ),
+ *   token bị đưa vào blacklist (logout trên node này: ngay lập tức; node khác: ở lần kiểm tra định kỳ).
+ * */
+@Slf4j
+@Component
+public class StompAuthInterceptor implements ChannelInterceptor {
+    // Session attribute do CustomHandshakeInterceptor gắn khi client truyền token qua query string
+    public static final String HANDSHAKE_TOKEN_ATTRIBUTE = "handshakeToken";
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final int BLACKLIST_BATCH_SIZE = 500;
+
+    private final JwtTokenProvider jwtTokenProvider;
+    private final JwtBlacklistRepository jwtBlacklistRepository;
+    private final MessageChannel clientOutboundChannel;
+
+    private final ConcurrentHashMap<String, SessionAuth> sessions = new ConcurrentHashMap<>();
+
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter expiredCounter;
+    private final Counter revokedCounter;
+
+    // @Lazy: clientOutboundChannel được tạo bởi chính cấu hình broker đang đăng ký interceptor này
+    public StompAuthInterceptor(JwtTokenProvider jwtTokenProvider,
+                                JwtBlacklistRepository jwtBlacklistRepository,
+                                @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                                MeterRegistry meterRegistry) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.jwtBlacklistRepository = jwtBlacklistRepository;
+        this.clientOutboundChannel = clientOutboundChannel;
+
+        Gauge.builder("chat.websocket.auth.sessions", sessions, Map::size)
+                .description("Authenticated STOMP sessions")
+                .register(meterRegistry);
+        acceptedCounter = Counter.builder("chat.websocket.auth.connects").tag("result", "accepted")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("chat.websocket.auth.connects").tag("result", "rejected")
+                .register(meterRegistry);
+        expiredCounter = Counter.builder("chat.websocket.auth.dropped").tag("reason", "expired")
+                .register(meterRegistry);
+        revokedCounter = Counter.builder("chat.websocket.auth.dropped").tag("reason", "revoked")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type == SimpMessageType.CONNECT) {
+            return connect(message, sessionId);
+        }
+        if (type == SimpMessageType.DISCONNECT) {
+            sessions.remove(sessionId);
+            return message;
+        }
+
+        SessionAuth auth = sessions.get(sessionId);
+        if (auth == null) {
+            sendError(sessionId, "STOMP session is not authenticated");
+            return null;
+        }
+        if (auth.expiresAt() <= System.currentTimeMillis()) {
+            drop(sessionId, auth, "Access token expired", expiredCounter);
+            return null;
+        }
+        return message;
+    }
+
+    // Gọi sau khi access token bị đưa vào blacklist (logout) để ngắt ngay các session trên node này
+    public void revokeToken(String jti) {
+        for (var entry : sessions.entrySet()) {
+            if (entry.getValue().jti().equals(jti)) {
+                drop(entry.getKey(), entry.getValue(), "Access token revoked", revokedCounter);
+            }
+        }
+    }
+
+    /*
+     * Ngắt session có token đã hết hạn mà không gửi frame nào, và session có token bị blacklist bởi node khác.
+     * Blacklist được tra theo lô jti của các session đang mở, không query theo từng session.
+     * */
+    @Scheduled(fixedDelayString = "${chat.websocket.auth.check-interval-ms}")
+    public void checkSessions() {
+        long now = System.currentTimeMillis();
+        Set<String> jtis = new HashSet<>();
+        for (var entry : sessions.entrySet()) {
+            if (entry.getValue().expiresAt() <= now) {
+                drop(entry.getKey(), entry.getValue(), "Access token expired", expiredCounter);
+            } else {
+                jtis.add(entry.getValue().jti());
+            }
+        }
+        if (jtis.isEmpty()) {
+            return;
+        }
+
+        List<String> pending = new ArrayList<>(jtis);
+        Set<String> revoked = new HashSet<>();
+        for (int start = 0; start < pending.size(); start += BLACKLIST_BATCH_SIZE) {
+            revoked.addAll(jwtBlacklistRepository.findBlacklistedJtis(
+                    pending.subList(start, Math.min(pending.size(), start + BLACKLIST_BATCH_SIZE))));
+        }
+        for (String jti : revoked) {
+            revokeToken(jti);
+        }
+    }
+
+    // ------------------------- helper -------------------------
+    private Message<?> connect(Message<?> message, String sessionId) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        String token = bearerToken(accessor.getFirstNativeHeader(AUTHORIZATION_HEADER));
+        if (token == null && attributes != null) {
+            token = (String) attributes.get(HANDSHAKE_TOKEN_ATTRIBUTE);
+        }
+        if (attributes != null) {
+            attributes.remove(HANDSHAKE_TOKEN_ATTRIBUTE);
+        }
+
+        SessionAuth auth = token != null ? verify(token) : null;
+        if (auth == null) {
+            rejectedCounter.increment();
+            sendError(sessionId, "Invalid or missing access token");
+            return null;
+        }
+
+        // Accessor của frame inbound vẫn mutable: principal đi cùng CONNECT và được Spring nhớ cho cả session
+        accessor.setUser(auth.principal());
+        if (attributes != null) {
+            attributes.put(USER_ID_ATTRIBUTE, auth.principal().userId());
+        }
+        sessions.put(sessionId, auth);
+        acceptedCounter.increment();
+        return message;
+    }
+
+    // Parse token đúng một lần: chữ ký, hạn dùng, subject, jti; sau đó kiểm tra blacklist
+    private SessionAuth verify(String token) {
+        Claims claims;
+        try {
+            claims = jwtTokenProvider.extractClaim(token, JwtTokenProvider.TokenKind.ACCESS, c -> c);
+        } catch (JwtException | IllegalArgumentException ex) {
+            log.debug("Rejected STOMP CONNECT: {}", ex.getMessage());
+            return null;
+        }
+        if (claims.getId() == null || claims.getExpiration() == null
+                || Boolean.TRUE.equals(jwtBlacklistRepository.existsByTokenJti(claims.getId()))) {
+            return null;
+        }
+        return new SessionAuth(new StompPrincipal(Integer.parseInt(claims.getSubject())), claims.getId(),
+                claims.getExpiration().getTime());
+    }
+
+    /*
+     * Ngắt session một cách chủ động thay vì ném exception từ preSend: khi inbound giữ thứ tự (chế độ VIRTUAL),
+     * OrderedMessageChannelDecorator nuốt exception nên Spring không gửi ERROR và socket vẫn mở.
+     * Entry chỉ bị gỡ sau khi ERROR đã được gửi, nếu gửi lỗi thì lần kiểm tra định kỳ sau sẽ thử lại.
+     * */
+    private void drop(String sessionId, SessionAuth auth, String reason, Counter counter) {
+        log.debug("Dropping STOMP session {}: {}", sessionId, reason);
+        if (!sendError(sessionId, reason)) {
+            return;
+        }
+        if (sessions.remove(sessionId, auth)) {
+            counter.increment();
+        }
+    }
+
+    // StompSubProtocolHandler đóng kết nối ngay sau khi gửi frame ERROR
+    private boolean sendError(String sessionId, String reason) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+        accessor.setSessionId(sessionId);
+        accessor.setMessage(reason);
+        accessor.setLeaveMutable(true);
+        try {
+            clientOutboundChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+            return true;
+        } catch (RuntimeException ex) {
+            log.warn("Failed to send STOMP ERROR to session {}: {}", sessionId, ex.getMessage());
+            return false;
+        }
+    }
+
+    private static String bearerToken(String header) {
+        if (header == null || !header.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        return header.substring(BEARER_PREFIX.length());
+    }
+
+    private record SessionAuth(StompPrincipal principal, String jti, long expiresAt) {
+    }
+}
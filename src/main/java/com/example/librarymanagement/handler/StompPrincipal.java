@@ -0,0 +1,12 @@
+package com.example.librarymanagement.handler;
+
+import java.security.Principal;
+
+// Principal của session WebSocket: name = userId để /user/{userId}/queue/** resolve được đúng user
+public record StompPrincipal(Integer userId) implements Principal {
+
+    @Override
+    public String getName() {
+        return String.valueOf(userId);
+    }
+}
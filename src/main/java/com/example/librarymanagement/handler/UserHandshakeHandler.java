@@ -0,0 +1,27 @@
+package com.example.librarymanagement.handler;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.Map;
+
+/*
+ * Handshake handler dùng upgrade strategy có permessage-deflate.
+ * Không gắn Principal lúc handshake: StompAuthInterceptor gắn StompPrincipal khi CONNECT đã xác thực.
+ * */
+@Component
+public class UserHandshakeHandler extends DefaultHandshakeHandler {
+
+    public UserHandshakeHandler(PerMessageDeflateUpgradeStrategy upgradeStrategy) {
+        super(upgradeStrategy);
+    }
+
+    @Override
+    protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler,
+                                      Map<String, Object> attributes) {
+        return null;
+    }
+}
@@ -1,12 +1,63 @@
 package com.example.librarymanagement.handler;
 
-import lombok.RequiredArgsConstructor;
+import com.example.librarymanagement.service.inter.UserPresenceService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+
+/*
+ * Đăng ký / huỷ session với UserPresenceService theo frame CONNECT / DISCONNECT trên clientInboundChannel.
+ * Khi kết nối bị đóng đột ngột, Spring vẫn phát một DISCONNECT nội bộ cho session đó,
+ * còn trường hợp client gửi DISCONNECT rồi đóng kết nối thì lần thứ hai không có tác dụng.
+ * Mọi frame khác (kể cả heartbeat) cập nhật last-seen của user.
+ * */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class UserPresenceInterceptor implements ChannelInterceptor {
+    private final UserPresenceService userPresenceService;
+
+    // @Lazy: interceptor được tạo trong lúc cấu hình broker, còn UserPresenceService lại cần
+    // SimpMessagingTemplate do chính cấu hình đó tạo ra → tránh vòng phụ thuộc khi khởi động
+    public UserPresenceInterceptor(@Lazy UserPresenceService userPresenceService) {
+        this.userPresenceService = userPresenceService;
+    }
+
+    @Override
+    public void postSend(Message<?> message, MessageChannel channel, boolean sent) {
+        // Đọc header trực tiếp, không wrap accessor → không cấp phát thêm cho mỗi frame
+        MessageHeaders headers = message.getHeaders();
+        Integer userId = getUserId(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (userId == null || sessionId == null) {
+            return;
+        }
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type == SimpMessageType.CONNECT) {
+            if (sent) {
+                userPresenceService.userConnected(userId, sessionId);
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            userPresenceService.userDisconnected(userId, sessionId);
+        } else {
+            // SEND / SUBSCRIBE / heartbeat: chỉ ghi last-seen vào bộ nhớ
+            userPresenceService.updateLastSeen(userId);
+        }
+    }
+
+    private Integer getUserId(MessageHeaders headers) {
+        if (SimpMessageHeaderAccessor.getUser(headers) instanceof StompPrincipal principal) {
+            return principal.userId();
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        return attributes != null ? (Integer) attributes.get("userId") : null;
+    }
 }
@@ -0,0 +1,64 @@
+package com.example.librarymanagement.handler;
+
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/*
+ * Định dạng body của frame STOMP gửi tới client.
+ * Client khai báo các định dạng chấp nhận trong header accept-content-type của frame CONNECT
+ * (theo thứ tự ưu tiên, ví dụ "application/cbor, application/json"); mỗi frame MESSAGE mang content-type tương ứng.
+ * JSON là mặc định và là fallback cho SockJS (chỉ truyền được text frame).
+ * */
+public enum WireFormat {
+    JSON(MimeTypeUtils.APPLICATION_JSON, false),
+    CBOR(new MimeType("application", "cbor"), true);
+
+    private final MimeType mimeType;
+    private final boolean binary;
+
+    WireFormat(MimeType mimeType, boolean binary) {
+        this.mimeType = mimeType;
+        this.binary = binary;
+    }
+
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    // Định dạng đầu tiên trong danh sách của client mà server hỗ trợ; định dạng nhị phân chỉ được chọn khi
+    // kết nối truyền được binary frame
+    public static WireFormat negotiate(String acceptContentType, boolean binaryFrames) {
+        if (acceptContentType == null) {
+            return JSON;
+        }
+        for (String candidate : acceptContentType.split(",")) {
+            WireFormat format = fromContentType(candidate.trim());
+            if (format != null && (binaryFrames || !format.binary)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+
+    public static WireFormat fromContentType(String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return null;
+        }
+        try {
+            MimeType mimeType = MimeTypeUtils.parseMimeType(contentType);
+            for (WireFormat format : values()) {
+                if (format.mimeType.equalsTypeAndSubtype(mimeType)) {
+                    return format;
+                }
+            }
+        } catch (InvalidMimeTypeException ignored) {
+            // Header không hợp lệ → coi như không khai báo
+        }
+        return null;
+    }
+}
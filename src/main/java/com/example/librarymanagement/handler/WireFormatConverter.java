@@ -0,0 +1,42 @@
+package com.example.librarymanagement.handler;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+/*
+ * Converter outbound đứng đầu danh sách: thay vì serialize object ngay khi gửi vào broker
+ * (lúc đó chưa biết session nhận dùng định dạng nào), bọc object trong WirePayload.
+ * String / byte[] và message đã chỉ định content-type được để lại cho các converter mặc định.
+ * Không tham gia chiều inbound: frame SEND do các converter JSON / CBOR xử lý theo content-type.
+ * */
+public class WireFormatConverter implements MessageConverter {
+
+    @Override
+    public Object fromMessage(Message<?> message, Class<?> targetClass) {
+        return null;
+    }
+
+    @Override
+    public Message<?> toMessage(Object payload, MessageHeaders headers) {
+        if (payload instanceof byte[] || payload instanceof CharSequence) {
+            return null;
+        }
+        if (headers != null && headers.containsKey(MessageHeaders.CONTENT_TYPE)) {
+            return null;
+        }
+
+        WirePayload wirePayload = payload instanceof WirePayload wrapped ? wrapped : new WirePayload(payload);
+        if (headers == null) {
+            return MessageBuilder.withPayload(wirePayload).build();
+        }
+        // Giữ accessor mutable của SimpMessagingTemplate, giống AbstractMessageConverter
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(headers, MessageHeaderAccessor.class);
+        if (accessor != null && accessor.isMutable()) {
+            return MessageBuilder.createMessage(wirePayload, accessor.getMessageHeaders());
+        }
+        return MessageBuilder.withPayload(wirePayload).copyHeaders(headers).build();
+    }
+}
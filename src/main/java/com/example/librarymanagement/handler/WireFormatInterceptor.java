@@ -0,0 +1,110 @@
+package com.example.librarymanagement.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Thương lượng và encode định dạng frame theo từng session, đăng ký trên cả hai channel:
+ * - clientInboundChannel: CONNECT đọc header accept-content-type và ghi nhớ định dạng của session,
+ *   DISCONNECT (kể cả DISCONNECT nội bộ khi kết nối đứt) xoá đi.
+ * - clientOutboundChannel: payload WirePayload được encode sang JSON hoặc CBOR theo session nhận
+ *   và gắn content-type tương ứng.
+ * Chỉ session không phải SockJS mới được chọn CBOR (xem BINARY_FRAMES_ATTRIBUTE).
+ * */
+@Component
+public class WireFormatInterceptor implements ChannelInterceptor {
+    public static final String ACCEPT_CONTENT_TYPE_HEADER = "accept-content-type";
+    // Session attribute do SendBufferHandlerDecoratorFactory gắn: kết nối có truyền được binary frame hay không
+    public static final String BINARY_FRAMES_ATTRIBUTE = "binaryFrames";
+
+    private final Map<WireFormat, ObjectMapper> mappers = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, DistributionSummary> payloadSizes = new EnumMap<>(WireFormat.class);
+    // Chỉ lưu session không dùng định dạng mặc định (JSON)
+    private final ConcurrentHashMap<String, WireFormat> formatsBySession = new ConcurrentHashMap<>();
+
+    public WireFormatInterceptor(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        // Cùng cấu hình (module, naming, null handling) với JSON, chỉ khác định dạng nhị phân
+        mappers.put(WireFormat.JSON, objectMapper);
+        mappers.put(WireFormat.CBOR, objectMapper.copyWith(new CBORFactory()));
+
+        for (WireFormat format : WireFormat.values()) {
+            payloadSizes.put(format, DistributionSummary.builder("chat.websocket.payload.bytes")
+                    .description("Encoded body size of outbound frames")
+                    .baseUnit("bytes")
+                    .tag("format", format.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    // Converter inbound cho frame SEND có content-type application/cbor
+    public MessageConverter createCborConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(WireFormat.CBOR.getMimeType());
+        converter.setObjectMapper(mappers.get(WireFormat.CBOR));
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    public WireFormat getFormat(String sessionId) {
+        return formatsBySession.getOrDefault(sessionId, WireFormat.JSON);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (message.getPayload() instanceof WirePayload payload) {
+            return encode(message, payload);
+        }
+
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+        if (type == SimpMessageType.CONNECT) {
+            Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+            boolean binaryFrames = attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE));
+            WireFormat format = WireFormat.negotiate(
+                    NativeMessageHeaderAccessor.getFirstNativeHeader(ACCEPT_CONTENT_TYPE_HEADER, headers), binaryFrames);
+            if (format != WireFormat.JSON) {
+                formatsBySession.put(sessionId, format);
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            formatsBySession.remove(sessionId);
+        }
+        return message;
+    }
+
+    private Message<?> encode(Message<?> message, WirePayload payload) {
+        WireFormat format = getFormat(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        byte[] bytes;
+        try {
+            bytes = payload.encode(format, mappers.get(format));
+        } catch (JsonProcessingException ex) {
+            throw new MessageConversionException("Could not encode " + payload + " as " + format, ex);
+        }
+        payloadSizes.get(format).record(bytes.length);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(format.getMimeType());
+        return MessageBuilder.createMessage(bytes, accessor.getMessageHeaders());
+    }
+}
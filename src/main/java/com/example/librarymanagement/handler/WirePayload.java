@@ -0,0 +1,41 @@
+package com.example.librarymanagement.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Payload outbound chưa serialize. WireFormatConverter bọc object trong WirePayload, broker chuyển nguyên
+ * object này tới clientOutboundChannel, nơi WireFormatInterceptor encode theo định dạng của từng session.
+ * Bytes của mỗi định dạng được cache, nên các session cùng nhận một payload (nhiều tab của cùng user,
+ * hoặc mọi thành viên khi ChatDeliveryService fan-out cả conversation) chỉ tốn một lần serialize cho mỗi định dạng.
+ * Mảng byte được chia sẻ giữa các session nên không bao giờ được sửa sau khi encode.
+ * */
+public final class WirePayload {
+    private final Object value;
+    private final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(WireFormat.values().length);
+
+    public WirePayload(Object value) {
+        this.value = value;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    byte[] encode(WireFormat format, ObjectMapper mapper) throws JsonProcessingException {
+        byte[] bytes = encoded.get(format.ordinal());
+        if (bytes == null) {
+            // Hai thread có thể cùng serialize một lần, kết quả giống nhau nên không cần lock
+            bytes = mapper.writeValueAsBytes(value);
+            encoded.set(format.ordinal(), bytes);
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "WirePayload[" + value + "]";
+    }
+}
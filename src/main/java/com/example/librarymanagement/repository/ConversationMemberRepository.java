@@ -0,0 +1,54 @@
+package com.example.librarymanagement.repository;
+
+import com.example.librarymanagement.entity.ConversationMember;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationMemberRepository extends JpaRepository<ConversationMember, Long> {
+    boolean existsByConversationIdAndUserId(Long conversationId, Integer userId);
+
+    Optional<ConversationMember> findByConversationIdAndUserId(Long conversationId, Integer userId);
+
+    // Chỉ lấy các cột cần cho membership index, không hydrate entity
+    @Query("SELECT m.user.id AS userId, m.role AS role FROM ConversationMember m " +
+            "WHERE m.conversation.id = :conversationId")
+    List<MemberView> findMembersByConversationId(@Param("conversationId") Long conversationId);
+
+    @Query("SELECT m.conversation.id FROM ConversationMember m WHERE m.user.id = :userId")
+    List<Long> findConversationIdsByUserId(@Param("userId") Integer userId);
+
+    @Query("SELECT m.lastReadMessageId AS lastReadMessageId, m.lastReadAt AS lastReadAt " +
+            "FROM ConversationMember m WHERE m.conversation.id = :conversationId AND m.user.id = :userId")
+    Optional<ReadPointerView> findReadPointer(@Param("conversationId") Long conversationId,
+                                              @Param("userId") Integer userId);
+
+    @Query("SELECT m.conversation.id AS conversationId, m.user.id AS userId, m.unreadCount AS unreadCount " +
+            "FROM ConversationMember m WHERE m.user.id = :userId")
+    List<UnreadCountView> findUnreadCountsByUserId(@Param("userId") Integer userId);
+
+    interface MemberView {
+        Integer getUserId();
+
+        ConversationMember.ConversationMemberRole getRole();
+    }
+
+    interface ReadPointerView {
+        Long getLastReadMessageId();
+
+        Long getLastReadAt();
+    }
+
+    interface UnreadCountView {
+        Long getConversationId();
+
+        Integer getUserId();
+
+        Integer getUnreadCount();
+    }
+}
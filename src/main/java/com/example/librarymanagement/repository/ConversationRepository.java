@@ -0,0 +1,15 @@
+package com.example.librarymanagement.repository;
+
+import com.example.librarymanagement.entity.Conversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+    @Query("SELECT c.workspace.id FROM Conversation c WHERE c.id = :id")
+    Optional<Integer> findWorkspaceIdById(@Param("id") Long id);
+}
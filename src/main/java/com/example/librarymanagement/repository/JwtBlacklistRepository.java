@@ -4,12 +4,20 @@ import com.example.librarymanagement.entity.JwtBlacklist;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface JwtBlacklistRepository extends JpaRepository<JwtBlacklist, Integer> {
     Boolean existsByTokenJti(String tokenJti);
 
+    // Các jti trong danh sách đã bị thu hồi, dùng để kiểm tra theo lô các session WebSocket đang mở
+    @Query("SELECT j.tokenJti FROM JwtBlacklist j WHERE j.tokenJti IN :jtis")
+    List<String> findBlacklistedJtis(@Param("jtis") Collection<String> jtis);
+
     @Modifying
     @Query("DELETE FROM JwtBlacklist j WHERE j.expiresAt < :now")
     void deleteExpiredTokens(Long now);
@@ -0,0 +1,23 @@
+package com.example.librarymanagement.repository;
+
+import com.example.librarymanagement.entity.MessageArchiveSegment;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MessageArchiveSegmentRepository extends JpaRepository<MessageArchiveSegment, Long> {
+    // Các query dưới đây đi theo index (conversation_id, first_message_id)
+    List<MessageArchiveSegment> findByConversationIdAndFirstMessageIdLessThanOrderByFirstMessageIdDesc(
+            Long conversationId, Long before, Limit limit);
+
+    List<MessageArchiveSegment> findByConversationIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(
+            Long conversationId, Long after, Limit limit);
+
+    // Segment có thể chứa messageId: segment cuối cùng bắt đầu trước hoặc tại id đó
+    Optional<MessageArchiveSegment> findFirstByConversationIdAndFirstMessageIdLessThanEqualOrderByFirstMessageIdDesc(
+            Long conversationId, Long messageId);
+}
@@ -0,0 +1,54 @@
+package com.example.librarymanagement.repository;
+
+import com.example.librarymanagement.entity.Message;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MessageRepository extends JpaRepository<Message, Long> {
+    // Các query dưới đây đều đi theo index (conversation_id, id): seek tới cursor rồi đọc tối đa limit dòng
+    List<Message> findByConversationIdOrderByIdDesc(Long conversationId, Limit limit);
+
+    List<Message> findByConversationIdAndIdLessThanOrderByIdDesc(Long conversationId, Long id, Limit limit);
+
+    List<Message> findByConversationIdAndIdGreaterThanOrderByIdAsc(Long conversationId, Long id, Limit limit);
+
+    // Kiểm tra tin nhắn gốc của reply thuộc đúng conversation, đi theo primary key
+    boolean existsByIdAndConversationId(Long id, Long conversationId);
+
+    // Tin nhắn mới nhất của mỗi conversation; MAX(id) theo nhóm đọc thẳng từ index (conversation_id, id)
+    @Query("SELECT m FROM Message m WHERE m.id IN (" +
+            "SELECT MAX(m2.id) FROM Message m2 WHERE m2.conversation.id IN :conversationIds " +
+            "GROUP BY m2.conversation.id)")
+    List<Message> findLatestByConversationIds(@Param("conversationIds") Collection<Long> conversationIds);
+
+    // Preview tin nhắn gốc cho cả một trang reply trong một query; chỉ lấy phần đầu của content
+    @Query("SELECT m.id AS id, m.user.id AS sender, SUBSTRING(m.content, 1, :length) AS content, " +
+            "m.deletedAt AS deletedAt FROM Message m " +
+            "WHERE m.conversation.id = :conversationId AND m.id IN :ids")
+    List<ParentView> findParentViews(@Param("conversationId") Long conversationId,
+                                     @Param("ids") Collection<Long> ids,
+                                     @Param("length") int length);
+
+    // Range scan trên index (conversation_id, id), chỉ dùng khi cache không trả lời được
+    long countByConversationIdAndIdGreaterThanAndIdLessThanEqualAndUserIdNot(Long conversationId,
+                                                                            Long afterId,
+                                                                            Long upToId,
+                                                                            Integer userId);
+
+    interface ParentView {
+        Long getId();
+
+        Integer getSender();
+
+        String getContent();
+
+        Long getDeletedAt();
+    }
+}
@@ -2,9 +2,13 @@ package com.example.librarymanagement.repository;
 
 import com.example.librarymanagement.entity.Role;
 import com.example.librarymanagement.entity.User;
+import com.example.librarymanagement.enumeration.SocialProvider;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +19,27 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     Boolean existsByEmail(String email);
 
     List<User> findByRole(Role role);
+
+    // Chỉ các cột cần để hiển thị người gửi, không hydrate User / Role
+    @Query("SELECT u.id AS id, p.fullName AS fullName, p.avatarS3Key AS avatarS3Key, " +
+            "p.avatarUrl AS avatarUrl, u.provider AS provider, r.name AS roleName " +
+            "FROM User u JOIN u.role r LEFT JOIN u.userProfile p WHERE u.id IN :ids")
+    List<SenderView> findSenderViews(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT u.lastSeenAt FROM User u WHERE u.id = :id")
+    Long findLastSeenAtById(@Param("id") Integer id);
+
+    interface SenderView {
+        Integer getId();
+
+        String getFullName();
+
+        String getAvatarS3Key();
+
+        String getAvatarUrl();
+
+        SocialProvider getProvider();
+
+        String getRoleName();
+    }
 }
@@ -61,6 +61,8 @@ public class SecurityConfig {
                         -> auth
                         .requestMatchers("/auth/logout").authenticated()
                         .requestMatchers("/auth/**", "/oauth2/**").permitAll()
+                        // Handshake WebSocket tự xác thực token trong CustomHandshakeInterceptor
+                        .requestMatchers("/ws/**", "/ws-native").permitAll()
                         .requestMatchers("/admin/**").hasRole("SUPER_ADMIN")
                         // bắt buộc mọi API khác(ngoài những cái được permitAll
                         // hoặc hasRole) phải đăng nhập mới dùng được)
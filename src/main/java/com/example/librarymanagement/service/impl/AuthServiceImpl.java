@@ -6,6 +6,7 @@ import com.example.librarymanagement.dto.auth.response.JwtResponse;
 import com.example.librarymanagement.entity.*;
 import com.example.librarymanagement.exception.BadRequestException;
 import com.example.librarymanagement.exception.UnauthorizedException;
+import com.example.librarymanagement.handler.StompAuthInterceptor;
 import com.example.librarymanagement.repository.*;
 import com.example.librarymanagement.security.service.UserDetailsServiceImpl;
 import com.example.librarymanagement.security.util.JwtTokenProvider;
@@ -14,6 +15,7 @@ import com.example.librarymanagement.service.inter.EmailService;
 import com.example.librarymanagement.service.inter.EmailTokenService;
 import com.example.librarymanagement.service.inter.RefreshTokenService;
 import com.example.librarymanagement.util.CookieUtil;
+import com.example.librarymanagement.util.Helpers;
 import com.example.librarymanagement.util.TokenHashUtil;
 import jakarta.mail.SendFailedException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -49,6 +51,7 @@ public class AuthServiceImpl implements AuthService {
     private final TokenHashUtil tokenHashUtil;
     private final AwsBuckets awsBuckets;
     private final JwtTokenProvider jwtTokenProvider;
+    private final StompAuthInterceptor stompAuthInterceptor;
 
     @Override
     @Transactional
@@ -193,6 +196,8 @@ public class AuthServiceImpl implements AuthService {
                 .build();
 
         jwtBlacklistRepository.save(blacklist);
+        // Ngắt ngay các session WebSocket đang dùng token này trên node hiện tại
+        Helpers.runAfterCommit(() -> stompAuthInterceptor.revokeToken(jti));
 
         // Revoke refresh token
         String refreshTokenFromCookie = cookieUtil.getRefreshTokenFromCookie(req)
@@ -0,0 +1,113 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ResumeState;
+import com.example.librarymanagement.handler.WirePayload;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.DeliveryReplayService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Frame tới /user/queue/** mang seq theo user và được giữ trong replay buffer (DeliveryReplayServiceImpl),
+ * trừ các destination trong chat.replay.unsequenced-destinations (typing, presence, read): trạng thái tạm thời,
+ * frame sau thay frame trước, client lấy lại trạng thái hiện tại sau khi kết nối lại. Các frame này gửi thẳng,
+ * không có header seq (client không tính chúng vào việc phát hiện khoảng trống) và không chiếm chỗ trong ring.
+ * */
+@Service
+public class ChatDeliveryServiceImpl implements ChatDeliveryService {
+    public static final String MESSAGES_DESTINATION = "/queue/messages";
+    public static final String RESUME_DESTINATION = "/queue/resume";
+    // Header STOMP của frame MESSAGE: seq tăng liên tục theo user, xem DeliveryReplayServiceImpl
+    public static final String SEQ_HEADER = "seq";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MembershipIndexService membershipIndexService;
+    private final DeliveryReplayService deliveryReplayService;
+    private final SimpUserRegistry simpUserRegistry;
+    private final Set<String> unsequencedDestinations;
+
+    public ChatDeliveryServiceImpl(SimpMessagingTemplate messagingTemplate,
+                                   MembershipIndexService membershipIndexService,
+                                   DeliveryReplayService deliveryReplayService,
+                                   SimpUserRegistry simpUserRegistry,
+                                   @Value("${chat.replay.unsequenced-destinations}") List<String> unsequencedDestinations) {
+        this.messagingTemplate = messagingTemplate;
+        this.membershipIndexService = membershipIndexService;
+        this.deliveryReplayService = deliveryReplayService;
+        this.simpUserRegistry = simpUserRegistry;
+        this.unsequencedDestinations = Set.copyOf(unsequencedDestinations);
+    }
+
+    @Override
+    public void deliverToConversation(Long conversationId, Object payload) {
+        deliverToConversation(conversationId, MESSAGES_DESTINATION, payload);
+    }
+
+    @Override
+    public int deliverToConversation(Long conversationId, String destination, Object payload) {
+        // Danh sách thành viên lấy từ index trong bộ nhớ, không query DB cho mỗi tin nhắn
+        int[] memberIds = membershipIndexService.getMemberIds(conversationId);
+        // Một WirePayload cho cả lượt fan-out: mỗi định dạng chỉ serialize một lần
+        // và mọi session của mọi thành viên nhận cùng một mảng byte (kể cả frame replay sau này)
+        WirePayload wirePayload = payload instanceof WirePayload wrapped ? wrapped : new WirePayload(payload);
+        for (int userId : memberIds) {
+            deliverToUser(userId, destination, wirePayload);
+        }
+        return memberIds.length;
+    }
+
+    @Override
+    public void deliverToUser(Integer userId, String destination, Object payload) {
+        // Bọc trước để frame live và frame replay sau này dùng chung bytes đã encode
+        WirePayload wirePayload = payload instanceof WirePayload wrapped ? wrapped : new WirePayload(payload);
+        String user = String.valueOf(userId);
+        // Session của user đăng ký trong registry của node này; không có session thì frame không tới được ai
+        boolean live = simpUserRegistry.getUser(user) != null;
+        if (unsequencedDestinations.contains(destination)) {
+            if (live) {
+                messagingTemplate.convertAndSendToUser(user, destination, wirePayload);
+            }
+            return;
+        }
+        // Map không có nativeHeaders → SimpMessagingTemplate coi mỗi entry là một native header
+        deliveryReplayService.append(userId, destination, wirePayload, live, seq ->
+                messagingTemplate.convertAndSendToUser(user, destination, wirePayload, Map.of(SEQ_HEADER, seq)));
+    }
+
+    @Override
+    public void sendToSession(String sessionId, String destination, Object payload) {
+        sendToSession(sessionId, destination, payload, null);
+    }
+
+    /*
+     * Frame replay chỉ gửi cho session vừa resume (các session khác của user đã nhận chúng).
+     * Frame live có seq lớn hơn có thể đã tới session trước frame replay, client khử trùng / sắp xếp theo seq.
+     * */
+    @Override
+    public ResumeState resume(Integer userId, String sessionId, long lastSeq) {
+        ResumeState state = deliveryReplayService.replay(userId, lastSeq,
+                (seq, destination, payload) -> sendToSession(sessionId, destination, payload, seq));
+        sendToSession(sessionId, RESUME_DESTINATION, state, null);
+        return state;
+    }
+
+    // /user/{sessionId}/** được DefaultUserDestinationResolver resolve theo header sessionId
+    private void sendToSession(String sessionId, String destination, Object payload, Long seq) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        if (seq != null) {
+            accessor.setNativeHeader(SEQ_HEADER, seq.toString());
+        }
+        accessor.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, destination, payload, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,418 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.AddMemberRequest;
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.ParentPreview;
+import com.example.librarymanagement.dto.chat.UpdateMemberRoleRequest;
+import com.example.librarymanagement.dto.user.response.UserCard;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.entity.ConversationMember;
+import com.example.librarymanagement.entity.Message;
+import com.example.librarymanagement.entity.User;
+import com.example.librarymanagement.exception.BadRequestException;
+import com.example.librarymanagement.exception.ResourceNotFoundException;
+import com.example.librarymanagement.repository.ConversationMemberRepository;
+import com.example.librarymanagement.repository.ConversationRepository;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.repository.UserRepository;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.ConversationService;
+import com.example.librarymanagement.service.inter.InboxService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.MessageArchiveService;
+import com.example.librarymanagement.service.inter.MessageSearchService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.util.ChatMessageMapper;
+import com.example.librarymanagement.util.Helpers;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+public class ConversationServiceImpl implements ConversationService {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int PREVIEW_LENGTH = 100;
+
+    private final MessageRepository messageRepository;
+    private final ConversationRepository conversationRepository;
+    private final ConversationMemberRepository conversationMemberRepository;
+    private final UserRepository userRepository;
+    private final RecentMessageCacheService recentMessageCacheService;
+    private final MembershipIndexService membershipIndexService;
+    private final ChatDeliveryService chatDeliveryService;
+    private final InboxService inboxService;
+    private final MessageSearchService messageSearchService;
+    private final MessageArchiveService messageArchiveService;
+    private final UserCardService userCardService;
+
+    @Transactional(readOnly = true)
+    public CursorPage<ChatMessage> getMessages(Long conversationId,
+                                               Long before,
+                                               Long after,
+                                               int limit,
+                                               Authentication authentication) {
+        if (before != null && after != null) {
+            throw new BadRequestException("Only one of 'before' or 'after' can be specified");
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        checkMember(conversationId, Helpers.getCurrentUserId(authentication));
+
+        if (before == null && after == null) {
+            return getLatestMessages(conversationId, limit);
+        }
+
+        // Lấy dư 1 dòng để biết còn trang tiếp theo hay không, không cần COUNT(*)
+        List<ChatMessage> fetched = after != null
+                ? getMessagesAfter(conversationId, after, limit + 1)
+                : getMessagesBefore(conversationId, before, limit + 1);
+
+        boolean hasMore = fetched.size() > limit;
+        List<ChatMessage> items = new ArrayList<>(fetched.subList(0, Math.min(limit, fetched.size())));
+        if (after == null) {
+            Collections.reverse(items); // Đọc theo id DESC → đảo lại thành cũ → mới
+        }
+
+        return CursorPage.of(attachParentPreviews(conversationId, items), limit, hasMore, ChatMessage::getId);
+    }
+
+    /*
+     * Tin nhắn đã lưu trữ luôn cũ hơn mọi tin còn trong bảng messages (xem MessageArchiveService),
+     * nên chỉ đọc archive khi bảng không còn đủ dòng theo hướng cũ hơn.
+     * Trả về tối đa fetchSize tin nhắn, mới → cũ.
+     * */
+    private List<ChatMessage> getMessagesBefore(Long conversationId, long before, int fetchSize) {
+        List<Message> rows = messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(conversationId, before,
+                Limit.of(fetchSize));
+        List<ChatMessage> items = mapToChatMessages(rows, fetchSize);
+        if (items.size() < fetchSize) {
+            long cursor = items.isEmpty() ? before : items.get(items.size() - 1).getId();
+            items.addAll(messageArchiveService.findBefore(conversationId, cursor, fetchSize - items.size()));
+        }
+        return items;
+    }
+
+    // Cursor nằm trong vùng đã lưu trữ → đọc archive trước rồi nối tiếp bằng bảng messages; cũ → mới
+    private List<ChatMessage> getMessagesAfter(Long conversationId, long after, int fetchSize) {
+        List<ChatMessage> items = new ArrayList<>(messageArchiveService.findAfter(conversationId, after, fetchSize));
+        if (items.size() < fetchSize) {
+            long cursor = items.isEmpty() ? after : items.get(items.size() - 1).getId();
+            List<Message> rows = messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(conversationId,
+                    cursor, Limit.of(fetchSize - items.size()));
+            items.addAll(mapToChatMessages(rows, rows.size()));
+        }
+        return items;
+    }
+
+    @Transactional
+    public ChatMessage editMessage(Long conversationId, Long messageId, String content, Authentication authentication) {
+        ChatMessage edited;
+        Optional<Message> row = getOwnMessage(conversationId, messageId, authentication);
+        if (row.isPresent()) {
+            Message message = row.get();
+            if (message.getDeletedAt() != null) {
+                throw new BadRequestException("Cannot edit a deleted message");
+            }
+            message.setContent(content);
+            message = messageRepository.saveAndFlush(message); // @PreUpdate gán updatedAt
+            edited = ChatMessageMapper.toChatMessage(message);
+        } else {
+            // Tin nhắn đã lưu trữ: segment bất biến, bản sửa ghi vào bảng override của archive
+            ChatMessage archived = getOwnArchivedMessage(conversationId, messageId, authentication);
+            if (archived.getDeletedAt() != null) {
+                throw new BadRequestException("Cannot edit a deleted message");
+            }
+            edited = archived.toBuilder()
+                    .content(content)
+                    .updatedAt(System.currentTimeMillis())
+                    .build();
+            messageArchiveService.saveOverride(edited);
+        }
+
+        Helpers.runAfterCommit(() -> {
+            recentMessageCacheService.onMessageEdited(conversationId, messageId, content, edited.getUpdatedAt());
+            inboxService.onMessageEdited(conversationId, messageId, content, edited.getUpdatedAt());
+            messageSearchService.onMessageEdited(edited);
+            chatDeliveryService.deliverToConversation(conversationId, edited);
+        });
+        return edited;
+    }
+
+    @Transactional
+    public void deleteMessage(Long conversationId, Long messageId, Authentication authentication) {
+        Long deletedAt = System.currentTimeMillis();
+        ChatMessage deleted;
+        Optional<Message> row = getOwnMessage(conversationId, messageId, authentication);
+        if (row.isPresent()) {
+            Message message = row.get();
+            if (message.getDeletedAt() != null) {
+                return;
+            }
+            message.setDeletedAt(deletedAt);
+            messageRepository.save(message);
+            deleted = ChatMessageMapper.toChatMessage(message);
+        } else {
+            ChatMessage archived = getOwnArchivedMessage(conversationId, messageId, authentication);
+            if (archived.getDeletedAt() != null) {
+                return;
+            }
+            deleted = archived.toBuilder()
+                    .content(null)
+                    .deletedAt(deletedAt)
+                    .build();
+            messageArchiveService.saveOverride(deleted);
+        }
+
+        Helpers.runAfterCommit(() -> {
+            recentMessageCacheService.onMessageDeleted(conversationId, messageId, deletedAt);
+            inboxService.onMessageDeleted(conversationId, messageId, deletedAt);
+            messageSearchService.onMessageDeleted(messageId);
+            chatDeliveryService.deliverToConversation(conversationId, deleted);
+        });
+    }
+
+    @Transactional
+    public void addMember(Long conversationId, AddMemberRequest req, Authentication authentication) {
+        checkAdmin(conversationId, Helpers.getCurrentUserId(authentication));
+
+        Integer userId = req.getUserId();
+        if (conversationMemberRepository.existsByConversationIdAndUserId(conversationId, userId)) {
+            throw new BadRequestException("User is already a member of this conversation");
+        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
+
+        ConversationMember.ConversationMemberRole role = req.getRole() != null
+                ? req.getRole()
+                : ConversationMember.ConversationMemberRole.MEMBER;
+        ConversationMember member = ConversationMember.builder()
+                .conversation(conversationRepository.getReferenceById(conversationId))
+                .user(user)
+                .role(role)
+                .isNotifEnabled(true)
+                .build();
+        conversationMemberRepository.save(member);
+
+        Helpers.runAfterCommit(() -> {
+            membershipIndexService.onMemberJoined(conversationId, userId, role);
+            inboxService.onMemberJoined(conversationId, userId);
+        });
+    }
+
+    @Transactional
+    public void removeMember(Long conversationId, Integer userId, Authentication authentication) {
+        Integer currentUserId = Helpers.getCurrentUserId(authentication);
+        // Thành viên tự rời conversation, hoặc ADMIN xoá thành viên khác
+        if (!currentUserId.equals(userId)) {
+            checkAdmin(conversationId, currentUserId);
+        }
+
+        ConversationMember member = conversationMemberRepository.findByConversationIdAndUserId(conversationId, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Member not found with user ID: " + userId));
+        conversationMemberRepository.delete(member);
+
+        Helpers.runAfterCommit(() -> {
+            membershipIndexService.onMemberLeft(conversationId, userId);
+            inboxService.onMemberLeft(conversationId, userId);
+        });
+    }
+
+    @Transactional
+    public void updateMemberRole(Long conversationId, Integer userId, UpdateMemberRoleRequest req,
+                                 Authentication authentication) {
+        checkAdmin(conversationId, Helpers.getCurrentUserId(authentication));
+
+        ConversationMember member = conversationMemberRepository.findByConversationIdAndUserId(conversationId, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Member not found with user ID: " + userId));
+        member.setRole(req.getRole());
+        conversationMemberRepository.save(member);
+
+        Helpers.runAfterCommit(() -> membershipIndexService.onMemberRoleChanged(conversationId, userId, req.getRole()));
+    }
+
+    // ------------------------- helper -------------------------
+    private void checkMember(Long conversationId, Integer userId) {
+        if (!membershipIndexService.isMember(conversationId, userId)) {
+            throw new ResourceNotFoundException("Conversation not found with ID: " + conversationId);
+        }
+    }
+
+    // Quản lý thành viên hiếm khi xảy ra → đọc role từ DB, không dựa vào index cục bộ có thể trễ so với node khác
+    private void checkAdmin(Long conversationId, Integer userId) {
+        ConversationMember member = conversationMemberRepository.findByConversationIdAndUserId(conversationId, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Conversation not found with ID: " + conversationId));
+        if (member.getRole() != ConversationMember.ConversationMemberRole.ADMIN) {
+            throw new BadRequestException("Only conversation admins can manage members");
+        }
+    }
+
+    // Trang mới nhất được phục vụ từ ring buffer; lần miss đầu tiên đọc đủ một buffer từ DB để nạp cache
+    private CursorPage<ChatMessage> getLatestMessages(Long conversationId, int limit) {
+        Optional<List<ChatMessage>> cached = recentMessageCacheService.getRecent(conversationId, limit + 1);
+        if (cached.isPresent()) {
+            List<ChatMessage> messages = cached.get();
+            boolean hasMore = messages.size() > limit;
+            List<ChatMessage> items = hasMore ? messages.subList(1, messages.size()) : messages;
+            return CursorPage.of(attachParentPreviews(conversationId, items), limit, hasMore, ChatMessage::getId);
+        }
+
+        int fetchSize = Math.max(limit, recentMessageCacheService.getMessagesPerConversation());
+        long generation = recentMessageCacheService.getGeneration(conversationId);
+        List<Message> rows = messageRepository.findByConversationIdOrderByIdDesc(conversationId,
+                Limit.of(fetchSize + 1));
+        List<ChatMessage> newest = mapToChatMessages(rows, fetchSize);
+        Collections.reverse(newest);
+
+        // Bảng không còn tin nào cũ hơn: phần còn lại (nếu có) nằm trong archive, cache không được coi là đầy đủ
+        List<ChatMessage> archived = List.of();
+        if (rows.size() <= fetchSize) {
+            long cursor = newest.isEmpty() ? Long.MAX_VALUE : newest.get(0).getId();
+            // Luôn đọc ít nhất một tin để biết archive còn dữ liệu hay không
+            archived = messageArchiveService.findBefore(conversationId, cursor, Math.max(1, limit + 1 - newest.size()));
+        }
+        recentMessageCacheService.populate(conversationId, generation, newest,
+                rows.size() <= fetchSize && archived.isEmpty());
+
+        if (!archived.isEmpty()) {
+            List<ChatMessage> combined = new ArrayList<>(archived);
+            Collections.reverse(combined);
+            combined.addAll(newest);
+            newest = combined;
+        }
+        boolean hasMore = newest.size() > limit;
+        List<ChatMessage> items = newest.subList(Math.max(0, newest.size() - limit), newest.size());
+        return CursorPage.of(attachParentPreviews(conversationId, items), limit, hasMore, ChatMessage::getId);
+    }
+
+    /*
+     * Gắn preview tin nhắn gốc cho các reply trong trang, không lazy-load từng parent (N+1):
+     * parent nằm ngay trong trang → ring buffer → phần còn lại một query IN duy nhất → archive.
+     * Tên / avatar người gửi lấy từ UserCardService (không query khi card đã có trong cache).
+     * Luôn trả về bản sao vì các phần tử có thể là object dùng chung của cache.
+     * */
+    private List<ChatMessage> attachParentPreviews(Long conversationId, List<ChatMessage> items) {
+        Map<Long, ChatMessage> inPage = new HashMap<>();
+        for (ChatMessage item : items) {
+            inPage.put(item.getId(), item);
+        }
+
+        Map<Long, ParentPreview> previews = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        for (ChatMessage item : items) {
+            Long parentId = item.getParentId();
+            if (parentId == null || previews.containsKey(parentId)) {
+                continue;
+            }
+            ChatMessage parent = inPage.get(parentId);
+            if (parent == null) {
+                parent = recentMessageCacheService.getMessage(conversationId, parentId).orElse(null);
+            }
+            if (parent != null) {
+                previews.put(parentId, toParentPreview(parent.getId(), parent.getSender(),
+                        parent.getContent(), parent.getDeletedAt()));
+            } else {
+                missing.add(parentId);
+            }
+        }
+        Set<Long> archived = new HashSet<>();
+        if (!missing.isEmpty()) {
+            for (MessageRepository.ParentView view : messageRepository.findParentViews(conversationId, missing,
+                    PREVIEW_LENGTH)) {
+                previews.put(view.getId(), toParentPreview(view.getId(), view.getSender(),
+                        view.getContent(), view.getDeletedAt()));
+            }
+            for (Long parentId : missing) {
+                if (!previews.containsKey(parentId)) {
+                    archived.add(parentId);
+                }
+            }
+        }
+        // Tin nhắn gốc đã chuyển sang archive
+        if (!archived.isEmpty()) {
+            for (ChatMessage parent : messageArchiveService.findByIds(conversationId, archived).values()) {
+                previews.put(parent.getId(), toParentPreview(parent.getId(), parent.getSender(),
+                        parent.getContent(), parent.getDeletedAt()));
+            }
+        }
+
+        Set<Integer> senderIds = new HashSet<>();
+        for (ChatMessage item : items) {
+            senderIds.add(item.getSender());
+        }
+        Map<Integer, UserCard> senders = userCardService.getCards(senderIds);
+
+        List<ChatMessage> result = new ArrayList<>(items.size());
+        for (ChatMessage item : items) {
+            ParentPreview preview = item.getParentId() != null ? previews.get(item.getParentId()) : null;
+            UserCard sender = senders.get(item.getSender());
+            if (preview == null && sender == null) {
+                result.add(item);
+                continue;
+            }
+            result.add(item.toBuilder()
+                    .parent(preview)
+                    .senderName(sender != null ? sender.getDisplayName() : item.getSenderName())
+                    .senderAvatar(sender != null ? sender.getAvatarUrl() : item.getSenderAvatar())
+                    .build());
+        }
+        return result;
+    }
+
+    private static ParentPreview toParentPreview(Long id, Integer sender, String content, Long deletedAt) {
+        boolean deleted = deletedAt != null;
+        String snippet = deleted || content == null ? null
+                : content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+        return ParentPreview.builder()
+                .id(id)
+                .sender(sender)
+                .content(snippet)
+                .deleted(deleted)
+                .build();
+    }
+
+    // Optional.empty() nếu tin nhắn không còn trong bảng messages (có thể đã được lưu trữ)
+    private Optional<Message> getOwnMessage(Long conversationId, Long messageId, Authentication authentication) {
+        Optional<Message> message = messageRepository.findById(messageId)
+                .filter(m -> m.getConversation().getId().equals(conversationId));
+        message.ifPresent(m -> checkOwner(m.getUser().getId(), authentication));
+        return message;
+    }
+
+    private ChatMessage getOwnArchivedMessage(Long conversationId, Long messageId, Authentication authentication) {
+        ChatMessage message = messageArchiveService.findByIds(conversationId, List.of(messageId)).get(messageId);
+        if (message == null) {
+            throw new ResourceNotFoundException("Message not found with ID: " + messageId);
+        }
+        checkOwner(message.getSender(), authentication);
+        return message;
+    }
+
+    private void checkOwner(Integer senderId, Authentication authentication) {
+        if (!senderId.equals(Helpers.getCurrentUserId(authentication))) {
+            throw new BadRequestException("You can only modify your own messages");
+        }
+    }
+
+    private List<ChatMessage> mapToChatMessages(List<Message> rows, int limit) {
+        List<ChatMessage> items = new ArrayList<>(Math.min(rows.size(), limit));
+        for (int i = 0; i < rows.size() && i < limit; i++) {
+            items.add(ChatMessageMapper.toChatMessage(rows.get(i)));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ResumeState;
+import com.example.librarymanagement.service.inter.DeliveryReplayService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/*
+ * Replay buffer theo user cho các frame /user/queue/**.
+ * - Mỗi user có một dãy seq tăng liên tục (+1 mỗi frame, dùng chung cho mọi destination và mọi session của user),
+ *   nên client phát hiện được frame bị mất khi kết nối rớt.
+ * - Buffer là ring cố định capacity frame; frame cũ hơn retention-ms cũng bị loại.
+ * - seq bắt đầu từ currentTimeMillis * 1000 mỗi khi buffer được tạo (lần đầu, sau restart, sau khi bị dọn vì idle),
+ *   nên luôn lớn hơn mọi seq cũ mà client có thể đang giữ: seq cũ rơi ra ngoài buffer → resync.
+ *   Giá trị vẫn nằm trong khoảng số nguyên an toàn của JavaScript (< 2^53).
+ * - Payload được giữ nguyên object (thường là WirePayload đã có bytes encode), không serialize lại khi replay.
+ * - Chỉ giữ frame cho user đang có session, hoặc vừa mất session chưa quá detached-ms (rớt mạng rồi kết nối lại).
+ *   User chưa có buffer mà không có session thì không tạo buffer; quá detached-ms thì buffer bị gỡ
+ *   → lần resume sau nhận resync, không có khoảng trống bị bỏ qua âm thầm.
+ * - Frame ephemeral (typing, presence, read) không đi qua đây, xem ChatDeliveryServiceImpl.
+ * */
+@Slf4j
+@Service
+public class DeliveryReplayServiceImpl implements DeliveryReplayService {
+    private final int capacity;
+    private final long retentionMs;
+    private final long detachedMs;
+
+    private final ConcurrentHashMap<Integer, ReplayBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final Counter replayedCounter;
+    private final Counter resumeCounter;
+    private final Counter resyncCounter;
+    private final Counter detachedCounter;
+
+    public DeliveryReplayServiceImpl(MeterRegistry meterRegistry,
+                                     @Value("${chat.replay.capacity}") int capacity,
+                                     @Value("${chat.replay.retention-ms}") long retentionMs,
+                                     @Value("${chat.replay.detached-ms}") long detachedMs) {
+        this.capacity = capacity;
+        this.retentionMs = retentionMs;
+        this.detachedMs = detachedMs;
+
+        Gauge.builder("chat.replay.users", buffers, ConcurrentHashMap::size)
+                .description("Users with a live replay buffer")
+                .register(meterRegistry);
+        replayedCounter = Counter.builder("chat.replay.frames")
+                .description("Frames re-sent to reconnecting sessions")
+                .register(meterRegistry);
+        resumeCounter = Counter.builder("chat.replay.resumes").tag("result", "replayed").register(meterRegistry);
+        resyncCounter = Counter.builder("chat.replay.resumes").tag("result", "resync").register(meterRegistry);
+        detachedCounter = Counter.builder("chat.replay.detached")
+                .description("Replay buffers dropped because the user had no session for longer than detached-ms")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long append(Integer userId, String destination, Object payload, boolean live, LongConsumer sender) {
+        while (true) {
+            ReplayBuffer buffer = live
+                    ? buffers.computeIfAbsent(userId, id -> new ReplayBuffer(capacity))
+                    : buffers.get(userId);
+            if (buffer == null) {
+                return -1;
+            }
+            synchronized (buffer) {
+                // Buffer vừa bị sweep() gỡ khỏi map, lấy buffer mới
+                if (buffer.retired) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (live) {
+                    buffer.detachedAt = 0;
+                } else if (buffer.detachedAt == 0) {
+                    buffer.detachedAt = now;
+                } else if (now - buffer.detachedAt > detachedMs) {
+                    buffer.retired = true;
+                    buffers.remove(userId, buffer);
+                    detachedCounter.increment();
+                    return -1;
+                }
+                buffer.expire(now - retentionMs);
+                long seq = buffer.add(destination, payload, now);
+                sender.accept(seq);
+                return seq;
+            }
+        }
+    }
+
+    @Override
+    public ResumeState replay(Integer userId, long lastSeq, FrameReplayer replayer) {
+        ReplayBuffer buffer = buffers.get(userId);
+        if (buffer == null) {
+            // Không gửi gì cho user trong retention-ms gần nhất (hoặc server vừa restart): không biết client thiếu gì
+            resyncCounter.increment();
+            return ResumeState.builder().resync(true).replayed(0).build();
+        }
+
+        synchronized (buffer) {
+            long latest = buffer.nextSeq - 1;
+            if (buffer.retired || lastSeq > latest) {
+                resyncCounter.increment();
+                return ResumeState.builder().resync(true).replayed(0).seq(buffer.retired ? null : latest).build();
+            }
+
+            buffer.expire(System.currentTimeMillis() - retentionMs);
+            if (lastSeq < buffer.oldestSeq() - 1) {
+                resyncCounter.increment();
+                log.debug("Replay gap too old for user {}: lastSeq={}, oldest={}", userId, lastSeq, buffer.oldestSeq());
+                return ResumeState.builder().resync(true).replayed(0).seq(latest).build();
+            }
+
+            int replayed = 0;
+            for (int i = (int) (lastSeq + 1 - buffer.oldestSeq()); i < buffer.size; i++) {
+                Frame frame = buffer.get(i);
+                replayer.replay(frame.seq(), frame.destination(), frame.payload());
+                replayed++;
+            }
+            resumeCounter.increment();
+            replayedCounter.increment(replayed);
+            return ResumeState.builder().resync(false).replayed(replayed).seq(latest).build();
+        }
+    }
+
+    // Gỡ buffer của user không nhận frame nào trong retention-ms, tránh giữ bộ nhớ cho user đã rời đi
+    @Scheduled(fixedDelayString = "${chat.replay.sweep-interval-ms}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        int removed = 0;
+        for (var entry : buffers.entrySet()) {
+            ReplayBuffer buffer = entry.getValue();
+            synchronized (buffer) {
+                if (buffer.lastAppendAt >= cutoff) {
+                    continue;
+                }
+                buffer.retired = true;
+            }
+            buffers.remove(entry.getKey(), buffer);
+            removed++;
+        }
+        if (removed > 0) {
+            log.debug("Swept {} idle replay buffers", removed);
+        }
+    }
+
+    private record Frame(long seq, String destination, Object payload, long createdAt) {
+    }
+
+    // Ring buffer, mọi truy cập nằm trong lock của chính nó
+    private static final class ReplayBuffer {
+        private final Frame[] frames;
+        private int head;
+        private int size;
+        private long nextSeq = System.currentTimeMillis() * 1000;
+        private long lastAppendAt;
+        private long detachedAt; // 0 khi user còn session
+        private boolean retired;
+
+        ReplayBuffer(int capacity) {
+            this.frames = new Frame[capacity];
+        }
+
+        long add(String destination, Object payload, long now) {
+            long seq = nextSeq++;
+            int tail = (head + size) % frames.length;
+            frames[tail] = new Frame(seq, destination, payload, now);
+            if (size == frames.length) {
+                head = (head + 1) % frames.length;
+            } else {
+                size++;
+            }
+            lastAppendAt = now;
+            return seq;
+        }
+
+        void expire(long cutoff) {
+            while (size > 0 && frames[head].createdAt() < cutoff) {
+                frames[head] = null;
+                head = (head + 1) % frames.length;
+                size--;
+            }
+        }
+
+        // seq của frame cũ nhất còn giữ; buffer rỗng thì là seq sẽ cấp tiếp theo
+        long oldestSeq() {
+            return size == 0 ? nextSeq : frames[head].seq();
+        }
+
+        Frame get(int index) {
+            return frames[(head + index) % frames.length];
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.example.librarymanagement.repository.UserProfileRepository;
 import com.example.librarymanagement.repository.UserRepository;
 import com.example.librarymanagement.service.inter.FileService;
 import com.example.librarymanagement.service.inter.S3Service;
+import com.example.librarymanagement.service.inter.UserCardService;
 import com.example.librarymanagement.validation.FileValidator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +33,7 @@ public class FileServiceImpl implements FileService {
     private final UserProfileRepository userProfileRepository;
     private final FileMetadataRepository fileMetadataRepository;
     private final FileValidator fileValidator;
+    private final UserCardService userCardService;
 
     @Override
     @Transactional
@@ -55,6 +57,7 @@ public class FileServiceImpl implements FileService {
 
         // Update user profile avatar
         updateUserAvatar(user, s3Key);
+        userCardService.onUserChanged(user.getId());
 
         String presignUrl = s3Service.generatePresignedUrl(s3Key, Duration.ofHours(24));
         return mapToFileResponse(metadata, presignUrl);
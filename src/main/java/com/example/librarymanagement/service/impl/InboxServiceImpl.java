@@ -0,0 +1,405 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.InboxItem;
+import com.example.librarymanagement.dto.user.response.UserCard;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.entity.Conversation;
+import com.example.librarymanagement.entity.Message;
+import com.example.librarymanagement.repository.ConversationRepository;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.service.inter.InboxService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UnreadCountService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.util.ChatMessageMapper;
+import com.example.librarymanagement.util.Helpers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/*
+ * Inbox (danh sách conversation của user) được duy trì tăng dần thay vì join khi đọc:
+ * - Mỗi conversation có một ConversationSummary bất biến dùng chung cho mọi thành viên
+ *   (tên, loại, tin nhắn cuối), được thay thế khi có tin nhắn mới / sửa / xoá.
+ * - Mỗi user có một UserInbox chỉ chứa thứ tự: activityId → conversationId (TreeMap).
+ *   activityId là id tin nhắn cuối, hoặc id conversation nếu chưa có tin nào; cả hai đều là snowflake
+ *   nên sắp theo activityId chính là sắp theo thời gian hoạt động, và activityId dùng luôn làm cursor.
+ * - Tin nhắn mới chỉ đổi vị trí conversation trong inbox của các thành viên đã được nạp.
+ * - Inbox được nạp lazy: một query conversation + một query tin nhắn cuối (MAX(id) theo nhóm)
+ *   cho các conversation chưa có summary; giới hạn số user giữ trong bộ nhớ, vượt ngưỡng loại theo LRU.
+ * - Summary cũng giới hạn theo max-conversations (LRU). Summary chỉ là bản dựng lại được từ DB / recent cache,
+ *   nên loại bất kỳ lúc nào: trang inbox nạp lại summary còn thiếu, tin nhắn mới vẫn đổi vị trí trong inbox.
+ * Số tin chưa đọc lấy từ UnreadCountService lúc đọc, nên luôn khớp với badge.
+ * */
+@Service
+public class InboxServiceImpl implements InboxService {
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MembershipIndexService membershipIndexService;
+    private final RecentMessageCacheService recentMessageCacheService;
+    private final UnreadCountService unreadCountService;
+    private final UserCardService userCardService;
+    private final int maxUsers;
+    private final int maxConversations;
+
+    // LRU theo access order; mọi truy cập nằm trong lock của chính map
+    private final LinkedHashMap<Long, ConversationSummary> summaries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final LinkedHashMap<Integer, UserInbox> inboxes = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private final Counter loadCounter;
+
+    public InboxServiceImpl(ConversationRepository conversationRepository,
+                            MessageRepository messageRepository,
+                            MembershipIndexService membershipIndexService,
+                            RecentMessageCacheService recentMessageCacheService,
+                            UnreadCountService unreadCountService,
+                            UserCardService userCardService,
+                            MeterRegistry meterRegistry,
+                            @Value("${chat.inbox.max-users}") int maxUsers,
+                            @Value("${chat.inbox.max-conversations}") int maxConversations) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.membershipIndexService = membershipIndexService;
+        this.recentMessageCacheService = recentMessageCacheService;
+        this.unreadCountService = unreadCountService;
+        this.userCardService = userCardService;
+        this.maxUsers = maxUsers;
+        this.maxConversations = maxConversations;
+
+        loadCounter = Counter.builder("chat.inbox.loads")
+                .description("Inboxes built from the database")
+                .register(meterRegistry);
+        Gauge.builder("chat.inbox.users", this, InboxServiceImpl::inboxCount).register(meterRegistry);
+        Gauge.builder("chat.inbox.conversations", this, InboxServiceImpl::summaryCount).register(meterRegistry);
+    }
+
+    @Override
+    public CursorPage<InboxItem> getInbox(Long before, int limit, Authentication authentication) {
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        Integer userId = Helpers.getCurrentUserId(authentication);
+
+        List<Long> conversationIds = getOrLoadInbox(userId).page(before, pageSize + 1);
+        boolean hasMore = conversationIds.size() > pageSize;
+        if (hasMore) {
+            conversationIds = conversationIds.subList(0, pageSize);
+        }
+
+        // Summary của trang có thể đã bị loại khỏi bộ nhớ
+        loadSummaries(conversationIds.stream().mapToLong(Long::longValue).toArray());
+        List<ConversationSummary> page = new ArrayList<>(conversationIds.size());
+        Set<Integer> senderIds = new HashSet<>();
+        for (Long conversationId : conversationIds) {
+            ConversationSummary summary = getSummary(conversationId);
+            if (summary != null) {
+                page.add(summary);
+                if (summary.lastMessage() != null) {
+                    senderIds.add(summary.lastMessage().getSender());
+                }
+            }
+        }
+
+        Map<Long, Integer> unreadCounts = unreadCountService.getUnreadCounts(authentication);
+        Map<Integer, UserCard> senders = userCardService.getCards(senderIds);
+        List<InboxItem> items = new ArrayList<>(page.size());
+        for (ConversationSummary summary : page) {
+            items.add(InboxItem.builder()
+                    .conversationId(summary.conversationId())
+                    .name(summary.name())
+                    .type(summary.type() != null ? summary.type().name() : null)
+                    .lastMessage(withSender(summary.lastMessage(), senders))
+                    .unreadCount(unreadCounts.getOrDefault(summary.conversationId(), 0))
+                    .activityId(summary.activityId())
+                    .build());
+        }
+
+        // Trang được sắp mới → cũ: ?before= dùng activityId nhỏ nhất (phần tử cuối)
+        return CursorPage.<InboxItem>builder()
+                .items(items)
+                .limit(pageSize)
+                .beforeCursor(items.isEmpty() ? null : items.get(items.size() - 1).getActivityId())
+                .afterCursor(items.isEmpty() ? null : items.get(0).getActivityId())
+                .hasMore(hasMore)
+                .build();
+    }
+
+    @Override
+    public void onMessageSaved(ChatMessage message) {
+        Long conversationId = message.getConversationId();
+        ConversationSummary updated;
+        synchronized (summaries) {
+            updated = summaries.computeIfPresent(conversationId, (id, summary) -> summary.withNewerMessage(message));
+        }
+        if (updated != null && updated.lastMessage() != message) {
+            return;
+        }
+        // Summary không có trong bộ nhớ (chưa nạp hoặc đã bị loại): vẫn đổi vị trí trong các inbox đã nạp
+        long activityId = updated != null ? updated.activityId() : message.getId();
+        membershipIndexService.forEachMember(conversationId, userId -> {
+            UserInbox inbox = getLoadedInbox(userId);
+            if (inbox != null) {
+                inbox.advance(conversationId, activityId);
+            }
+        });
+    }
+
+    @Override
+    public void onMessageEdited(Long conversationId, Long messageId, String content, Long updatedAt) {
+        replaceLastMessage(conversationId, messageId, message -> message.toBuilder()
+                .content(content)
+                .updatedAt(updatedAt)
+                .build());
+    }
+
+    @Override
+    public void onMessageDeleted(Long conversationId, Long messageId, Long deletedAt) {
+        replaceLastMessage(conversationId, messageId, message -> message.toBuilder()
+                .content(null)
+                .deletedAt(deletedAt)
+                .build());
+    }
+
+    @Override
+    public void onMemberJoined(Long conversationId, Integer userId) {
+        UserInbox inbox = getLoadedInbox(userId);
+        if (inbox == null) {
+            return;
+        }
+        loadSummaries(new long[]{conversationId});
+        ConversationSummary summary = getSummary(conversationId);
+        if (summary != null) {
+            inbox.put(conversationId, summary.activityId());
+        }
+    }
+
+    @Override
+    public void onMemberLeft(Long conversationId, Integer userId) {
+        UserInbox inbox = getLoadedInbox(userId);
+        if (inbox != null) {
+            inbox.remove(conversationId);
+        }
+    }
+
+    // ------------------------- helper -------------------------
+    private UserInbox getLoadedInbox(Integer userId) {
+        synchronized (inboxes) {
+            return inboxes.get(userId);
+        }
+    }
+
+    private UserInbox getOrLoadInbox(Integer userId) {
+        UserInbox cached = getLoadedInbox(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        loadCounter.increment();
+        UserInbox loaded = new UserInbox();
+        sync(loaded, userId);
+        UserInbox inbox;
+        synchronized (inboxes) {
+            inbox = inboxes.putIfAbsent(userId, loaded);
+            if (inbox == null) {
+                inbox = loaded;
+                trim();
+            }
+        }
+        // Tin nhắn / thay đổi thành viên xảy ra trong lúc nạp không thấy inbox chưa công bố → đồng bộ lại một lần
+        sync(inbox, userId);
+        return inbox;
+    }
+
+    // Đưa inbox về khớp với membership index và summary hiện tại
+    private void sync(UserInbox inbox, Integer userId) {
+        long[] conversationIds = membershipIndexService.getConversationIds(userId);
+        loadSummaries(conversationIds);
+        inbox.retainOnly(conversationIds);
+        for (long conversationId : conversationIds) {
+            ConversationSummary summary = getSummary(conversationId);
+            if (summary != null) {
+                inbox.put(conversationId, summary.activityId());
+            }
+        }
+    }
+
+    private void loadSummaries(long[] conversationIds) {
+        List<Long> missing = new ArrayList<>();
+        synchronized (summaries) {
+            for (long conversationId : conversationIds) {
+                if (!summaries.containsKey(conversationId)) {
+                    missing.add(conversationId);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Map<Long, ChatMessage> latest = new HashMap<>();
+        for (Message message : messageRepository.findLatestByConversationIds(missing)) {
+            latest.put(message.getConversation().getId(), ChatMessageMapper.toChatMessage(message));
+        }
+        for (Conversation conversation : conversationRepository.findAllById(missing)) {
+            if (conversation.getDeletedAt() != null) {
+                continue;
+            }
+            Long conversationId = conversation.getId();
+            ConversationSummary loaded = new ConversationSummary(conversationId, conversation.getName(),
+                    conversation.getType(), latest.get(conversationId));
+            synchronized (summaries) {
+                summaries.merge(conversationId, loaded,
+                        (current, fresh) -> current.withNewerMessage(fresh.lastMessage()));
+                trimSummaries();
+            }
+
+            // Tin nhắn commit sau lúc đọc DB nhưng trước khi summary được công bố đã nằm trong ring buffer
+            recentMessageCacheService.getRecent(conversationId, 1)
+                    .filter(messages -> !messages.isEmpty())
+                    .ifPresent(messages -> {
+                        synchronized (summaries) {
+                            summaries.computeIfPresent(conversationId,
+                                    (id, summary) -> summary.withNewerMessage(messages.get(0)));
+                        }
+                    });
+        }
+    }
+
+    private ConversationSummary getSummary(Long conversationId) {
+        synchronized (summaries) {
+            return summaries.get(conversationId);
+        }
+    }
+
+    private void replaceLastMessage(Long conversationId, Long messageId, UnaryOperator<ChatMessage> updater) {
+        synchronized (summaries) {
+            summaries.computeIfPresent(conversationId, (id, summary) ->
+                    summary.lastMessage() != null && summary.lastMessage().getId().equals(messageId)
+                            ? summary.withLastMessage(updater.apply(summary.lastMessage()))
+                            : summary);
+        }
+    }
+
+    // Không sửa object trong summary vì đang được dùng chung
+    private static ChatMessage withSender(ChatMessage message, Map<Integer, UserCard> senders) {
+        return message != null ? ChatMessageMapper.withSender(message, senders.get(message.getSender())) : null;
+    }
+
+    private void trim() {
+        var it = inboxes.entrySet().iterator();
+        while (inboxes.size() > maxUsers && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void trimSummaries() {
+        var it = summaries.entrySet().iterator();
+        while (summaries.size() > maxConversations && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private int summaryCount() {
+        synchronized (summaries) {
+            return summaries.size();
+        }
+    }
+
+    private int inboxCount() {
+        synchronized (inboxes) {
+            return inboxes.size();
+        }
+    }
+
+    private record ConversationSummary(Long conversationId,
+                                       String name,
+                                       Conversation.ConversationType type,
+                                       ChatMessage lastMessage) {
+        long activityId() {
+            return lastMessage != null ? lastMessage.getId() : conversationId;
+        }
+
+        ConversationSummary withLastMessage(ChatMessage message) {
+            return new ConversationSummary(conversationId, name, type, message);
+        }
+
+        ConversationSummary withNewerMessage(ChatMessage message) {
+            if (message == null || (lastMessage != null && lastMessage.getId() >= message.getId())) {
+                return this;
+            }
+            return withLastMessage(message);
+        }
+    }
+
+    // Thứ tự conversation của một user, mới nhất trước
+    static final class UserInbox {
+        private final Map<Long, Long> activityByConversation = new HashMap<>();
+        private final TreeMap<Long, Long> conversationByActivity = new TreeMap<>();
+
+        synchronized void put(long conversationId, long activityId) {
+            Long previous = activityByConversation.put(conversationId, activityId);
+            if (previous != null) {
+                conversationByActivity.remove(previous);
+            }
+            conversationByActivity.put(activityId, conversationId);
+        }
+
+        // Không kéo conversation lùi lại khi tin nhắn tới muộn (summary không có để so sánh)
+        synchronized void advance(long conversationId, long activityId) {
+            Long previous = activityByConversation.get(conversationId);
+            if (previous == null || previous < activityId) {
+                put(conversationId, activityId);
+            }
+        }
+
+        synchronized void remove(long conversationId) {
+            Long previous = activityByConversation.remove(conversationId);
+            if (previous != null) {
+                conversationByActivity.remove(previous);
+            }
+        }
+
+        synchronized void retainOnly(long[] sortedConversationIds) {
+            activityByConversation.entrySet().removeIf(entry -> {
+                if (Arrays.binarySearch(sortedConversationIds, entry.getKey()) >= 0) {
+                    return false;
+                }
+                conversationByActivity.remove(entry.getValue());
+                return true;
+            });
+        }
+
+        synchronized List<Long> page(Long before, int count) {
+            NavigableMap<Long, Long> view = before != null
+                    ? conversationByActivity.headMap(before, false)
+                    : conversationByActivity;
+            List<Long> result = new ArrayList<>(Math.min(count, view.size()));
+            for (Long conversationId : view.descendingMap().values()) {
+                if (result.size() == count) {
+                    break;
+                }
+                result.add(conversationId);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.repository.UserRepository;
+import com.example.librarymanagement.service.inter.LastSeenService;
+import com.example.librarymanagement.util.ConcurrentIntLongMap;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Write-behind cho users.last_seen_at:
+ * - touch() chỉ cập nhật hai map primitive trong bộ nhớ (giá trị hiện tại + các user chưa ghi xuống DB),
+ *   nên có thể gọi ở mọi frame STOMP mà không chạm DB.
+ * - Mỗi flush-interval-ms (và khi shutdown) toàn bộ user "dirty" được ghi bằng một JDBC batch UPDATE;
+ *   trong một cửa sổ flush, mỗi user chỉ có đúng một giá trị (mới nhất).
+ * - UPDATE có điều kiện last_seen_at < ? nên ghi muộn / trùng lặp không làm lùi giá trị trong DB.
+ * - Sau mỗi lần flush, user đã ghi xuống DB và không hoạt động quá idle-ms bị bỏ khỏi bộ nhớ (đọc lại từ DB khi cần),
+ *   nên map chỉ giữ user đang hoạt động gần đây thay vì mọi user từng kết nối từ lúc khởi động.
+ * - User chưa có last_seen_at trong DB được nhớ là "không có giá trị" trong negative-ttl-ms để không query lại
+ *   mỗi lần đọc. negative-ttl-ms phải nhỏ hơn idle-ms: khi một user bị bỏ khỏi map thì mọi mục "không có giá trị"
+ *   tạo trước lần touch gần nhất của user đó đã hết hạn.
+ * */
+@Slf4j
+@Service
+public class LastSeenServiceImpl implements LastSeenService {
+    private static final String UPDATE_SQL = "UPDATE users SET last_seen_at = ? " +
+            "WHERE id = ? AND (last_seen_at IS NULL OR last_seen_at < ?)";
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final long idleMs;
+    private final long negativeTtlMs;
+
+    private final ConcurrentIntLongMap lastSeen = new ConcurrentIntLongMap();
+    private final ConcurrentIntLongMap dirty = new ConcurrentIntLongMap();
+    // userId → thời điểm hết hạn của kết quả "DB không có last_seen_at"
+    private final ConcurrentIntLongMap missing = new ConcurrentIntLongMap();
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+
+    public LastSeenServiceImpl(JdbcTemplate jdbcTemplate,
+                               UserRepository userRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${chat.last-seen.idle-ms}") long idleMs,
+                               @Value("${chat.last-seen.negative-ttl-ms}") long negativeTtlMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userRepository = userRepository;
+        this.idleMs = idleMs;
+        this.negativeTtlMs = negativeTtlMs;
+
+        Gauge.builder("chat.last-seen.pending", dirty, ConcurrentIntLongMap::size)
+                .description("Users whose last-seen has not been written to the database yet")
+                .register(meterRegistry);
+        Gauge.builder("chat.last-seen.cached", lastSeen, ConcurrentIntLongMap::size)
+                .description("Users whose last-seen is held in memory")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("chat.last-seen.batch.size")
+                .description("Rows written per last-seen flush")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.last-seen.flush.latency")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void touch(Integer userId, long seenAt) {
+        lastSeen.merge(userId, seenAt, Math::max);
+        dirty.merge(userId, seenAt, Math::max);
+    }
+
+    @Override
+    public Long getLastSeen(Integer userId) {
+        long cached = lastSeen.get(userId, UNKNOWN);
+        if (cached != UNKNOWN) {
+            return cached;
+        }
+        long now = System.currentTimeMillis();
+        if (missing.get(userId, 0) > now) {
+            return null;
+        }
+        Long stored = userRepository.findLastSeenAtById(userId);
+        if (stored == null) {
+            missing.put(userId, now + negativeTtlMs);
+            return null;
+        }
+        // touch() có thể đã chạy trong lúc đọc DB → giữ giá trị lớn hơn
+        return lastSeen.merge(userId, stored, Math::max);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.last-seen.flush-interval-ms}")
+    @Override
+    public int flush() {
+        int written = writeDirty();
+        evictIdle();
+        return written;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        int written = writeDirty();
+        log.info("Flushed last-seen for {} users on shutdown", written);
+    }
+
+    /*
+     * Chỉ bỏ user không còn dirty (giá trị đã nằm trong DB); remove có điều kiện theo giá trị đã đọc,
+     * nên user vừa được touch trong lúc quét vẫn được giữ lại.
+     * */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        long idleBefore = now - idleMs;
+        lastSeen.forEach((userId, seenAt) -> {
+            if (seenAt < idleBefore && !dirty.containsKey(userId)) {
+                lastSeen.remove(userId, seenAt);
+            }
+        });
+        missing.forEach((userId, expiresAt) -> {
+            if (expiresAt <= now) {
+                missing.remove(userId, expiresAt);
+            }
+        });
+    }
+
+    private int writeDirty() {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+
+        int capacity = dirty.size() + 16;
+        int[] userIds = new int[capacity];
+        long[] seenAts = new long[capacity];
+        int[] count = {0};
+        dirty.drain((userId, seenAt) -> {
+            // Có thể có thêm user được touch sau khi đo size(), phần vượt quá được trả lại cho lần sau
+            if (count[0] == userIds.length) {
+                dirty.merge(userId, seenAt, Math::max);
+                return;
+            }
+            userIds[count[0]] = userId;
+            seenAts[count[0]] = seenAt;
+            count[0]++;
+        });
+        int size = count[0];
+
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setLong(1, seenAts[i]);
+                    ps.setInt(2, userIds[i]);
+                    ps.setLong(3, seenAts[i]);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            });
+            batchSizeSummary.record(size);
+            return size;
+        } catch (RuntimeException ex) {
+            // Trả lại hàng đợi để thử lại ở lần flush sau (giá trị mới hơn, nếu có, vẫn được giữ)
+            log.error("Failed to flush last-seen for {} users", size, ex);
+            for (int i = 0; i < size; i++) {
+                dirty.merge(userIds[i], seenAts[i], Math::max);
+            }
+            return 0;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
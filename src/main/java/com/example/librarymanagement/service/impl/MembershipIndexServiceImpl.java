@@ -0,0 +1,299 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.entity.ConversationMember.ConversationMemberRole;
+import com.example.librarymanagement.repository.ConversationMemberRepository;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/*
+ * Index thành viên trong bộ nhớ phục vụ fan-out:
+ *   conversationId → int[] userId (đã sắp xếp) + byte[] role song song
+ *   userId         → long[] conversationId (đã sắp xếp)
+ * Mỗi entry là snapshot bất biến; thay đổi (join / leave / đổi role) tạo mảng mới rồi thay thế entry
+ * (copy-on-write), nên thread fan-out đọc mảng mà không cần lock và không cấp phát.
+ * So với Map<Integer, Set<Integer>>, mỗi thành viên chỉ tốn 5 byte thay vì một Integer + một node HashMap.
+ *
+ * Cả hai chiều được nạp lazy từ DB và giới hạn số entry, vượt ngưỡng thì loại entry LRU.
+ *
+ * Các hook onMember* chỉ cập nhật index của node hiện tại, node khác không biết thay đổi. Vì vậy:
+ * - Mỗi entry chỉ được dùng trong ttl-ms kể từ lúc nạp từ DB, hết hạn thì nạp lại
+ *   → thành viên bị xóa ở node khác mất quyền ở node này chậm nhất sau ttl-ms.
+ * - isMember trả lời "không phải thành viên" luôn được kiểm tra lại trên DB (thành viên mới thêm ở node khác
+ *   không bị từ chối); nếu DB nói có thì entry cũ bị bỏ để lần sau nạp lại.
+ * */
+@Service
+public class MembershipIndexServiceImpl implements MembershipIndexService {
+    private static final byte NO_ROLE = -1;
+    private static final ConversationMemberRole[] ROLES = ConversationMemberRole.values();
+
+    private final ConversationMemberRepository conversationMemberRepository;
+    private final int maxConversations;
+    private final int maxUsers;
+    private final long ttlMs;
+
+    private final LinkedHashMap<Long, MemberSet> members = new LinkedHashMap<>(1024, 0.75f, true);
+    private final LinkedHashMap<Integer, UserConversations> conversationsByUser = new LinkedHashMap<>(1024, 0.75f, true);
+
+    // Tăng mỗi khi membership thay đổi; kết quả đọc DB chỉ được cache nếu không có thay đổi nào xen vào
+    private final AtomicLong generation = new AtomicLong();
+
+    public MembershipIndexServiceImpl(ConversationMemberRepository conversationMemberRepository,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${chat.membership-index.max-conversations}") int maxConversations,
+                                      @Value("${chat.membership-index.max-users}") int maxUsers,
+                                      @Value("${chat.membership-index.ttl-ms}") long ttlMs) {
+        this.conversationMemberRepository = conversationMemberRepository;
+        this.maxConversations = maxConversations;
+        this.maxUsers = maxUsers;
+        this.ttlMs = ttlMs;
+
+        Gauge.builder("chat.membership-index.conversations", members, this::sizeOf).register(meterRegistry);
+        Gauge.builder("chat.membership-index.users", conversationsByUser, this::sizeOf).register(meterRegistry);
+    }
+
+    @Override
+    public boolean isMember(Long conversationId, Integer userId) {
+        MemberSet set = getMemberSet(conversationId);
+        if (set.indexOf(userId) >= 0) {
+            return true;
+        }
+        // Có thể user vừa được thêm ở node khác → hỏi lại DB trước khi từ chối
+        if (!conversationMemberRepository.existsByConversationIdAndUserId(conversationId, userId)) {
+            return false;
+        }
+        synchronized (members) {
+            members.remove(conversationId, set);
+        }
+        return true;
+    }
+
+    @Override
+    public ConversationMemberRole getRole(Long conversationId, Integer userId) {
+        MemberSet set = getMemberSet(conversationId);
+        int index = set.indexOf(userId);
+        return index >= 0 && set.roles[index] != NO_ROLE ? ROLES[set.roles[index]] : null;
+    }
+
+    @Override
+    public int[] getMemberIds(Long conversationId) {
+        return getMemberSet(conversationId).userIds;
+    }
+
+    @Override
+    public void forEachMember(Long conversationId, IntConsumer action) {
+        int[] userIds = getMemberSet(conversationId).userIds;
+        for (int userId : userIds) {
+            action.accept(userId);
+        }
+    }
+
+    @Override
+    public long[] getConversationIds(Integer userId) {
+        UserConversations cached;
+        synchronized (conversationsByUser) {
+            cached = conversationsByUser.get(userId);
+        }
+        if (cached != null && !isExpired(cached.loadedAt)) {
+            return cached.ids;
+        }
+
+        long gen = generation.get();
+        long loadedAt = System.currentTimeMillis();
+        long[] loaded = conversationMemberRepository.findConversationIdsByUserId(userId).stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+        synchronized (conversationsByUser) {
+            if (generation.get() == gen) {
+                conversationsByUser.put(userId, new UserConversations(loaded, loadedAt));
+                trim(conversationsByUser, maxUsers);
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public void onMemberJoined(Long conversationId, Integer userId, ConversationMemberRole role) {
+        generation.incrementAndGet();
+        synchronized (members) {
+            members.computeIfPresent(conversationId, (id, set) -> set.with(userId, toByte(role)));
+        }
+        synchronized (conversationsByUser) {
+            conversationsByUser.computeIfPresent(userId, (id, entry) -> entry.with(addSorted(entry.ids, conversationId)));
+        }
+    }
+
+    @Override
+    public void onMemberLeft(Long conversationId, Integer userId) {
+        generation.incrementAndGet();
+        synchronized (members) {
+            members.computeIfPresent(conversationId, (id, set) -> set.without(userId));
+        }
+        synchronized (conversationsByUser) {
+            conversationsByUser.computeIfPresent(userId, (id, entry) -> entry.with(removeSorted(entry.ids, conversationId)));
+        }
+    }
+
+    @Override
+    public void onMemberRoleChanged(Long conversationId, Integer userId, ConversationMemberRole role) {
+        generation.incrementAndGet();
+        synchronized (members) {
+            members.computeIfPresent(conversationId, (id, set) -> set.withRole(userId, toByte(role)));
+        }
+    }
+
+    // ------------------------- helper -------------------------
+    private MemberSet getMemberSet(Long conversationId) {
+        MemberSet cached;
+        synchronized (members) {
+            cached = members.get(conversationId);
+        }
+        if (cached != null && !isExpired(cached.loadedAt)) {
+            return cached;
+        }
+
+        long gen = generation.get();
+        long loadedAt = System.currentTimeMillis();
+        List<ConversationMemberRepository.MemberView> rows =
+                conversationMemberRepository.findMembersByConversationId(conversationId);
+        MemberSet loaded = MemberSet.of(rows, loadedAt);
+        synchronized (members) {
+            if (generation.get() == gen) {
+                members.put(conversationId, loaded);
+                trim(members, maxConversations);
+            }
+        }
+        return loaded;
+    }
+
+    private boolean isExpired(long loadedAt) {
+        return System.currentTimeMillis() - loadedAt >= ttlMs;
+    }
+
+    private static <K, V> void trim(LinkedHashMap<K, V> map, int maxSize) {
+        var it = map.entrySet().iterator();
+        while (map.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private int sizeOf(Map<?, ?> map) {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    private static byte toByte(ConversationMemberRole role) {
+        return role != null ? (byte) role.ordinal() : NO_ROLE;
+    }
+
+    private static long[] addSorted(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        int insertAt = -index - 1;
+        long[] result = new long[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, insertAt);
+        result[insertAt] = id;
+        System.arraycopy(ids, insertAt, result, insertAt + 1, ids.length - insertAt);
+        return result;
+    }
+
+    private static long[] removeSorted(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+
+    // Snapshot bất biến conversation của một user; loadedAt giữ nguyên qua các thay đổi cục bộ
+    record UserConversations(long[] ids, long loadedAt) {
+        UserConversations with(long[] newIds) {
+            return newIds == ids ? this : new UserConversations(newIds, loadedAt);
+        }
+    }
+
+    // Snapshot bất biến thành viên của một conversation; loadedAt giữ nguyên qua các thay đổi cục bộ
+    static final class MemberSet {
+        final int[] userIds;
+        final byte[] roles;
+        final long loadedAt;
+
+        private MemberSet(int[] userIds, byte[] roles, long loadedAt) {
+            this.userIds = userIds;
+            this.roles = roles;
+            this.loadedAt = loadedAt;
+        }
+
+        static MemberSet of(List<ConversationMemberRepository.MemberView> rows, long loadedAt) {
+            int[] userIds = rows.stream().mapToInt(ConversationMemberRepository.MemberView::getUserId).toArray();
+            Arrays.sort(userIds);
+            byte[] roles = new byte[userIds.length];
+            for (ConversationMemberRepository.MemberView row : rows) {
+                roles[Arrays.binarySearch(userIds, row.getUserId())] = toByte(row.getRole());
+            }
+            return new MemberSet(userIds, roles, loadedAt);
+        }
+
+        int indexOf(int userId) {
+            return Arrays.binarySearch(userIds, userId);
+        }
+
+        MemberSet with(int userId, byte role) {
+            int index = indexOf(userId);
+            if (index >= 0) {
+                return withRole(userId, role);
+            }
+            int insertAt = -index - 1;
+            int[] newIds = new int[userIds.length + 1];
+            byte[] newRoles = new byte[roles.length + 1];
+            System.arraycopy(userIds, 0, newIds, 0, insertAt);
+            System.arraycopy(roles, 0, newRoles, 0, insertAt);
+            newIds[insertAt] = userId;
+            newRoles[insertAt] = role;
+            System.arraycopy(userIds, insertAt, newIds, insertAt + 1, userIds.length - insertAt);
+            System.arraycopy(roles, insertAt, newRoles, insertAt + 1, roles.length - insertAt);
+            return new MemberSet(newIds, newRoles, loadedAt);
+        }
+
+        MemberSet without(int userId) {
+            int index = indexOf(userId);
+            if (index < 0) {
+                return this;
+            }
+            int[] newIds = new int[userIds.length - 1];
+            byte[] newRoles = new byte[roles.length - 1];
+            System.arraycopy(userIds, 0, newIds, 0, index);
+            System.arraycopy(roles, 0, newRoles, 0, index);
+            System.arraycopy(userIds, index + 1, newIds, index, userIds.length - index - 1);
+            System.arraycopy(roles, index + 1, newRoles, index, roles.length - index - 1);
+            return new MemberSet(newIds, newRoles, loadedAt);
+        }
+
+        MemberSet withRole(int userId, byte role) {
+            int index = indexOf(userId);
+            if (index < 0) {
+                return this;
+            }
+            byte[] newRoles = roles.clone();
+            newRoles[index] = role;
+            return new MemberSet(userIds, newRoles, loadedAt);
+        }
+    }
+}
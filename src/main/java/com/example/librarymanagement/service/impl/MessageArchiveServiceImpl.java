@@ -0,0 +1,466 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.entity.MessageArchiveSegment;
+import com.example.librarymanagement.entity.MessageArchiveSegment.Storage;
+import com.example.librarymanagement.repository.MessageArchiveSegmentRepository;
+import com.example.librarymanagement.service.inter.MessageArchiveService;
+import com.example.librarymanagement.service.inter.S3Service;
+import com.example.librarymanagement.util.Helpers;
+import com.example.librarymanagement.util.MessageSegmentFormat;
+import com.example.librarymanagement.util.MessageSegmentFormat.BlockEntry;
+import com.example.librarymanagement.util.MessageSegmentFormat.Encoded;
+import com.example.librarymanagement.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Lưu trữ tin nhắn cũ theo tầng: bảng messages chỉ giữ phần "nóng" (age-days gần nhất),
+ * phần cũ hơn được chuyển sang các file segment bất biến (MessageSegmentFormat) trên đĩa local hoặc S3.
+ * - Job định kỳ chọn các conversation có ít nhất min-segment-messages tin nhắn cũ hơn mốc (mốc thời gian đổi thành
+ *   cursor id nhờ Snowflake, nên chỉ range scan theo khoá chính). Mỗi segment (tối đa max-segment-messages tin)
+ *   nằm trong một transaction: đọc các dòng bằng SELECT ... FOR UPDATE, ghi file segment, ghi catalog, xoá các dòng
+ *   rồi mới commit. Sửa / xoá mềm chạy song song phải chờ khoá dòng, nên không thể rơi vào khoảng giữa lúc đọc
+ *   và lúc xoá rồi bị mất cùng dòng đó.
+ * - Luôn lưu trữ một đoạn đầu liên tục theo id, nên mọi tin nhắn đã lưu trữ cũ hơn mọi tin còn trong bảng:
+ *   lịch sử chỉ cần đọc tiếp sang archive khi cursor vượt qua dòng cũ nhất của bảng.
+ *   Tin nhắn mới nhất của conversation không bao giờ bị lưu trữ (inbox / recent cache đọc từ bảng).
+ * - Đọc: catalog (index cấp 1) → footer của segment (index cấp 2, được cache) → range read đúng block cần thiết.
+ * - Segment bất biến: sửa / xoá mềm tin nhắn đã lưu trữ ghi vào bảng message_archive_overrides (một dòng mỗi
+ *   tin nhắn, bản mới nhất), mọi lượt đọc archive áp override lên kết quả bằng một query theo danh sách id.
+ * - Chỉ bật job trên một instance (chat.archive.enabled), các instance khác vẫn đọc được archive.
+ * */
+@Slf4j
+@Service
+public class MessageArchiveServiceImpl implements MessageArchiveService {
+    private static final String CANDIDATES_SQL = "SELECT conversation_id FROM messages WHERE id < ? " +
+            "GROUP BY conversation_id HAVING COUNT(*) >= ? LIMIT ?";
+    private static final String MAX_ID_SQL = "SELECT MAX(id) FROM messages WHERE conversation_id = ?";
+    private static final String SELECT_SQL = "SELECT id, sender_id, parent_id, content, created_at, updated_at, " +
+            "deleted_at FROM messages WHERE conversation_id = ? AND id > ? AND id < ? ORDER BY id LIMIT ? FOR UPDATE";
+    private static final String DELETE_SQL = "DELETE FROM messages WHERE conversation_id = ? AND id BETWEEN ? AND ?";
+    private static final String SELECT_OVERRIDES_SQL = "SELECT message_id, content, updated_at, deleted_at " +
+            "FROM message_archive_overrides WHERE conversation_id = ? AND message_id IN (%s)";
+    private static final String UPSERT_OVERRIDE_SQL = "INSERT INTO message_archive_overrides " +
+            "(message_id, conversation_id, content, updated_at, deleted_at) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE content = VALUES(content), updated_at = VALUES(updated_at), " +
+            "deleted_at = VALUES(deleted_at)";
+
+    private final MessageArchiveSegmentRepository segmentRepository;
+    private final S3Service s3Service;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final Storage storage;
+    private final Path directory;
+    private final String s3Prefix;
+    private final long ageMs;
+    private final int minSegmentMessages;
+    private final int maxSegmentMessages;
+    private final int blockMessages;
+    private final int conversationsPerRun;
+
+    // segment id → index block trong footer, LRU; mọi truy cập nằm trong lock của chính map
+    private final LinkedHashMap<Long, BlockEntry[]> indexCache;
+
+    private final Counter archivedCounter;
+    private final Counter segmentCounter;
+    private final Counter bytesCounter;
+    private final Counter errorCounter;
+    private final Timer blockReadTimer;
+
+    public MessageArchiveServiceImpl(MessageArchiveSegmentRepository segmentRepository,
+                                     S3Service s3Service,
+                                     JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.archive.enabled}") boolean enabled,
+                                     @Value("${chat.archive.storage}") Storage storage,
+                                     @Value("${chat.archive.dir}") String dir,
+                                     @Value("${chat.archive.s3-prefix}") String s3Prefix,
+                                     @Value("${chat.archive.age-days}") int ageDays,
+                                     @Value("${chat.archive.min-segment-messages}") int minSegmentMessages,
+                                     @Value("${chat.archive.max-segment-messages}") int maxSegmentMessages,
+                                     @Value("${chat.archive.block-messages}") int blockMessages,
+                                     @Value("${chat.archive.conversations-per-run}") int conversationsPerRun,
+                                     @Value("${chat.archive.index-cache-size}") int indexCacheSize) {
+        this.segmentRepository = segmentRepository;
+        this.s3Service = s3Service;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.storage = storage;
+        this.directory = Path.of(dir);
+        this.s3Prefix = s3Prefix;
+        this.ageMs = Duration.ofDays(ageDays).toMillis();
+        this.minSegmentMessages = minSegmentMessages;
+        this.maxSegmentMessages = maxSegmentMessages;
+        this.blockMessages = blockMessages;
+        this.conversationsPerRun = conversationsPerRun;
+        this.indexCache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BlockEntry[]> eldest) {
+                return size() > indexCacheSize;
+            }
+        };
+
+        archivedCounter = Counter.builder("chat.archive.messages")
+                .description("Messages moved from the messages table into archive segments")
+                .register(meterRegistry);
+        segmentCounter = Counter.builder("chat.archive.segments").register(meterRegistry);
+        bytesCounter = Counter.builder("chat.archive.bytes")
+                .description("Compressed segment bytes written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        errorCounter = Counter.builder("chat.archive.errors").register(meterRegistry);
+        blockReadTimer = Timer.builder("chat.archive.block.read")
+                .description("Time to fetch and decompress one archived block")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<ChatMessage> findBefore(Long conversationId, long before, int limit) {
+        List<ChatMessage> result = new ArrayList<>(limit);
+        long cursor = before;
+        while (result.size() < limit) {
+            List<MessageArchiveSegment> segments = segmentRepository
+                    .findByConversationIdAndFirstMessageIdLessThanOrderByFirstMessageIdDesc(conversationId, cursor,
+                            Limit.of(1));
+            if (segments.isEmpty()) {
+                break;
+            }
+            MessageArchiveSegment segment = segments.get(0);
+            BlockEntry[] blocks = index(segment);
+            for (int b = blocks.length - 1; b >= 0 && result.size() < limit; b--) {
+                if (blocks[b].firstId() >= cursor) {
+                    continue;
+                }
+                List<ChatMessage> messages = readBlock(segment, blocks[b]);
+                for (int i = messages.size() - 1; i >= 0 && result.size() < limit; i--) {
+                    if (messages.get(i).getId() < cursor) {
+                        result.add(messages.get(i));
+                    }
+                }
+            }
+            cursor = segment.getFirstMessageId();
+        }
+        return applyOverrides(conversationId, result);
+    }
+
+    @Override
+    public List<ChatMessage> findAfter(Long conversationId, long after, int limit) {
+        List<ChatMessage> result = new ArrayList<>(limit);
+        // Cursor mới hơn mốc lưu trữ thì không thể nằm trong archive, khỏi query catalog
+        if (SnowflakeIdGenerator.timestampOf(after) > System.currentTimeMillis() - ageMs) {
+            return result;
+        }
+        long cursor = after;
+        while (result.size() < limit) {
+            List<MessageArchiveSegment> segments = segmentRepository
+                    .findByConversationIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(conversationId, cursor,
+                            Limit.of(1));
+            if (segments.isEmpty()) {
+                break;
+            }
+            MessageArchiveSegment segment = segments.get(0);
+            for (BlockEntry block : index(segment)) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (block.lastId() <= cursor) {
+                    continue;
+                }
+                for (ChatMessage message : readBlock(segment, block)) {
+                    if (message.getId() > cursor && result.size() < limit) {
+                        result.add(message);
+                    }
+                }
+            }
+            cursor = segment.getLastMessageId();
+        }
+        return applyOverrides(conversationId, result);
+    }
+
+    @Override
+    public Map<Long, ChatMessage> findByIds(Long conversationId, Collection<Long> messageIds) {
+        Map<Long, ChatMessage> result = new HashMap<>();
+        for (Long messageId : messageIds) {
+            Optional<MessageArchiveSegment> found = segmentRepository
+                    .findFirstByConversationIdAndFirstMessageIdLessThanEqualOrderByFirstMessageIdDesc(conversationId,
+                            messageId);
+            if (found.isEmpty() || found.get().getLastMessageId() < messageId) {
+                continue;
+            }
+            MessageArchiveSegment segment = found.get();
+            BlockEntry block = findBlock(index(segment), messageId);
+            if (block == null) {
+                continue;
+            }
+            for (ChatMessage message : readBlock(segment, block)) {
+                if (message.getId().equals(messageId)) {
+                    result.put(messageId, message);
+                    break;
+                }
+            }
+        }
+        if (!result.isEmpty()) {
+            for (ChatMessage message : applyOverrides(conversationId, new ArrayList<>(result.values()))) {
+                result.put(message.getId(), message);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void saveOverride(ChatMessage message) {
+        jdbcTemplate.update(UPSERT_OVERRIDE_SQL, message.getId(), message.getConversationId(), message.getContent(),
+                message.getUpdatedAt(), message.getDeletedAt());
+    }
+
+    // Thay các tin nhắn có override bằng bản đã sửa / xoá, giữ nguyên thứ tự
+    private List<ChatMessage> applyOverrides(Long conversationId, List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        List<Object> args = new ArrayList<>(messages.size() + 1);
+        args.add(conversationId);
+        for (ChatMessage message : messages) {
+            args.add(message.getId());
+        }
+        String sql = SELECT_OVERRIDES_SQL.formatted(String.join(", ", Collections.nCopies(messages.size(), "?")));
+        Map<Long, MessageOverride> overrides = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            long updatedAt = rs.getLong("updated_at");
+            long deletedAt = rs.getLong("deleted_at");
+            overrides.put(rs.getLong("message_id"), new MessageOverride(rs.getString("content"),
+                    updatedAt != 0 ? updatedAt : null, deletedAt != 0 ? deletedAt : null));
+        }, args.toArray());
+        if (overrides.isEmpty()) {
+            return messages;
+        }
+        List<ChatMessage> result = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            MessageOverride override = overrides.get(message.getId());
+            result.add(override == null ? message : message.toBuilder()
+                    .content(override.content())
+                    .updatedAt(override.updatedAt())
+                    .deletedAt(override.deletedAt())
+                    .build());
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.archive.interval-ms}", initialDelayString = "${chat.archive.interval-ms}")
+    public void scheduledArchive() {
+        if (enabled) {
+            archiveColdMessages();
+        }
+    }
+
+    @Override
+    public int archiveColdMessages() {
+        long cutoffId = SnowflakeIdGenerator.minIdAt(System.currentTimeMillis() - ageMs);
+        List<Long> conversationIds = jdbcTemplate.queryForList(CANDIDATES_SQL, Long.class, cutoffId,
+                minSegmentMessages, conversationsPerRun);
+        int total = 0;
+        for (Long conversationId : conversationIds) {
+            try {
+                total += archiveConversation(conversationId, cutoffId);
+            } catch (RuntimeException ex) {
+                errorCounter.increment();
+                log.error("Failed to archive messages of conversation {}", conversationId, ex);
+            }
+        }
+        if (total > 0) {
+            log.info("Archived {} messages from {} conversations", total, conversationIds.size());
+        }
+        return total;
+    }
+
+    private int archiveConversation(Long conversationId, long cutoffId) {
+        Long maxId = jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class, conversationId);
+        if (maxId == null) {
+            return 0;
+        }
+        long upperBound = Math.min(cutoffId, maxId);
+        int archived = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            List<ChatMessage> rows = transactionTemplate.execute(status -> {
+                List<ChatMessage> locked = jdbcTemplate.query(SELECT_SQL, rowMapper(conversationId), conversationId,
+                        afterId, upperBound, maxSegmentMessages);
+                // Phần lẻ chờ tới khi đủ một segment, tránh sinh nhiều file nhỏ
+                if (locked.size() < minSegmentMessages) {
+                    return List.of();
+                }
+                writeSegment(conversationId, locked);
+                return locked;
+            });
+            if (rows == null || rows.isEmpty()) {
+                return archived;
+            }
+            archived += rows.size();
+            lastId = rows.get(rows.size() - 1).getId();
+        }
+    }
+
+    // Chạy trong transaction của archiveConversation, các dòng trong rows đang bị khoá
+    private void writeSegment(Long conversationId, List<ChatMessage> rows) {
+        ChatMessage first = rows.get(0);
+        ChatMessage last = rows.get(rows.size() - 1);
+        Encoded encoded = MessageSegmentFormat.encode(rows, blockMessages);
+        String name = conversationId + "/" + first.getId() + "-" + last.getId() + ".seg";
+        String objectKey = storage == Storage.S3 ? s3Prefix + name : name;
+
+        // Ghi file trước khi commit: lỗi ở transaction chỉ để lại file mồ côi, lần chạy sau ghi đè đúng key đó
+        store(objectKey, encoded.bytes());
+
+        MessageArchiveSegment segment = MessageArchiveSegment.builder()
+                .conversationId(conversationId)
+                .firstMessageId(first.getId())
+                .lastMessageId(last.getId())
+                .firstCreatedAt(first.getCreatedAt())
+                .lastCreatedAt(last.getCreatedAt())
+                .messageCount(rows.size())
+                .storage(storage)
+                .objectKey(objectKey)
+                .sizeBytes((long) encoded.bytes().length)
+                .indexOffset(encoded.indexOffset())
+                .build();
+        segmentRepository.save(segment);
+        int deleted = jdbcTemplate.update(DELETE_SQL, conversationId, first.getId(), last.getId());
+        if (deleted != rows.size()) {
+            throw new IllegalStateException("Archived " + rows.size() + " messages but deleted " + deleted);
+        }
+
+        Helpers.runAfterCommit(() -> {
+            archivedCounter.increment(rows.size());
+            segmentCounter.increment();
+            bytesCounter.increment(encoded.bytes().length);
+        });
+    }
+
+    private BlockEntry[] index(MessageArchiveSegment segment) {
+        synchronized (indexCache) {
+            BlockEntry[] cached = indexCache.get(segment.getId());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long offset = segment.getIndexOffset();
+        BlockEntry[] blocks = MessageSegmentFormat.decodeIndex(
+                read(segment, offset, (int) (segment.getSizeBytes() - offset)));
+        synchronized (indexCache) {
+            indexCache.put(segment.getId(), blocks);
+        }
+        return blocks;
+    }
+
+    private List<ChatMessage> readBlock(MessageArchiveSegment segment, BlockEntry block) {
+        return blockReadTimer.record(() -> MessageSegmentFormat.decodeBlock(
+                read(segment, block.offset(), block.length()), segment.getConversationId()));
+    }
+
+    // Block cuối cùng có firstId <= messageId
+    private static BlockEntry findBlock(BlockEntry[] blocks, long messageId) {
+        int low = 0;
+        int high = blocks.length - 1;
+        BlockEntry found = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].firstId() <= messageId) {
+                found = blocks[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found != null && found.lastId() >= messageId ? found : null;
+    }
+
+    private void store(String objectKey, byte[] bytes) {
+        if (storage == Storage.S3) {
+            s3Service.uploadBytes(objectKey, bytes, MessageSegmentFormat.CONTENT_TYPE);
+            return;
+        }
+        try {
+            Path target = directory.resolve(objectKey);
+            Files.createDirectories(target.getParent());
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Đọc theo nơi lưu của chính segment, nên đổi chat.archive.storage không ảnh hưởng segment cũ
+    private byte[] read(MessageArchiveSegment segment, long offset, int length) {
+        if (segment.getStorage() == Storage.S3) {
+            return s3Service.downloadRange(segment.getObjectKey(), offset, length);
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(segment.getObjectKey()),
+                StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of segment " + segment.getObjectKey());
+                }
+            }
+            return buffer.array();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static RowMapper<ChatMessage> rowMapper(Long conversationId) {
+        return (rs, rowNum) -> {
+            long parentId = rs.getLong("parent_id");
+            long updatedAt = rs.getLong("updated_at");
+            long deletedAt = rs.getLong("deleted_at");
+            return ChatMessage.builder()
+                    .id(rs.getLong("id"))
+                    .conversationId(conversationId)
+                    .sender(rs.getInt("sender_id"))
+                    .parentId(parentId != 0 ? parentId : null)
+                    .content(rs.getString("content"))
+                    .createdAt(rs.getLong("created_at"))
+                    .updatedAt(updatedAt != 0 ? updatedAt : null)
+                    .deletedAt(deletedAt != 0 ? deletedAt : null)
+                    .build();
+        };
+    }
+
+    private record MessageOverride(String content, Long updatedAt, Long deletedAt) {
+    }
+}
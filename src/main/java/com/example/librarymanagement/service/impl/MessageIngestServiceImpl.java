@@ -0,0 +1,292 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.exception.BadRequestException;
+import com.example.librarymanagement.exception.MessageQueueFullException;
+import com.example.librarymanagement.exception.ResourceNotFoundException;
+import com.example.librarymanagement.service.inter.InboxService;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.MessageArchiveService;
+import com.example.librarymanagement.service.inter.MessageIngestService;
+import com.example.librarymanagement.service.inter.MessageSearchService;
+import com.example.librarymanagement.service.inter.OfflineQueueService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UnreadCountService;
+import com.example.librarymanagement.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Write-behind pipeline cho tin nhắn chat:
+ * STOMP handler chỉ đẩy tin nhắn vào hàng đợi có giới hạn, một thread duy nhất gom tin nhắn thành batch
+ * và ghi xuống bảng messages bằng JDBC batch. Batch được flush khi đủ batch-size
+ * hoặc khi tin nhắn đầu tiên trong batch đã chờ quá flush-interval-ms (điều kiện nào tới trước).
+ * */
+@Slf4j
+@Service
+public class MessageIngestServiceImpl implements MessageIngestService {
+    private static final String INSERT_SQL = "INSERT INTO messages " +
+            "(id, conversation_id, sender_id, parent_id, content, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+    private final RecentMessageCacheService recentMessageCacheService;
+    private final MembershipIndexService membershipIndexService;
+    private final UnreadCountService unreadCountService;
+    private final InboxService inboxService;
+    private final MessageSearchService messageSearchService;
+    private final OfflineQueueService offlineQueueService;
+    private final MessageRepository messageRepository;
+    private final MessageArchiveService messageArchiveService;
+
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<PendingMessage> queue;
+
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+    private Counter rejectedCounter;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public MessageIngestServiceImpl(JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    MeterRegistry meterRegistry,
+                                    SnowflakeIdGenerator snowflakeIdGenerator,
+                                    RecentMessageCacheService recentMessageCacheService,
+                                    MembershipIndexService membershipIndexService,
+                                    UnreadCountService unreadCountService,
+                                    InboxService inboxService,
+                                    MessageSearchService messageSearchService,
+                                    OfflineQueueService offlineQueueService,
+                                    MessageRepository messageRepository,
+                                    MessageArchiveService messageArchiveService,
+                                    @Value("${chat.ingest.queue-capacity}") int queueCapacity,
+                                    @Value("${chat.ingest.batch-size}") int batchSize,
+                                    @Value("${chat.ingest.flush-interval-ms}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+        this.recentMessageCacheService = recentMessageCacheService;
+        this.membershipIndexService = membershipIndexService;
+        this.unreadCountService = unreadCountService;
+        this.inboxService = inboxService;
+        this.messageSearchService = messageSearchService;
+        this.offlineQueueService = offlineQueueService;
+        this.messageRepository = messageRepository;
+        this.messageArchiveService = messageArchiveService;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("chat.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Messages waiting to be flushed")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("chat.ingest.batch.size")
+                .description("Messages written per JDBC batch")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.ingest.flush.latency")
+                .description("Time to write and commit one batch")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("chat.ingest.rejected")
+                .description("Messages rejected because the queue was full")
+                .register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::runFlushLoop, "message-ingest");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // Vòng lặp flush sẽ ghi nốt các tin nhắn còn trong queue rồi mới thoát
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Override
+    public CompletableFuture<ChatMessage> submit(ChatMessage request) {
+        if (request.getConversationId() == null || request.getSender() == null) {
+            throw new BadRequestException("Conversation and sender are required");
+        }
+        if (!StringUtils.hasText(request.getContent())) {
+            throw new BadRequestException("Message content is required");
+        }
+        if (!membershipIndexService.isMember(request.getConversationId(), request.getSender())) {
+            throw new ResourceNotFoundException("Conversation not found with ID: " + request.getConversationId());
+        }
+        if (request.getParentId() != null && !parentExists(request.getConversationId(), request.getParentId())) {
+            throw new BadRequestException("Parent message not found in this conversation");
+        }
+
+        /*
+         * Tin nhắn được đưa vào queue, cache, inbox và broadcast nguyên object → dựng object mới chỉ từ các field
+         * client được phép gửi, không giữ senderName / parent / updatedAt / deletedAt... do client tự điền.
+         * ID được cấp ngay khi nhận, trước khi INSERT → không cần đọc generated keys sau batch.
+         * */
+        ChatMessage message = ChatMessage.builder()
+                .id(snowflakeIdGenerator.nextId())
+                .clientMessageId(request.getClientMessageId())
+                .conversationId(request.getConversationId())
+                .sender(request.getSender())
+                .parentId(request.getParentId())
+                .content(request.getContent())
+                .createdAt(System.currentTimeMillis())
+                .build();
+        PendingMessage pending = new PendingMessage(message, new CompletableFuture<>());
+
+        if (!running || !queue.offer(pending)) {
+            rejectedCounter.increment();
+            pending.future().completeExceptionally(
+                    new MessageQueueFullException("Server is busy, please retry the message"));
+        }
+        return pending.future();
+    }
+
+    // Tin nhắn gốc phải thuộc cùng conversation: ring buffer → bảng messages → archive
+    private boolean parentExists(Long conversationId, Long parentId) {
+        if (recentMessageCacheService.getMessage(conversationId, parentId).isPresent()) {
+            return true;
+        }
+        if (messageRepository.existsByIdAndConversationId(parentId, conversationId)) {
+            return true;
+        }
+        return messageArchiveService.findByIds(conversationId, Set.of(parentId)).containsKey(parentId);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runFlushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                flush(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+        } catch (RuntimeException ex) {
+            log.error("Failed to flush {} messages", batch.size(), ex);
+            for (PendingMessage pending : batch) {
+                pending.future().completeExceptionally(ex);
+            }
+            return;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        batchSizeSummary.record(batch.size());
+
+        /*
+         * Batch đã commit: kết quả trả cho client chỉ phụ thuộc vào transaction.
+         * Mỗi hook chạy độc lập, một hook lỗi (vd. nạp inbox từ DB) không làm mất các hook còn lại
+         * và không khiến tin nhắn đã lưu bị báo "not sent" (client gửi lại → trùng tin nhắn).
+         * */
+        for (PendingMessage pending : batch) {
+            ChatMessage message = pending.message();
+            runHook("recent-cache", message, recentMessageCacheService::onMessageSaved);
+            runHook("inbox", message, inboxService::onMessageSaved);
+            runHook("search", message, messageSearchService::onMessageSaved);
+            runHook("offline-queue", message, offlineQueueService::onMessageSaved);
+            pending.future().complete(message);
+        }
+    }
+
+    private void runHook(String hook, ChatMessage message, Consumer<ChatMessage> action) {
+        try {
+            action.accept(message);
+        } catch (RuntimeException ex) {
+            log.error("Post-commit hook {} failed for message {}", hook, message.getId(), ex);
+            meterRegistry.counter("chat.ingest.hook.errors", "hook", hook).increment();
+        }
+    }
+
+    private void insertBatch(List<PendingMessage> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, pending) -> {
+            ChatMessage message = pending.message();
+            ps.setLong(1, message.getId());
+            ps.setLong(2, message.getConversationId());
+            ps.setInt(3, message.getSender());
+            if (message.getParentId() != null) {
+                ps.setLong(4, message.getParentId());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+            ps.setString(5, message.getContent());
+            ps.setLong(6, message.getCreatedAt());
+        });
+        // Cùng transaction với INSERT: tin nhắn commit thì unread_count của các thành viên đã được cộng
+        unreadCountService.applyNewMessages(batch.stream().map(PendingMessage::message).toList());
+    }
+
+    private record PendingMessage(ChatMessage message, CompletableFuture<ChatMessage> future) {
+    }
+}
@@ -0,0 +1,463 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.exception.BadRequestException;
+import com.example.librarymanagement.repository.ConversationRepository;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.MessageSearchService;
+import com.example.librarymanagement.util.Helpers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Index full-text nội dung tin nhắn bằng Lucene nhúng, lưu trên đĩa local (chat.search.index-dir):
+ * - Ghi: send / sửa / xoá cập nhật index ngay sau khi commit DB (upsert theo id tin nhắn).
+ * - Đọc: SearcherManager được refresh near-real-time mỗi refresh-ms, nên tin nhắn mới tìm được sau tối đa
+ *   refresh-ms mà không cần commit index; commit xuống đĩa chạy định kỳ và khi shutdown.
+ * - Mỗi truy vấn bị giới hạn trong workspace được yêu cầu và các conversation caller là thành viên
+ *   (lấy từ membership index), sắp theo id giảm dần → keyset paging bằng ?before=<id> như lịch sử tin nhắn.
+ * - Reindex chạy trên thread riêng, đọc bảng messages theo từng lô keyset (id > ?) và upsert vào index;
+ *   tự chạy khi khởi động với index rỗng. Tin nhắn bị sửa / xoá trong lúc reindex được ghi nhận và reindex bỏ qua,
+ *   vì dòng reindex đã đọc có thể cũ hơn bản mà hook sửa / xoá vừa ghi vào index.
+ * */
+@Slf4j
+@Service
+public class MessageSearchServiceImpl implements MessageSearchService {
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final String KEY = "key";
+    private static final String ID = "id";
+    private static final String CONVERSATION_ID = "conversationId";
+    private static final String WORKSPACE_ID = "workspaceId";
+    private static final String SENDER = "sender";
+    private static final String PARENT_ID = "parentId";
+    private static final String CONTENT = "content";
+    private static final String CREATED_AT = "createdAt";
+    private static final String UPDATED_AT = "updatedAt";
+
+    private static final String REINDEX_SQL = "SELECT m.id, m.conversation_id, m.sender_id, m.parent_id, " +
+            "m.content, m.created_at, m.updated_at, c.workspace_id " +
+            "FROM messages m JOIN conversations c ON c.id = m.conversation_id " +
+            "WHERE m.id > ? AND m.deleted_at IS NULL ORDER BY m.id LIMIT ?";
+
+    private final ConversationRepository conversationRepository;
+    private final MembershipIndexService membershipIndexService;
+    private final JdbcTemplate jdbcTemplate;
+    private final int reindexBatchSize;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    private final ConcurrentHashMap<Long, Integer> workspaceByConversation = new ConcurrentHashMap<>();
+    private final AtomicBoolean reindexing = new AtomicBoolean();
+    // Id bị sửa / xoá kể từ khi reindex bắt đầu; kiểm tra và ghi index cùng dưới reindexLock
+    private final Set<Long> changedDuringReindex = ConcurrentHashMap.newKeySet();
+    private final Object reindexLock = new Object();
+
+    private final Timer queryTimer;
+    private final Timer refreshTimer;
+    private final Counter indexErrorCounter;
+    private final Counter reindexedCounter;
+
+    public MessageSearchServiceImpl(ConversationRepository conversationRepository,
+                                    MembershipIndexService membershipIndexService,
+                                    JdbcTemplate jdbcTemplate,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${chat.search.index-dir}") String indexDir,
+                                    @Value("${chat.search.reindex-batch-size}") int reindexBatchSize)
+            throws IOException {
+        this.conversationRepository = conversationRepository;
+        this.membershipIndexService = membershipIndexService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.reindexBatchSize = reindexBatchSize;
+
+        Path path = Files.createDirectories(Path.of(indexDir));
+        this.directory = FSDirectory.open(path);
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+
+        queryTimer = Timer.builder("chat.search.query.latency")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        refreshTimer = Timer.builder("chat.search.refresh.latency")
+                .description("Time to reopen the near-real-time searcher")
+                .register(meterRegistry);
+        indexErrorCounter = Counter.builder("chat.search.index.errors").register(meterRegistry);
+        reindexedCounter = Counter.builder("chat.search.reindexed")
+                .description("Messages written by the background reindex job")
+                .register(meterRegistry);
+        Gauge.builder("chat.search.index.size", this, MessageSearchServiceImpl::indexSizeBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.search.index.docs", writer, w -> w.getDocStats().numDocs)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CursorPage<ChatMessage> search(Integer workspaceId, String query, Long before, int limit,
+                                          Authentication authentication) {
+        if (workspaceId == null) {
+            throw new BadRequestException("Workspace is required");
+        }
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        Query textQuery = parseQuery(query);
+        long[] conversationIds = membershipIndexService.getConversationIds(Helpers.getCurrentUserId(authentication));
+        if (conversationIds.length == 0) {
+            return page(List.of(), pageSize, false);
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder()
+                .add(textQuery, BooleanClause.Occur.MUST)
+                .add(IntPoint.newExactQuery(WORKSPACE_ID, workspaceId), BooleanClause.Occur.FILTER)
+                .add(LongPoint.newSetQuery(CONVERSATION_ID, conversationIds), BooleanClause.Occur.FILTER);
+        if (before != null) {
+            builder.add(LongPoint.newRangeQuery(ID, Long.MIN_VALUE, before - 1), BooleanClause.Occur.FILTER);
+        }
+        Sort newestFirst = new Sort(new SortField(ID, SortField.Type.LONG, true));
+
+        return queryTimer.record(() -> {
+            IndexSearcher searcher = null;
+            try {
+                searcher = searcherManager.acquire();
+                TopFieldDocs hits = searcher.search(builder.build(), pageSize + 1, newestFirst);
+                StoredFields storedFields = searcher.storedFields();
+                List<ChatMessage> items = new ArrayList<>(Math.min(hits.scoreDocs.length, pageSize));
+                for (int i = 0; i < hits.scoreDocs.length && i < pageSize; i++) {
+                    ScoreDoc hit = hits.scoreDocs[i];
+                    items.add(toChatMessage(storedFields.document(hit.doc)));
+                }
+                return page(items, pageSize, hits.scoreDocs.length > pageSize);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                release(searcher);
+            }
+        });
+    }
+
+    @Override
+    public void onMessageSaved(ChatMessage message) {
+        upsert(message);
+    }
+
+    @Override
+    public void onMessageEdited(ChatMessage message) {
+        applyChange(message.getId(), () -> upsert(message));
+    }
+
+    @Override
+    public void onMessageDeleted(Long messageId) {
+        applyChange(messageId, () -> delete(messageId));
+    }
+
+    @Override
+    public boolean startReindex() {
+        if (!reindexing.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(this::reindex, "message-reindex");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void reindexIfEmpty() {
+        if (writer.getDocStats().numDocs == 0) {
+            startReindex();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.refresh-ms}")
+    public void refresh() throws IOException {
+        long start = System.nanoTime();
+        if (searcherManager.maybeRefresh()) {
+            refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.commit-interval-ms}")
+    public void commit() throws IOException {
+        if (writer.hasUncommittedChanges()) {
+            writer.commit();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        searcherManager.close();
+        writer.close(); // close() commit các thay đổi còn lại
+        directory.close();
+    }
+
+    // ------------------------- helper -------------------------
+    /*
+     * Hook chạy sau commit: nếu reindex đang chạy thì dòng reindex đọc được có thể là bản trước thay đổi này.
+     * Ghi nhận id trước khi ghi index để reindex không ghi đè lại bản cũ (hoặc khôi phục tin nhắn đã xoá).
+     * Hook thấy reindexing = false nghĩa là thay đổi đã commit trước khi reindex đọc bảng.
+     * */
+    private void applyChange(Long messageId, Runnable write) {
+        if (!reindexing.get()) {
+            write.run();
+            return;
+        }
+        synchronized (reindexLock) {
+            changedDuringReindex.add(messageId);
+            write.run();
+        }
+    }
+
+    private void delete(Long messageId) {
+        try {
+            writer.deleteDocuments(new Term(KEY, String.valueOf(messageId)));
+        } catch (IOException ex) {
+            indexErrorCounter.increment();
+            log.error("Failed to remove message {} from the search index", messageId, ex);
+        }
+    }
+
+    private void upsert(ChatMessage message) {
+        try {
+            Integer workspaceId = getWorkspaceId(message.getConversationId());
+            if (workspaceId == null || message.getDeletedAt() != null || message.getContent() == null) {
+                return;
+            }
+            writer.updateDocument(new Term(KEY, String.valueOf(message.getId())), toDocument(message, workspaceId));
+        } catch (IOException | RuntimeException ex) {
+            // Lỗi index không được làm hỏng luồng gửi tin nhắn; reindex sẽ bù lại
+            indexErrorCounter.increment();
+            log.error("Failed to index message {}", message.getId(), ex);
+        }
+    }
+
+    private Integer getWorkspaceId(Long conversationId) {
+        Integer cached = workspaceByConversation.get(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        Integer workspaceId = conversationRepository.findWorkspaceIdById(conversationId).orElse(null);
+        if (workspaceId != null) {
+            workspaceByConversation.putIfAbsent(conversationId, workspaceId);
+        }
+        return workspaceId;
+    }
+
+    private void reindex() {
+        long start = System.currentTimeMillis();
+        long lastId = Long.MIN_VALUE;
+        long total = 0;
+        synchronized (reindexLock) {
+            changedDuringReindex.clear();
+        }
+        try {
+            while (true) {
+                List<ChatMessage> rows = new ArrayList<>(reindexBatchSize);
+                jdbcTemplate.query(REINDEX_SQL, rs -> {
+                    long conversationId = rs.getLong("conversation_id");
+                    workspaceByConversation.putIfAbsent(conversationId, rs.getInt("workspace_id"));
+                    rows.add(ChatMessage.builder()
+                            .id(rs.getLong("id"))
+                            .conversationId(conversationId)
+                            .sender(rs.getInt("sender_id"))
+                            .parentId(rs.getObject("parent_id", Long.class))
+                            .content(rs.getString("content"))
+                            .createdAt(rs.getObject("created_at", Long.class))
+                            .updatedAt(rs.getObject("updated_at", Long.class))
+                            .build());
+                }, lastId, reindexBatchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                synchronized (reindexLock) {
+                    for (ChatMessage row : rows) {
+                        if (!changedDuringReindex.contains(row.getId())) {
+                            upsert(row);
+                        }
+                    }
+                }
+                total += rows.size();
+                reindexedCounter.increment(rows.size());
+                lastId = rows.get(rows.size() - 1).getId();
+            }
+            writer.commit();
+            searcherManager.maybeRefresh();
+            log.info("Reindexed {} messages in {} ms", total, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Reindex stopped after {} messages", total, ex);
+        } finally {
+            reindexing.set(false);
+            changedDuringReindex.clear();
+        }
+    }
+
+    private Query parseQuery(String query) {
+        String text = query != null ? query.strip() : "";
+        boolean phrase = text.length() > 1 && text.startsWith("\"") && text.endsWith("\"");
+        List<String> terms = analyze(phrase ? text.substring(1, text.length() - 1) : text);
+        if (terms.isEmpty()) {
+            throw new BadRequestException("Search query is required");
+        }
+
+        if (phrase) {
+            PhraseQuery.Builder builder = new PhraseQuery.Builder();
+            for (String term : terms) {
+                builder.add(new Term(CONTENT, term));
+            }
+            return builder.build();
+        }
+        // Từ cuối khớp theo tiền tố để tìm được trong lúc đang gõ
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (int i = 0; i < terms.size() - 1; i++) {
+            builder.add(new TermQuery(new Term(CONTENT, terms.get(i))), BooleanClause.Occur.MUST);
+        }
+        builder.add(new PrefixQuery(new Term(CONTENT, terms.get(terms.size() - 1))), BooleanClause.Occur.MUST);
+        return builder.build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(CONTENT, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return terms;
+    }
+
+    private static Document toDocument(ChatMessage message, int workspaceId) {
+        Document doc = new Document();
+        doc.add(new StringField(KEY, String.valueOf(message.getId()), Field.Store.NO));
+        doc.add(new LongPoint(ID, message.getId()));
+        doc.add(new NumericDocValuesField(ID, message.getId()));
+        doc.add(new StoredField(ID, message.getId()));
+        doc.add(new LongPoint(CONVERSATION_ID, message.getConversationId()));
+        doc.add(new StoredField(CONVERSATION_ID, message.getConversationId()));
+        doc.add(new IntPoint(WORKSPACE_ID, workspaceId));
+        doc.add(new StoredField(SENDER, message.getSender()));
+        if (message.getParentId() != null) {
+            doc.add(new StoredField(PARENT_ID, message.getParentId()));
+        }
+        doc.add(new TextField(CONTENT, message.getContent(), Field.Store.YES));
+        if (message.getCreatedAt() != null) {
+            doc.add(new StoredField(CREATED_AT, message.getCreatedAt()));
+        }
+        if (message.getUpdatedAt() != null) {
+            doc.add(new StoredField(UPDATED_AT, message.getUpdatedAt()));
+        }
+        return doc;
+    }
+
+    private static ChatMessage toChatMessage(Document doc) {
+        return ChatMessage.builder()
+                .id(longValue(doc, ID))
+                .conversationId(longValue(doc, CONVERSATION_ID))
+                .sender(doc.getField(SENDER).numericValue().intValue())
+                .parentId(longValue(doc, PARENT_ID))
+                .content(doc.get(CONTENT))
+                .createdAt(longValue(doc, CREATED_AT))
+                .updatedAt(longValue(doc, UPDATED_AT))
+                .build();
+    }
+
+    private static Long longValue(Document doc, String field) {
+        IndexableField value = doc.getField(field);
+        return value != null ? value.numericValue().longValue() : null;
+    }
+
+    // Kết quả sắp mới → cũ: ?before= dùng id nhỏ nhất (phần tử cuối)
+    private static CursorPage<ChatMessage> page(List<ChatMessage> items, int limit, boolean hasMore) {
+        return CursorPage.<ChatMessage>builder()
+                .items(items)
+                .limit(limit)
+                .beforeCursor(items.isEmpty() ? null : items.get(items.size() - 1).getId())
+                .afterCursor(items.isEmpty() ? null : items.get(0).getId())
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private void release(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException ex) {
+            log.warn("Failed to release searcher", ex);
+        }
+    }
+
+    private double indexSizeBytes() {
+        try {
+            long size = 0;
+            for (String file : directory.listAll()) {
+                size += directory.fileLength(file);
+            }
+            return size;
+        } catch (IOException ex) {
+            // File có thể bị merge xoá giữa listAll và fileLength
+            return Double.NaN;
+        }
+    }
+}
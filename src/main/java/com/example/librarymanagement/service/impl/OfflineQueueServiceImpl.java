@@ -0,0 +1,490 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.OfflineBatch;
+import com.example.librarymanagement.entity.Message;
+import com.example.librarymanagement.exception.BadRequestException;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.OfflineQueueService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.service.inter.UserPresenceService;
+import com.example.librarymanagement.util.ChatMessageMapper;
+import com.example.librarymanagement.util.Helpers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Queue bền trên đĩa local (chat.offline-queue.dir) giữ reference tới tin nhắn đến trong lúc user không có session nào:
+ * - Mỗi user một file log append-only: header [baseOffset, ackedOffset] rồi các record 16 byte
+ *   [conversationId, messageId] theo thứ tự commit. Offset là số thứ tự record, tăng mãi kể cả qua compaction.
+ * - Đăng nhập lại: client đọc từ offset đã ack bằng một lần map vùng file liên tục (đọc tuần tự, không query theo
+ *   từng conversation), nội dung tin nhắn lấy từ recent cache, phần thiếu nạp bằng một query theo id.
+ * - Ack chỉ ghi ackedOffset vào header; khi phần đã ack vượt compact-threshold record, phần còn lại được chép sang
+ *   file mới và thay thế nguyên tử. Ack hết thì file chỉ còn header.
+ * - Ghi bằng FileChannel (record rất nhỏ, giữ mapping ghi cho hàng nghìn user offline sẽ chiếm address space);
+ *   file đang mở giới hạn theo LRU max-open-files, force xuống đĩa mỗi sync-interval-ms và khi shutdown.
+ * - onMessageSaved chạy trên thread ingest nên chỉ đẩy tin nhắn vào hàng đợi có giới hạn (queue-capacity);
+ *   một thread riêng duyệt thành viên và append. Hàng đợi đầy thì bỏ tin nhắn (user vẫn thấy qua lịch sử / inbox).
+ * - Log bị LRU đẩy ra mà còn dữ liệu chưa force thì chưa đóng channel ngay: lần sync() kế tiếp force rồi mới đóng,
+ *   nên việc mở file mới không phải chờ fsync.
+ * */
+@Slf4j
+@Service
+public class OfflineQueueServiceImpl implements OfflineQueueService {
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 16;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final MembershipIndexService membershipIndexService;
+    private final UserPresenceService userPresenceService;
+    private final RecentMessageCacheService recentMessageCacheService;
+    private final MessageRepository messageRepository;
+    private final UserCardService userCardService;
+    private final Path directory;
+    private final long compactThreshold;
+    private final BlockingQueue<ChatMessage> pendingAppends;
+
+    // Các log đang mở, LRU theo access order; mọi truy cập map nằm trong lock của chính nó
+    private final LinkedHashMap<Integer, UserLog> openLogs;
+    private final Set<UserLog> dirtyLogs = ConcurrentHashMap.newKeySet();
+
+    private final Counter appendedCounter;
+    private final Counter deliveredCounter;
+    private final Counter compactionCounter;
+    private final Counter errorCounter;
+    private final Counter droppedCounter;
+
+    private volatile boolean running;
+    private Thread appender;
+
+    public OfflineQueueServiceImpl(MembershipIndexService membershipIndexService,
+                                   UserPresenceService userPresenceService,
+                                   RecentMessageCacheService recentMessageCacheService,
+                                   MessageRepository messageRepository,
+                                   UserCardService userCardService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${chat.offline-queue.dir}") String dir,
+                                   @Value("${chat.offline-queue.max-open-files}") int maxOpenFiles,
+                                   @Value("${chat.offline-queue.compact-threshold}") long compactThreshold,
+                                   @Value("${chat.offline-queue.queue-capacity}") int queueCapacity)
+            throws IOException {
+        this.membershipIndexService = membershipIndexService;
+        this.userPresenceService = userPresenceService;
+        this.recentMessageCacheService = recentMessageCacheService;
+        this.messageRepository = messageRepository;
+        this.userCardService = userCardService;
+        this.directory = Files.createDirectories(Path.of(dir));
+        this.compactThreshold = compactThreshold;
+        this.pendingAppends = new ArrayBlockingQueue<>(queueCapacity);
+        this.openLogs = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, UserLog> eldest) {
+                if (size() <= maxOpenFiles) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        Gauge.builder("chat.offline.open.logs", this, OfflineQueueServiceImpl::openLogCount).register(meterRegistry);
+        appendedCounter = Counter.builder("chat.offline.appended")
+                .description("Message references queued for offline users")
+                .register(meterRegistry);
+        deliveredCounter = Counter.builder("chat.offline.delivered")
+                .description("Queued messages returned by login catch-up")
+                .register(meterRegistry);
+        compactionCounter = Counter.builder("chat.offline.compactions").register(meterRegistry);
+        errorCounter = Counter.builder("chat.offline.errors").register(meterRegistry);
+        droppedCounter = Counter.builder("chat.offline.dropped")
+                .description("Messages not queued because the append queue was full")
+                .register(meterRegistry);
+        Gauge.builder("chat.offline.append.queue.depth", pendingAppends, BlockingQueue::size)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        appender = new Thread(this::runAppendLoop, "offline-queue-appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    @Override
+    public void onMessageSaved(ChatMessage message) {
+        if (!pendingAppends.offer(message)) {
+            // Tin nhắn đã commit, user vẫn thấy nó qua lịch sử / inbox
+            droppedCounter.increment();
+            log.warn("Offline append queue is full, message {} not queued", message.getId());
+        }
+    }
+
+    // Ghi mọi tin nhắn đang chờ trên thread gọi, trả về số tin nhắn đã xử lý
+    int appendPending() {
+        List<ChatMessage> batch = new ArrayList<>();
+        pendingAppends.drainTo(batch);
+        for (ChatMessage message : batch) {
+            appendToMembers(message);
+        }
+        return batch.size();
+    }
+
+    private void runAppendLoop() {
+        while (running || !pendingAppends.isEmpty()) {
+            try {
+                ChatMessage first = pendingAppends.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    appendToMembers(first);
+                    appendPending();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                errorCounter.increment();
+                log.error("Offline queue appender failed", ex);
+            }
+        }
+    }
+
+    private void appendToMembers(ChatMessage message) {
+        for (int userId : membershipIndexService.getMemberIds(message.getConversationId())) {
+            if (userId == message.getSender() || userPresenceService.isUserOnline(userId)) {
+                continue;
+            }
+            try {
+                withLog(userId, userLog -> {
+                    userLog.append(message.getConversationId(), message.getId());
+                    dirtyLogs.add(userLog);
+                    return null;
+                });
+                appendedCounter.increment();
+            } catch (UncheckedIOException ex) {
+                // Tin nhắn đã commit, user vẫn thấy nó qua lịch sử / inbox
+                errorCounter.increment();
+                log.warn("Failed to queue message {} for offline user {}", message.getId(), userId, ex);
+            }
+        }
+    }
+
+    @Override
+    public OfflineBatch getPending(Long from, int limit, Authentication authentication) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Integer userId = Helpers.getCurrentUserId(authentication);
+        Segment segment = withLog(userId, userLog -> userLog.read(from, limit));
+
+        // Tin nhắn còn trong recent cache không cần tới DB, phần còn lại nạp bằng một query
+        ChatMessage[] resolved = new ChatMessage[segment.size()];
+        Map<Long, Integer> missing = new HashMap<>();
+        for (int i = 0; i < segment.size(); i++) {
+            long conversationId = segment.conversationIds()[i];
+            if (!membershipIndexService.isMember(conversationId, userId)) {
+                continue;
+            }
+            long messageId = segment.messageIds()[i];
+            int index = i;
+            recentMessageCacheService.getMessage(conversationId, messageId)
+                    .ifPresentOrElse(cached -> resolved[index] = cached, () -> missing.put(messageId, index));
+        }
+        if (!missing.isEmpty()) {
+            for (Message row : messageRepository.findAllById(missing.keySet())) {
+                resolved[missing.get(row.getId())] = ChatMessageMapper.toChatMessage(row);
+            }
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(resolved.length);
+        Set<Integer> senderIds = new HashSet<>();
+        for (ChatMessage message : resolved) {
+            if (message != null) {
+                messages.add(message);
+                senderIds.add(message.getSender());
+            }
+        }
+        messages = ChatMessageMapper.withSenders(messages, userCardService.getCards(senderIds));
+        deliveredCounter.increment(messages.size());
+        return OfflineBatch.builder()
+                .messages(messages)
+                .nextOffset(segment.nextOffset())
+                .hasMore(segment.hasMore())
+                .build();
+    }
+
+    @Override
+    public void acknowledge(long offset, Authentication authentication) {
+        Integer userId = Helpers.getCurrentUserId(authentication);
+        boolean compacted = withLog(userId, userLog -> {
+            boolean result = userLog.acknowledge(offset, compactThreshold);
+            dirtyLogs.add(userLog);
+            return result;
+        });
+        if (compacted) {
+            compactionCounter.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.offline-queue.sync-interval-ms}")
+    public void sync() {
+        for (UserLog userLog : dirtyLogs) {
+            dirtyLogs.remove(userLog);
+            userLog.force();
+        }
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException {
+        // Thread appender ghi nốt các tin nhắn còn trong hàng đợi rồi mới thoát
+        running = false;
+        if (appender != null) {
+            appender.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        synchronized (openLogs) {
+            openLogs.values().forEach(UserLog::evict);
+            openLogs.clear();
+        }
+        sync();
+    }
+
+    // Log bị LRU đóng giữa lúc lấy ra và lúc khoá thì lấy lại (mở lại file)
+    private <T> T withLog(Integer userId, LogAction<T> action) {
+        while (true) {
+            UserLog userLog;
+            synchronized (openLogs) {
+                userLog = openLogs.computeIfAbsent(userId, id -> new UserLog(pathOf(id)));
+            }
+            synchronized (userLog) {
+                if (userLog.closed) {
+                    continue;
+                }
+                try {
+                    return action.apply(userLog);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+
+    // Chia thư mục con để không dồn hàng trăm nghìn file vào một thư mục
+    private Path pathOf(Integer userId) {
+        return directory.resolve(Integer.toString(userId % 256)).resolve(userId + ".log");
+    }
+
+    private int openLogCount() {
+        synchronized (openLogs) {
+            return openLogs.size();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LogAction<T> {
+        T apply(UserLog log) throws IOException;
+    }
+
+    private record Segment(long[] conversationIds, long[] messageIds, long nextOffset, boolean hasMore) {
+        int size() {
+            return messageIds.length;
+        }
+    }
+
+    // Mọi method gọi trong lock của chính object (xem withLog); dirty = đã ghi nhưng chưa force
+    private static final class UserLog {
+        private final Path path;
+        private FileChannel channel;
+        private long baseOffset;
+        private long ackedOffset;
+        private long endOffset;
+        private boolean closed;
+        private boolean dirty;
+
+        UserLog(Path path) {
+            this.path = path;
+        }
+
+        void append(long conversationId, long messageId) throws IOException {
+            open();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).putLong(conversationId).putLong(messageId).flip();
+            long position = positionOf(endOffset);
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            endOffset++;
+            dirty = true;
+        }
+
+        Segment read(Long from, int limit) throws IOException {
+            open();
+            // Offset cũ hơn phần đã ack hoặc vượt quá cuối log (client giữ offset sai) → đọc từ vị trí đã ack
+            long start = from == null || from < ackedOffset || from > endOffset ? ackedOffset : from;
+            int count = (int) Math.min(limit, endOffset - start);
+            long[] conversationIds = new long[count];
+            long[] messageIds = new long[count];
+            if (count > 0) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, positionOf(start),
+                        (long) count * RECORD_BYTES);
+                for (int i = 0; i < count; i++) {
+                    conversationIds[i] = mapped.getLong();
+                    messageIds[i] = mapped.getLong();
+                }
+            }
+            return new Segment(conversationIds, messageIds, start + count, start + count < endOffset);
+        }
+
+        // Trả về true nếu log được compact
+        boolean acknowledge(long offset, long compactThreshold) throws IOException {
+            open();
+            long acked = Math.min(offset, endOffset);
+            if (acked <= ackedOffset) {
+                return false;
+            }
+            ackedOffset = acked;
+            dirty = true;
+            if (ackedOffset == endOffset) {
+                baseOffset = endOffset;
+                writeHeader(channel, baseOffset, ackedOffset);
+                channel.truncate(HEADER_BYTES);
+                return false;
+            }
+            if (ackedOffset - baseOffset < compactThreshold) {
+                writeHeader(channel, baseOffset, ackedOffset);
+                return false;
+            }
+            compact();
+            return true;
+        }
+
+        // Log đã bị evict thì đóng channel sau khi force
+        void force() {
+            synchronized (this) {
+                if (channel == null) {
+                    return;
+                }
+                try {
+                    if (dirty) {
+                        channel.force(false);
+                        dirty = false;
+                    }
+                    if (closed) {
+                        closeChannel();
+                    }
+                } catch (IOException ex) {
+                    log.warn("Failed to sync offline queue {}", path, ex);
+                }
+            }
+        }
+
+        // Không force ở đây: log còn dirty vẫn nằm trong dirtyLogs, sync() kế tiếp force rồi đóng channel
+        void evict() {
+            synchronized (this) {
+                closed = true;
+                if (channel == null || dirty) {
+                    return;
+                }
+                try {
+                    closeChannel();
+                } catch (IOException ex) {
+                    log.warn("Failed to close offline queue {}", path, ex);
+                }
+            }
+        }
+
+        private void closeChannel() throws IOException {
+            channel.close();
+            channel = null;
+        }
+
+        private void open() throws IOException {
+            if (channel != null) {
+                return;
+            }
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                baseOffset = 0;
+                ackedOffset = 0;
+                endOffset = 0;
+                writeHeader(channel, baseOffset, ackedOffset);
+                channel.truncate(HEADER_BYTES);
+                return;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // đọc tới khi đủ header
+            }
+            header.flip();
+            baseOffset = header.getLong();
+            ackedOffset = header.getLong();
+            // Record ghi dở khi process chết bị cắt bỏ
+            endOffset = baseOffset + (size - HEADER_BYTES) / RECORD_BYTES;
+            channel.truncate(positionOf(endOffset));
+        }
+
+        // Chép phần chưa ack sang file tạm rồi thay thế nguyên tử, file cũ không bị sửa giữa chừng
+        private void compact() throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long from = positionOf(ackedOffset);
+                long remaining = channel.size() - from;
+                writeHeader(target, ackedOffset, ackedOffset);
+                long copied = 0;
+                while (copied < remaining) {
+                    copied += channel.transferTo(from + copied, remaining - copied, target.position(HEADER_BYTES + copied));
+                }
+                target.force(true);
+            }
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            baseOffset = ackedOffset;
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        private static void writeHeader(FileChannel target, long base, long acked) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(base).putLong(acked).flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += target.write(header, position);
+            }
+        }
+
+        private long positionOf(long offset) {
+            return HEADER_BYTES + (offset - baseOffset) * RECORD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.MessageRead;
+import com.example.librarymanagement.exception.BadRequestException;
+import com.example.librarymanagement.exception.ResourceNotFoundException;
+import com.example.librarymanagement.repository.ConversationMemberRepository;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.ReadReceiptService;
+import com.example.librarymanagement.service.inter.UnreadCountService;
+import com.example.librarymanagement.util.Helpers;
+import com.example.librarymanagement.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Gộp read receipt (MessageRead) trong bộ nhớ thay vì UPDATE conversation_members ở mỗi sự kiện:
+ * - Read pointer theo (user, conversation) chỉ tăng (max-merge theo lastMessageId),
+ *   nên sự kiện đến trễ / trùng lặp từ nhiều thiết bị không làm lùi pointer.
+ * - Pointer đã tăng được đánh dấu dirty và ghi bằng một JDBC batch UPDATE mỗi flush-interval-ms
+ *   (và khi shutdown); UPDATE có điều kiện nên DB cũng không bao giờ bị lùi, và trừ unread_count cùng lúc.
+ * - Mỗi tick, mỗi conversation có thay đổi chỉ phát một frame MessageRead[] tới thành viên.
+ * - Lần đầu gặp một (user, conversation), pointer được nạp từ DB rồi giữ trong bộ nhớ; sau mỗi flush,
+ *   pointer đã ghi DB và không được dùng quá idle-ms bị bỏ khỏi bộ nhớ, lần dùng sau nạp lại từ
+ *   conversation_members.last_read_message_id.
+ * */
+@Slf4j
+@Service
+public class ReadReceiptServiceImpl implements ReadReceiptService {
+    public static final String READ_DESTINATION = "/queue/read";
+
+    /*
+     * Ghi pointer và trừ unread_count trong cùng một câu trên cùng một dòng: số bị trừ là số tin của người khác
+     * nằm giữa pointer đang có trong DB và pointer mới, nên flush từ nhiều node vẫn không trừ trùng.
+     * Đọc tới tin mới nhất thì đặt về 0. unread_count phải đứng trước last_read_message_id vì MySQL
+     * gán SET từ trái sang phải.
+     * */
+    private static final String UPDATE_SQL = "UPDATE conversation_members " +
+            "SET unread_count = CASE " +
+            "WHEN ? >= (SELECT COALESCE(MAX(m.id), 0) FROM messages m WHERE m.conversation_id = ?) THEN 0 " +
+            "ELSE GREATEST(unread_count - (SELECT COUNT(*) FROM messages m " +
+            "WHERE m.conversation_id = ? AND m.id > COALESCE(conversation_members.last_read_message_id, 0) " +
+            "AND m.id <= ? AND m.sender_id <> ?), 0) END, " +
+            "last_read_message_id = ?, last_read_at = ? " +
+            "WHERE conversation_id = ? AND user_id = ? " +
+            "AND (last_read_message_id IS NULL OR last_read_message_id < ?)";
+    // Cùng thứ tự khoá dòng với batch cộng unread_count bên ingest
+    private static final Comparator<Map.Entry<ReadKey, ReadPointer>> LOCK_ORDER = Comparator
+            .comparingLong((Map.Entry<ReadKey, ReadPointer> entry) -> entry.getKey().conversationId())
+            .thenComparingInt(entry -> entry.getKey().userId());
+    // Cho phép lệch đồng hồ giữa các node khi kiểm tra id tin nhắn
+    private static final long MAX_CLOCK_SKEW_MS = 5_000;
+    private static final ReadPointer NONE = new ReadPointer(0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConversationMemberRepository conversationMemberRepository;
+    private final MembershipIndexService membershipIndexService;
+    private final ChatDeliveryService chatDeliveryService;
+    private final UnreadCountService unreadCountService;
+
+    private final long idleMs;
+
+    private final ConcurrentHashMap<ReadKey, CachedPointer> pointers = new ConcurrentHashMap<>();
+    // Pointer chưa ghi DB / chưa phát, chỉ giữ giá trị mới nhất
+    private final ConcurrentHashMap<ReadKey, ReadPointer> unflushed = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ReadKey, ReadPointer> unbroadcast = new ConcurrentHashMap<>();
+
+    private final Counter eventCounter;
+    private final Counter mergedCounter;
+    private final Counter frameCounter;
+    private final Counter evictedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    public ReadReceiptServiceImpl(JdbcTemplate jdbcTemplate,
+                                  ConversationMemberRepository conversationMemberRepository,
+                                  MembershipIndexService membershipIndexService,
+                                  ChatDeliveryService chatDeliveryService,
+                                  UnreadCountService unreadCountService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${chat.read-receipt.idle-ms}") long idleMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.conversationMemberRepository = conversationMemberRepository;
+        this.membershipIndexService = membershipIndexService;
+        this.chatDeliveryService = chatDeliveryService;
+        this.unreadCountService = unreadCountService;
+        this.idleMs = idleMs;
+
+        eventCounter = Counter.builder("chat.read-receipt.events")
+                .description("Raw read events received from clients")
+                .register(meterRegistry);
+        mergedCounter = Counter.builder("chat.read-receipt.merged")
+                .description("Read events that did not advance the pointer")
+                .register(meterRegistry);
+        frameCounter = Counter.builder("chat.read-receipt.frames")
+                .description("Coalesced read-state frames broadcast to conversations")
+                .register(meterRegistry);
+        evictedCounter = Counter.builder("chat.read-receipt.evicted")
+                .description("Clean, idle read pointers dropped from memory")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("chat.read-receipt.batch.size")
+                .description("Rows written per read-pointer flush")
+                .register(meterRegistry);
+        Gauge.builder("chat.read-receipt.pending", unflushed, Map::size)
+                .register(meterRegistry);
+        Gauge.builder("chat.read-receipt.cached", pointers, Map::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onRead(MessageRead read) {
+        eventCounter.increment();
+        if (read.getConversationId() == null || read.getUserId() == null || read.getLastMessageId() == null) {
+            throw new BadRequestException("Conversation and last message are required");
+        }
+        // ID snowflake mang timestamp → từ chối id "ở tương lai" để pointer không nhảy vượt tin nhắn thật
+        long now = System.currentTimeMillis();
+        if (SnowflakeIdGenerator.timestampOf(read.getLastMessageId()) > now + MAX_CLOCK_SKEW_MS) {
+            throw new BadRequestException("Invalid message id");
+        }
+        ReadKey key = new ReadKey(read.getUserId(), read.getConversationId());
+        if (!membershipIndexService.isMember(key.conversationId(), key.userId())) {
+            throw new ResourceNotFoundException("Conversation not found with ID: " + key.conversationId());
+        }
+
+        ReadPointer incoming = new ReadPointer(read.getLastMessageId(), now);
+        while (true) {
+            CachedPointer cached = getCachedPointer(key);
+            synchronized (cached) {
+                // Vừa bị evict giữa lúc lấy ra và khoá → nạp lại
+                if (cached.evicted) {
+                    continue;
+                }
+                cached.lastAccessedAt = now;
+                if (cached.pointer.messageId() >= incoming.messageId()) {
+                    mergedCounter.increment();
+                    return;
+                }
+                cached.pointer = incoming;
+                // Trong khoá để evictIdle không bỏ pointer chưa ghi DB
+                unflushed.merge(key, incoming, ReadPointer::max);
+            }
+            unbroadcast.merge(key, incoming, ReadPointer::max);
+            unreadCountService.onReadPointerAdvanced(key.userId(), key.conversationId(), incoming.messageId());
+            return;
+        }
+    }
+
+    @Override
+    public MessageRead getReadPointer(Long conversationId, Authentication authentication) {
+        Integer userId = Helpers.getCurrentUserId(authentication);
+        if (!membershipIndexService.isMember(conversationId, userId)) {
+            throw new ResourceNotFoundException("Conversation not found with ID: " + conversationId);
+        }
+        ReadKey key = new ReadKey(userId, conversationId);
+        CachedPointer cached = getCachedPointer(key);
+        cached.lastAccessedAt = System.currentTimeMillis();
+        return toMessageRead(key, cached.pointer);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.read-receipt.tick-ms}")
+    public void broadcastReadStates() {
+        if (unbroadcast.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<MessageRead>> readsByConversation = new HashMap<>();
+        for (Map.Entry<ReadKey, ReadPointer> entry : unbroadcast.entrySet()) {
+            ReadKey key = entry.getKey();
+            if (unbroadcast.remove(key, entry.getValue())) {
+                readsByConversation.computeIfAbsent(key.conversationId(), id -> new ArrayList<>())
+                        .add(toMessageRead(key, entry.getValue()));
+            }
+        }
+        readsByConversation.forEach((conversationId, reads) -> {
+            chatDeliveryService.deliverToConversation(conversationId, READ_DESTINATION,
+                    reads.toArray(new MessageRead[0]));
+            frameCounter.increment();
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${chat.read-receipt.flush-interval-ms}")
+    @Override
+    public int flush() {
+        int written = writeUnflushed();
+        evictIdle();
+        return written;
+    }
+
+    private int writeUnflushed() {
+        if (unflushed.isEmpty()) {
+            return 0;
+        }
+
+        List<Map.Entry<ReadKey, ReadPointer>> batch = new ArrayList<>();
+        for (Map.Entry<ReadKey, ReadPointer> entry : unflushed.entrySet()) {
+            if (unflushed.remove(entry.getKey(), entry.getValue())) {
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        batch.sort(LOCK_ORDER);
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, entry) -> {
+                long conversationId = entry.getKey().conversationId();
+                long messageId = entry.getValue().messageId();
+                ps.setLong(1, messageId);
+                ps.setLong(2, conversationId);
+                ps.setLong(3, conversationId);
+                ps.setLong(4, messageId);
+                ps.setInt(5, entry.getKey().userId());
+                ps.setLong(6, messageId);
+                ps.setLong(7, entry.getValue().readAt());
+                ps.setLong(8, conversationId);
+                ps.setInt(9, entry.getKey().userId());
+                ps.setLong(10, messageId);
+            });
+            batchSizeSummary.record(batch.size());
+            // unread_count trong DB đã khớp pointer mới → bỏ phần đếm lại trong bộ nhớ
+            batch.forEach(entry -> unreadCountService.onReadPointerFlushed(entry.getKey().userId(),
+                    entry.getKey().conversationId(), entry.getValue().messageId()));
+            return batch.size();
+        } catch (RuntimeException ex) {
+            // Trả lại để thử lại ở lần flush sau
+            log.error("Failed to flush {} read pointers", batch.size(), ex);
+            batch.forEach(entry -> unflushed.merge(entry.getKey(), entry.getValue(), ReadPointer::max));
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        int written = flush();
+        log.info("Flushed {} read pointers on shutdown", written);
+    }
+
+    // Bỏ pointer đã ghi DB (không còn trong unflushed) và không được dùng quá idle-ms
+    private void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleMs;
+        for (Map.Entry<ReadKey, CachedPointer> entry : pointers.entrySet()) {
+            CachedPointer cached = entry.getValue();
+            if (cached.lastAccessedAt >= idleBefore) {
+                continue;
+            }
+            synchronized (cached) {
+                if (cached.lastAccessedAt < idleBefore && !unflushed.containsKey(entry.getKey())) {
+                    cached.evicted = true;
+                    pointers.remove(entry.getKey(), cached);
+                    evictedCounter.increment();
+                }
+            }
+        }
+    }
+
+    // Pointer trong bộ nhớ; lần đầu gặp key (hoặc sau khi bị evict) thì nạp từ DB
+    private CachedPointer getCachedPointer(ReadKey key) {
+        CachedPointer cached = pointers.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ReadPointer stored = conversationMemberRepository.findReadPointer(key.conversationId(), key.userId())
+                .filter(view -> view.getLastReadMessageId() != null)
+                .map(view -> new ReadPointer(view.getLastReadMessageId(),
+                        view.getLastReadAt() != null ? view.getLastReadAt() : 0))
+                .orElse(NONE);
+        CachedPointer loaded = new CachedPointer(stored, System.currentTimeMillis());
+        CachedPointer existing = pointers.putIfAbsent(key, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static MessageRead toMessageRead(ReadKey key, ReadPointer pointer) {
+        return MessageRead.builder()
+                .userId(key.userId())
+                .conversationId(key.conversationId())
+                .lastMessageId(pointer == NONE ? null : pointer.messageId())
+                .readAt(pointer == NONE ? null : pointer.readAt())
+                .build();
+    }
+
+    private record ReadKey(int userId, long conversationId) {
+    }
+
+    private static final class CachedPointer {
+        // Đọc / ghi trong synchronized (this); getReadPointer đọc không khoá
+        volatile ReadPointer pointer;
+        volatile long lastAccessedAt;
+        boolean evicted;
+
+        CachedPointer(ReadPointer pointer, long lastAccessedAt) {
+            this.pointer = pointer;
+            this.lastAccessedAt = lastAccessedAt;
+        }
+    }
+
+    private record ReadPointer(long messageId, long readAt) {
+        static ReadPointer max(ReadPointer a, ReadPointer b) {
+            return b.messageId > a.messageId ? b : a;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.UnaryOperator;
+
+/*
+ * Cache N tin nhắn mới nhất của mỗi conversation trong một ring buffer cố định.
+ * - Ghi: send path append sau khi batch commit; lần đọc đầu tiên nạp từ DB.
+ * - Sửa / xoá mềm: thay thế đúng phần tử trong buffer (không mutate object cũ vì có thể đang được serialize).
+ * - Bộ nhớ: tổng dung lượng ước lượng của mọi buffer bị giới hạn bởi max-bytes,
+ *   vượt ngưỡng thì loại conversation ít được dùng gần đây nhất (LRU).
+ * - Nạp từ DB: caller lấy getGeneration trước khi query và truyền vào populate. Sửa / xoá tăng generation của
+ *   conversation trước khi chạm buffer, nên kết quả đọc có thể đã cũ (sửa / xoá commit giữa lúc query và populate)
+ *   bị bỏ thay vì ghi đè bản đã sửa. Generation chia theo stripe (hash conversationId) để bộ nhớ cố định;
+ *   hai conversation chung stripe chỉ làm một lần nạp bị bỏ oan.
+ * */
+@Slf4j
+@Service
+public class RecentMessageCacheServiceImpl implements RecentMessageCacheService {
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final int messagesPerConversation;
+    private final long maxBytes;
+
+    // accessOrder = true → duyệt từ phần tử ít được truy cập gần đây nhất
+    private final LinkedHashMap<Long, RingBuffer> buffers = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter staleFillCounter;
+
+    public RecentMessageCacheServiceImpl(MeterRegistry meterRegistry,
+                                         @Value("${chat.recent-cache.messages-per-conversation}") int messagesPerConversation,
+                                         @Value("${chat.recent-cache.max-bytes}") long maxBytes) {
+        this.messagesPerConversation = messagesPerConversation;
+        this.maxBytes = maxBytes;
+
+        hitCounter = Counter.builder("chat.recent-cache.requests").tag("result", "hit").register(meterRegistry);
+        missCounter = Counter.builder("chat.recent-cache.requests").tag("result", "miss").register(meterRegistry);
+        evictionCounter = Counter.builder("chat.recent-cache.evictions")
+                .description("Conversations evicted to stay within the memory budget")
+                .register(meterRegistry);
+        staleFillCounter = Counter.builder("chat.recent-cache.stale.fills")
+                .description("DB fills dropped because a message was edited or deleted while reading")
+                .register(meterRegistry);
+        Gauge.builder("chat.recent-cache.hit.ratio", this, RecentMessageCacheServiceImpl::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("chat.recent-cache.bytes", usedBytes, AtomicLong::get)
+                .description("Estimated heap used by cached messages")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.recent-cache.conversations", this, RecentMessageCacheServiceImpl::conversationCount)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public int getMessagesPerConversation() {
+        return messagesPerConversation;
+    }
+
+    @Override
+    public Optional<List<ChatMessage>> getRecent(Long conversationId, int limit) {
+        RingBuffer buffer = getBuffer(conversationId);
+        List<ChatMessage> messages = buffer != null ? buffer.newest(limit) : null;
+        if (messages == null) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        return Optional.of(messages);
+    }
+
+    @Override
+    public Optional<ChatMessage> getMessage(Long conversationId, Long messageId) {
+        RingBuffer buffer = getBuffer(conversationId);
+        return buffer != null ? Optional.ofNullable(buffer.find(messageId)) : Optional.empty();
+    }
+
+    @Override
+    public OptionalInt countBetween(Long conversationId, long afterId, long upToId, Integer excludeSenderId) {
+        RingBuffer buffer = getBuffer(conversationId);
+        int count = buffer != null ? buffer.countBetween(afterId, upToId, excludeSenderId) : -1;
+        return count >= 0 ? OptionalInt.of(count) : OptionalInt.empty();
+    }
+
+    @Override
+    public long getGeneration(Long conversationId) {
+        return generations.get(stripeOf(conversationId));
+    }
+
+    @Override
+    public void populate(Long conversationId, long generation, List<ChatMessage> newestMessages, boolean complete) {
+        int stripe = stripeOf(conversationId);
+        if (generations.get(stripe) != generation) {
+            staleFillCounter.increment();
+            return;
+        }
+        RingBuffer buffer = getOrCreateBuffer(conversationId);
+        long delta;
+        // Kiểm tra lại trong lock của buffer: sửa / xoá tăng generation trước khi lấy lock này để replace
+        synchronized (buffer) {
+            if (generations.get(stripe) != generation) {
+                staleFillCounter.increment();
+                return;
+            }
+            delta = buffer.fill(newestMessages, complete);
+        }
+        addBytes(delta);
+    }
+
+    @Override
+    public void onMessageSaved(ChatMessage message) {
+        RingBuffer buffer = getOrCreateBuffer(message.getConversationId());
+        addBytes(buffer.add(message));
+    }
+
+    @Override
+    public void onMessageEdited(Long conversationId, Long messageId, String content, Long updatedAt) {
+        generations.incrementAndGet(stripeOf(conversationId));
+        RingBuffer buffer = getBuffer(conversationId);
+        if (buffer != null) {
+            addBytes(buffer.replace(messageId, message -> message.toBuilder()
+                    .content(content)
+                    .updatedAt(updatedAt)
+                    .build()));
+        }
+    }
+
+    @Override
+    public void onMessageDeleted(Long conversationId, Long messageId, Long deletedAt) {
+        generations.incrementAndGet(stripeOf(conversationId));
+        RingBuffer buffer = getBuffer(conversationId);
+        if (buffer != null) {
+            addBytes(buffer.replace(messageId, message -> message.toBuilder()
+                    .content(null)
+                    .deletedAt(deletedAt)
+                    .build()));
+        }
+    }
+
+    private static int stripeOf(Long conversationId) {
+        return (int) ((Long.hashCode(conversationId) & 0x7fffffff) % GENERATION_STRIPES);
+    }
+
+    private RingBuffer getBuffer(Long conversationId) {
+        synchronized (buffers) {
+            return buffers.get(conversationId);
+        }
+    }
+
+    private RingBuffer getOrCreateBuffer(Long conversationId) {
+        synchronized (buffers) {
+            return buffers.computeIfAbsent(conversationId, id -> new RingBuffer(messagesPerConversation));
+        }
+    }
+
+    private void addBytes(long delta) {
+        if (delta != 0 && usedBytes.addAndGet(delta) > maxBytes) {
+            evictUntilWithinBudget();
+        }
+    }
+
+    private void evictUntilWithinBudget() {
+        synchronized (buffers) {
+            Iterator<Map.Entry<Long, RingBuffer>> it = buffers.entrySet().iterator();
+            while (usedBytes.get() > maxBytes && it.hasNext()) {
+                RingBuffer buffer = it.next().getValue();
+                it.remove();
+                usedBytes.addAndGet(-buffer.evict());
+                evictionCounter.increment();
+            }
+        }
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private int conversationCount() {
+        synchronized (buffers) {
+            return buffers.size();
+        }
+    }
+
+    // Ước lượng dung lượng heap của một ChatMessage (header object + các field + String)
+    static long estimateSize(ChatMessage message) {
+        return 128
+                + estimateSize(message.getContent())
+                + estimateSize(message.getSenderName())
+                + estimateSize(message.getSenderAvatar())
+                + estimateSize(message.getClientMessageId());
+    }
+
+    private static long estimateSize(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    /*
+     * Ring buffer các tin nhắn mới nhất của một conversation, sắp xếp theo id tăng dần.
+     * Luôn là một dải liên tục: chứa đúng size tin nhắn mới nhất trong DB.
+     * complete = true nghĩa là DB không có tin nhắn nào cũ hơn phần tử đầu tiên.
+     * Mọi method trả về thay đổi dung lượng (bytes) để cập nhật bộ đếm toàn cục.
+     * */
+    static final class RingBuffer {
+        private final ChatMessage[] slots;
+        private int head; // vị trí phần tử cũ nhất
+        private int size;
+        private boolean complete;
+        private boolean evicted;
+        private long bytes;
+
+        RingBuffer(int capacity) {
+            this.slots = new ChatMessage[capacity];
+        }
+
+        synchronized List<ChatMessage> newest(int limit) {
+            if (evicted || (size < limit && !complete)) {
+                return null;
+            }
+            int count = Math.min(limit, size);
+            List<ChatMessage> result = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) {
+                result.add(at(i));
+            }
+            return result;
+        }
+
+        synchronized ChatMessage find(Long messageId) {
+            int index = indexOf(messageId);
+            return index >= 0 ? at(index) : null;
+        }
+
+        // -1 nếu buffer có thể thiếu tin nhắn trong khoảng (afterId, upToId]
+        synchronized int countBetween(long afterId, long upToId, Integer excludeSenderId) {
+            if (evicted || (!complete && (size == 0 || at(0).getId() > afterId))) {
+                return -1;
+            }
+            int count = 0;
+            for (int i = size - 1; i >= 0 && at(i).getId() > afterId; i--) {
+                ChatMessage message = at(i);
+                if (message.getId() <= upToId && !message.getSender().equals(excludeSenderId)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized long add(ChatMessage message) {
+            if (evicted) {
+                return 0;
+            }
+            long id = message.getId();
+            int pos = size;
+            while (pos > 0 && at(pos - 1).getId() >= id) {
+                if (at(pos - 1).getId() == id) {
+                    return 0;
+                }
+                pos--;
+            }
+            // Cũ hơn mọi phần tử trong buffer: chỉ chèn được khi buffer đang chứa toàn bộ conversation
+            if (pos == 0 && size > 0 && (!complete || size == slots.length)) {
+                return 0;
+            }
+
+            long delta = 0;
+            if (size == slots.length) {
+                delta -= dropOldest();
+                pos--;
+            }
+            for (int i = size; i > pos; i--) {
+                set(i, at(i - 1));
+            }
+            set(pos, message);
+            size++;
+            delta += estimateSize(message);
+            bytes += delta;
+            return delta;
+        }
+
+        synchronized long fill(List<ChatMessage> newestMessages, boolean complete) {
+            if (evicted) {
+                return 0;
+            }
+            long lastId = newestMessages.isEmpty() ? Long.MIN_VALUE
+                    : newestMessages.get(newestMessages.size() - 1).getId();
+
+            // Giữ lại các tin nhắn được append sau thời điểm đọc DB
+            List<ChatMessage> newer = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (at(i).getId() > lastId) {
+                    newer.add(at(i));
+                }
+            }
+
+            long before = bytes;
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = null;
+            }
+            head = 0;
+            size = 0;
+            bytes = 0;
+            this.complete = complete;
+
+            int from = Math.max(0, newestMessages.size() - slots.length);
+            if (from > 0) {
+                this.complete = false;
+            }
+            for (int i = from; i < newestMessages.size(); i++) {
+                add(newestMessages.get(i));
+            }
+            for (ChatMessage message : newer) {
+                add(message);
+            }
+            return bytes - before;
+        }
+
+        synchronized long replace(Long messageId, UnaryOperator<ChatMessage> updater) {
+            int index = indexOf(messageId);
+            if (evicted || index < 0) {
+                return 0;
+            }
+            ChatMessage old = at(index);
+            ChatMessage updated = updater.apply(old);
+            set(index, updated);
+            long delta = estimateSize(updated) - estimateSize(old);
+            bytes += delta;
+            return delta;
+        }
+
+        synchronized long evict() {
+            evicted = true;
+            return bytes;
+        }
+
+        private long dropOldest() {
+            long freed = estimateSize(slots[head]);
+            slots[head] = null;
+            head = (head + 1) % slots.length;
+            size--;
+            complete = false;
+            return freed;
+        }
+
+        private int indexOf(Long messageId) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (at(i).getId().equals(messageId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private ChatMessage at(int i) {
+            return slots[(head + i) % slots.length];
+        }
+
+        private void set(int i, ChatMessage message) {
+            slots[(head + i) % slots.length] = message;
+        }
+    }
+}
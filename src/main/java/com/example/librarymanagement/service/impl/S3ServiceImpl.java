@@ -2,8 +2,11 @@ package com.example.librarymanagement.service.impl;
 
 import com.example.librarymanagement.config.AwsBuckets;
 import com.example.librarymanagement.service.inter.S3Service;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.ResponseInputStream;
@@ -19,15 +22,54 @@ import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequ
 import java.io.IOException;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
+/*
+ * Presigned URL được cache theo (key, thời hạn làm tròn xuống theo phút):
+ * - Presign là phép ký cục bộ nhưng vẫn tốn cấu hình request / chữ ký HMAC, và danh sách user / tin nhắn gọi nó cho từng dòng.
+ * - URL chỉ được dùng lại trong reuse-fraction đầu của thời hạn rồi ký lại, nên URL trả về luôn còn gần đủ thời hạn đã yêu cầu.
+ * - Thời hạn dưới một phút được ký đúng như yêu cầu và không cache: làm tròn lên một phút sẽ cấp URL sống lâu hơn
+ *   mức caller cho phép, còn dùng lại một URL ngắn hạn gần như không tiết kiệm được gì.
+ * - S3Presigner là bean dùng chung (AwsConfig), không tạo mới cho mỗi lần ký.
+ * */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class S3ServiceImpl implements S3Service {
+    private static final long DURATION_BUCKET_SECONDS = 60;
+
     private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
     private final AwsBuckets awsBuckets;
+    private final int cacheSize;
+    private final double reuseFraction;
+
+    // LRU theo access order, mọi truy cập nằm trong lock của chính nó
+    private final LinkedHashMap<PresignKey, PresignedUrl> presignedUrls = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private final Counter presignHitCounter;
+    private final Counter presignMissCounter;
+    private final Counter presignUncachedCounter;
+
+    public S3ServiceImpl(S3Client s3Client,
+                         S3Presigner s3Presigner,
+                         AwsBuckets awsBuckets,
+                         MeterRegistry meterRegistry,
+                         @Value("${cloud.aws.presign.cache-size}") int cacheSize,
+                         @Value("${cloud.aws.presign.reuse-fraction}") double reuseFraction) {
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.awsBuckets = awsBuckets;
+        this.cacheSize = cacheSize;
+        this.reuseFraction = reuseFraction;
+
+        Gauge.builder("chat.s3.presign.cache.entries", this, S3ServiceImpl::presignCacheSize).register(meterRegistry);
+        presignHitCounter = Counter.builder("chat.s3.presign.lookups").tag("result", "hit").register(meterRegistry);
+        presignMissCounter = Counter.builder("chat.s3.presign.lookups").tag("result", "miss").register(meterRegistry);
+        presignUncachedCounter = Counter.builder("chat.s3.presign.lookups").tag("result", "uncached")
+                .register(meterRegistry);
+    }
 
     @Override
     public String uploadFile(MultipartFile file, String folderPath) {
@@ -49,8 +91,74 @@ public class S3ServiceImpl implements S3Service {
         }
     }
 
+    @Override
     public String generatePresignedUrl(String key, Duration duration) {
-        try (S3Presigner s3Presigner = S3Presigner.create()) {
+        if (duration.toSeconds() < DURATION_BUCKET_SECONDS) {
+            presignUncachedCounter.increment();
+            return presign(key, duration);
+        }
+        long bucket = duration.toSeconds() / DURATION_BUCKET_SECONDS;
+        PresignKey cacheKey = new PresignKey(key, bucket);
+        long now = System.currentTimeMillis();
+        synchronized (presignedUrls) {
+            PresignedUrl cached = presignedUrls.get(cacheKey);
+            if (cached != null && cached.reuseUntil() > now) {
+                presignHitCounter.increment();
+                return cached.url();
+            }
+        }
+        presignMissCounter.increment();
+
+        Duration signatureDuration = Duration.ofSeconds(bucket * DURATION_BUCKET_SECONDS);
+        String url = presign(key, signatureDuration);
+        PresignedUrl issued = new PresignedUrl(url, now + (long) (signatureDuration.toMillis() * reuseFraction));
+        synchronized (presignedUrls) {
+            presignedUrls.put(cacheKey, issued);
+            trimPresignedUrls();
+        }
+        return url;
+    }
+
+    @Override
+    public byte[] downloadFile(String key) {
+        try {
+            GetObjectRequest objectRequest = getObjectRequest(key);
+            ResponseInputStream<GetObjectResponse> response = s3Client.getObject(objectRequest);
+
+            return response.readAllBytes();
+        } catch (IOException ex) {
+            log.error("Error downloading file: {}", key, ex);
+            throw new RuntimeException("Error downloading file", ex);
+        }
+    }
+
+    @Override
+    public void uploadBytes(String key, byte[] bytes, String contentType) {
+        PutObjectRequest objectRequest = PutObjectRequest.builder()
+                .bucket(awsBuckets.getMain())
+                .key(key)
+                .contentType(contentType)
+                .build();
+        s3Client.putObject(objectRequest, RequestBody.fromBytes(bytes));
+    }
+
+    @Override
+    public byte[] downloadRange(String key, long offset, int length) {
+        GetObjectRequest objectRequest = GetObjectRequest.builder()
+                .bucket(awsBuckets.getMain())
+                .key(key)
+                .range("bytes=" + offset + "-" + (offset + length - 1))
+                .build();
+        try (ResponseInputStream<GetObjectResponse> response = s3Client.getObject(objectRequest)) {
+            return response.readAllBytes();
+        } catch (IOException ex) {
+            log.error("Error downloading range of file: {}", key, ex);
+            throw new RuntimeException("Error downloading file", ex);
+        }
+    }
+
+    private String presign(String key, Duration duration) {
+        try {
             GetObjectRequest objectRequest = getObjectRequest(key);
 
             GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
@@ -66,16 +174,17 @@ public class S3ServiceImpl implements S3Service {
         }
     }
 
-    @Override
-    public byte[] downloadFile(String key) {
-        try {
-            GetObjectRequest objectRequest = getObjectRequest(key);
-            ResponseInputStream<GetObjectResponse> response = s3Client.getObject(objectRequest);
+    private void trimPresignedUrls() {
+        var it = presignedUrls.entrySet().iterator();
+        while (presignedUrls.size() > cacheSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
 
-            return response.readAllBytes();
-        } catch (IOException ex) {
-            log.error("Error downloading file: {}", key, ex);
-            throw new RuntimeException("Error downloading file", ex);
+    private int presignCacheSize() {
+        synchronized (presignedUrls) {
+            return presignedUrls.size();
         }
     }
 
@@ -108,6 +217,12 @@ public class S3ServiceImpl implements S3Service {
                 .key(key)
                 .build();
     }
+
+    private record PresignKey(String key, long durationBucket) {
+    }
+
+    private record PresignedUrl(String url, long reuseUntil) {
+    }
 }
 
 /*
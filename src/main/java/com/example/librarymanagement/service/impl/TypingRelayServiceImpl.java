@@ -0,0 +1,157 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.TypingIndicator;
+import com.example.librarymanagement.dto.chat.TypingState;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.TypingRelayService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Relay typing indicator hoàn toàn trong bộ nhớ (không chạm DB):
+ * - Rate limit theo (user, conversation): typing=true lặp lại trong min-interval-ms chỉ bị bỏ qua,
+ *   vì trạng thái vẫn còn hạn. typing=false luôn được nhận.
+ * - typing=true tự hết hạn sau ttl-ms nếu client không gửi lại (đóng tab, mất mạng).
+ * - Mỗi tick, mỗi conversation có thay đổi chỉ phát đúng một frame TypingState chứa toàn bộ người đang gõ,
+ *   thay vì relay từng sự kiện cho từng thành viên.
+ * */
+@Service
+public class TypingRelayServiceImpl implements TypingRelayService {
+    public static final String TYPING_DESTINATION = "/queue/typing";
+
+    private final ChatDeliveryService chatDeliveryService;
+    private final MembershipIndexService membershipIndexService;
+    private final long minIntervalMs;
+    private final long ttlMs;
+
+    // conversationId → (userId → thời điểm hết hạn typing)
+    private final ConcurrentHashMap<Long, Map<Integer, Long>> typingByConversation =
+            new ConcurrentHashMap<>();
+    private final Set<Long> dirtyConversations = ConcurrentHashMap.newKeySet();
+
+    private final Counter eventCounter;
+    private final Counter throttledCounter;
+    // Số frame sẽ gửi nếu relay từng sự kiện (sự kiện × số thành viên) so với số frame thực gửi
+    private final LongAdder naiveFrames = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+
+    public TypingRelayServiceImpl(ChatDeliveryService chatDeliveryService,
+                                  MembershipIndexService membershipIndexService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${chat.typing.min-interval-ms}") long minIntervalMs,
+                                  @Value("${chat.typing.ttl-ms}") long ttlMs) {
+        this.chatDeliveryService = chatDeliveryService;
+        this.membershipIndexService = membershipIndexService;
+        this.minIntervalMs = minIntervalMs;
+        this.ttlMs = ttlMs;
+
+        eventCounter = Counter.builder("chat.typing.events")
+                .description("Raw typing events received from clients")
+                .register(meterRegistry);
+        throttledCounter = Counter.builder("chat.typing.throttled")
+                .description("Typing events dropped by the per-user rate limit")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.typing.frames", sentFrames, LongAdder::sum)
+                .description("Typing frames actually sent to members")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.typing.frames.saved", this, TypingRelayServiceImpl::savedFrames)
+                .description("Frames a per-event relay would have sent minus frames actually sent")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onTyping(TypingIndicator indicator) {
+        Long conversationId = indicator.getConversationId();
+        Integer userId = indicator.getUserId();
+        eventCounter.increment();
+        // Không phải thành viên: bỏ qua im lặng, typing không đáng để trả lỗi
+        if (conversationId == null || userId == null || !membershipIndexService.isMember(conversationId, userId)) {
+            return;
+        }
+        naiveFrames.add(membershipIndexService.getMemberIds(conversationId).length);
+
+        long now = System.currentTimeMillis();
+        boolean typing = Boolean.TRUE.equals(indicator.getTyping());
+        AtomicBoolean throttled = new AtomicBoolean();
+        AtomicBoolean changed = new AtomicBoolean();
+        // Mọi thay đổi đi qua compute() của map ngoài (khoá theo conversation),
+        // nên map con có thể là HashMap và bị xoá khi rỗng mà không mất cập nhật
+        typingByConversation.compute(conversationId, (id, users) -> {
+            if (!typing) {
+                if (users != null && users.remove(userId) != null) {
+                    changed.set(true);
+                }
+                return users == null || users.isEmpty() ? null : users;
+            }
+            if (users == null) {
+                users = new HashMap<>();
+            }
+            Long expiresAt = users.get(userId);
+            // Lần gia hạn trước còn quá mới → không cần cập nhật gì
+            if (expiresAt != null && expiresAt - ttlMs + minIntervalMs > now) {
+                throttled.set(true);
+                return users;
+            }
+            if (users.put(userId, now + ttlMs) == null) {
+                changed.set(true);
+            }
+            return users;
+        });
+
+        if (throttled.get()) {
+            throttledCounter.increment();
+        } else if (changed.get()) {
+            dirtyConversations.add(conversationId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.tick-ms}")
+    public void flushTypingStates() {
+        long now = System.currentTimeMillis();
+
+        // Hết hạn các typing=true không được gia hạn
+        for (Long conversationId : typingByConversation.keySet()) {
+            typingByConversation.computeIfPresent(conversationId, (id, users) -> {
+                if (users.values().removeIf(expiresAt -> expiresAt <= now)) {
+                    dirtyConversations.add(conversationId);
+                }
+                return users.isEmpty() ? null : users;
+            });
+        }
+
+        for (Long conversationId : dirtyConversations) {
+            dirtyConversations.remove(conversationId);
+
+            List<Integer> typingUserIds = new ArrayList<>();
+            typingByConversation.computeIfPresent(conversationId, (id, users) -> {
+                typingUserIds.addAll(users.keySet());
+                return users;
+            });
+
+            TypingState state = TypingState.builder()
+                    .conversationId(conversationId)
+                    .typingUserIds(typingUserIds)
+                    .timestamp(now)
+                    .build();
+            sentFrames.add(chatDeliveryService.deliverToConversation(conversationId, TYPING_DESTINATION, state));
+        }
+    }
+
+    private double savedFrames() {
+        return Math.max(0, naiveFrames.sum() - sentFrames.sum());
+    }
+}
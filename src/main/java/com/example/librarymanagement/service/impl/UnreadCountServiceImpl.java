@@ -0,0 +1,137 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.repository.ConversationMemberRepository;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UnreadCountService;
+import com.example.librarymanagement.util.Helpers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Bộ đếm tin chưa đọc lưu ở cột conversation_members.unread_count thay vì COUNT(*) trên messages mỗi lần tải sidebar.
+ * Mọi thay đổi là tương đối và đi kèm đúng dòng bị khoá, nên nhiều node cùng ghi vẫn cộng dồn đúng:
+ * - Tin nhắn mới: +1 cho các thành viên khác người gửi có read pointer cũ hơn tin nhắn, chạy trong chính transaction
+ *   INSERT batch tin nhắn (MessageIngestServiceImpl) → tin nhắn đã commit thì đã được cộng.
+ * - Read pointer tăng: ReadReceiptServiceImpl trừ số tin (của người khác) nằm giữa pointer cũ trong DB và pointer
+ *   mới, trong cùng câu UPDATE ghi pointer (xem UPDATE_SQL ở đó); đọc tới tin mới nhất thì đặt về 0.
+ * - Các câu UPDATE đều đi theo thứ tự (conversation_id, user_id) để hai loại batch không deadlock với nhau.
+ *
+ * Bộ nhớ chỉ giữ read pointer đã tăng nhưng chưa được ghi (flush của read receipt chạy định kỳ), để user vừa đọc
+ * thấy ngay số chưa đọc mới: các conversation đó được đếm lại sau pointer (ring buffer trước, range scan sau).
+ * */
+@Service
+public class UnreadCountServiceImpl implements UnreadCountService {
+    private static final String INCREMENT_SQL = "UPDATE conversation_members SET unread_count = unread_count + 1 " +
+            "WHERE conversation_id = ? AND user_id <> ? " +
+            "AND (last_read_message_id IS NULL OR last_read_message_id < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConversationMemberRepository conversationMemberRepository;
+    private final MessageRepository messageRepository;
+    private final MembershipIndexService membershipIndexService;
+    private final RecentMessageCacheService recentMessageCacheService;
+
+    // Read pointer chưa ghi DB theo (user, conversation), xoá khi ReadReceiptService ghi xong
+    private final ConcurrentHashMap<PendingKey, Long> pendingReads = new ConcurrentHashMap<>();
+
+    private final Counter recountCacheCounter;
+    private final Counter recountDbCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    public UnreadCountServiceImpl(JdbcTemplate jdbcTemplate,
+                                  ConversationMemberRepository conversationMemberRepository,
+                                  MessageRepository messageRepository,
+                                  MembershipIndexService membershipIndexService,
+                                  RecentMessageCacheService recentMessageCacheService,
+                                  MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.conversationMemberRepository = conversationMemberRepository;
+        this.messageRepository = messageRepository;
+        this.membershipIndexService = membershipIndexService;
+        this.recentMessageCacheService = recentMessageCacheService;
+
+        recountCacheCounter = Counter.builder("chat.unread.recounts").tag("source", "cache").register(meterRegistry);
+        recountDbCounter = Counter.builder("chat.unread.recounts").tag("source", "db").register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("chat.unread.batch.size")
+                .description("Messages counted per ingest batch")
+                .register(meterRegistry);
+        Gauge.builder("chat.unread.pending.reads", pendingReads, Map::size)
+                .description("Advanced read pointers not yet written by the read-receipt flush")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void applyNewMessages(List<ChatMessage> messages) {
+        List<ChatMessage> sorted = new ArrayList<>(messages);
+        sorted.sort(Comparator.comparing(ChatMessage::getConversationId).thenComparing(ChatMessage::getId));
+        jdbcTemplate.batchUpdate(INCREMENT_SQL, sorted, sorted.size(), (ps, message) -> {
+            ps.setLong(1, message.getConversationId());
+            ps.setInt(2, message.getSender());
+            ps.setLong(3, message.getId());
+        });
+        batchSizeSummary.record(sorted.size());
+    }
+
+    @Override
+    public void onReadPointerAdvanced(Integer userId, Long conversationId, Long lastReadMessageId) {
+        pendingReads.merge(new PendingKey(userId, conversationId), lastReadMessageId, Math::max);
+    }
+
+    @Override
+    public void onReadPointerFlushed(Integer userId, Long conversationId, Long lastReadMessageId) {
+        pendingReads.remove(new PendingKey(userId, conversationId), lastReadMessageId);
+    }
+
+    @Override
+    public Map<Long, Integer> getUnreadCounts(Authentication authentication) {
+        Integer userId = Helpers.getCurrentUserId(authentication);
+        long[] conversationIds = membershipIndexService.getConversationIds(userId);
+
+        Map<Long, Integer> stored = new HashMap<>();
+        for (ConversationMemberRepository.UnreadCountView row : conversationMemberRepository.findUnreadCountsByUserId(userId)) {
+            stored.put(row.getConversationId(), row.getUnreadCount() != null ? row.getUnreadCount() : 0);
+        }
+
+        Map<Long, Integer> result = new LinkedHashMap<>(conversationIds.length * 2);
+        for (long conversationId : conversationIds) {
+            Long pointer = pendingReads.get(new PendingKey(userId, conversationId));
+            int unread = pointer != null
+                    ? count(conversationId, pointer, userId)
+                    : stored.getOrDefault(conversationId, 0);
+            result.put(conversationId, unread);
+        }
+        return result;
+    }
+
+    // Số tin của người khác sau afterId
+    private int count(Long conversationId, long afterId, Integer userId) {
+        OptionalInt cached = recentMessageCacheService.countBetween(conversationId, afterId, Long.MAX_VALUE, userId);
+        if (cached.isPresent()) {
+            recountCacheCounter.increment();
+            return cached.getAsInt();
+        }
+        recountDbCounter.increment();
+        return (int) messageRepository.countByConversationIdAndIdGreaterThanAndIdLessThanEqualAndUserIdNot(
+                conversationId, afterId, Long.MAX_VALUE, userId);
+    }
+
+    private record PendingKey(int userId, long conversationId) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.user.response.UserCard;
+import com.example.librarymanagement.enumeration.SocialProvider;
+import com.example.librarymanagement.repository.UserRepository;
+import com.example.librarymanagement.service.inter.S3Service;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.util.Helpers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Cache "user card" (tên hiển thị, avatar, role) để gắn người gửi cho tin nhắn mà không query mỗi trang / mỗi frame:
+ * - Card trúng cache không phát sinh query; các id còn thiếu được nạp bằng một query IN duy nhất
+ *   (chỉ các cột cần hiển thị) và presign avatar một lần cho mỗi lần nạp.
+ * - Giới hạn max-entries, vượt ngưỡng loại theo LRU; card hết hạn sau ttl-ms. ttl-ms phải nhỏ hơn hẳn
+ *   thời hạn presigned URL (24h) để URL trong card luôn còn hiệu lực khi tới client.
+ * - UserServiceImpl / FileServiceImpl gọi onUserChanged khi tên, role hoặc avatar đổi.
+ *   Lần nạp đang chạy song song với một lần invalidate không được ghi vào cache (có thể đã đọc dữ liệu cũ).
+ * */
+@Service
+public class UserCardServiceImpl implements UserCardService {
+    private static final Duration AVATAR_URL_TTL = Duration.ofHours(24);
+
+    private final UserRepository userRepository;
+    private final S3Service s3Service;
+    private final int maxEntries;
+    private final long ttlMs;
+
+    private final LinkedHashMap<Integer, CachedCard> cards = new LinkedHashMap<>(1024, 0.75f, true);
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter invalidationCounter;
+
+    public UserCardServiceImpl(UserRepository userRepository,
+                               S3Service s3Service,
+                               MeterRegistry meterRegistry,
+                               @Value("${chat.user-card.max-entries}") int maxEntries,
+                               @Value("${chat.user-card.ttl-ms}") long ttlMs) {
+        this.userRepository = userRepository;
+        this.s3Service = s3Service;
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+
+        Gauge.builder("chat.user-card.entries", this, UserCardServiceImpl::size).register(meterRegistry);
+        hitCounter = Counter.builder("chat.user-card.lookups").tag("result", "hit").register(meterRegistry);
+        missCounter = Counter.builder("chat.user-card.lookups").tag("result", "miss").register(meterRegistry);
+        invalidationCounter = Counter.builder("chat.user-card.invalidations").register(meterRegistry);
+    }
+
+    @Override
+    public Map<Integer, UserCard> getCards(Collection<Integer> userIds) {
+        Map<Integer, UserCard> result = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return result;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Integer> missing = new ArrayList<>();
+        synchronized (cards) {
+            for (Integer userId : userIds) {
+                CachedCard cached = cards.get(userId);
+                if (cached != null && cached.expiresAt() > now) {
+                    result.put(userId, cached.card());
+                } else {
+                    missing.add(userId);
+                }
+            }
+        }
+        hitCounter.increment(result.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        missCounter.increment(missing.size());
+
+        long generation = invalidations.get();
+        Map<Integer, UserCard> loaded = new HashMap<>();
+        for (UserRepository.SenderView view : userRepository.findSenderViews(missing)) {
+            loaded.put(view.getId(), toCard(view));
+        }
+        // User không tồn tại vẫn được cache (card chỉ có id) để không query lại mỗi lần
+        for (Integer userId : missing) {
+            loaded.putIfAbsent(userId, UserCard.builder().id(userId).build());
+        }
+        result.putAll(loaded);
+
+        synchronized (cards) {
+            if (invalidations.get() == generation) {
+                long expiresAt = now + ttlMs;
+                for (UserCard card : loaded.values()) {
+                    cards.put(card.getId(), new CachedCard(card, expiresAt));
+                }
+                trim();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public UserCard getCard(Integer userId) {
+        return getCards(List.of(userId)).get(userId);
+    }
+
+    @Override
+    public void onUserChanged(Integer userId) {
+        // Loại cả trước và sau commit: lần nạp đọc dữ liệu cũ trước commit sẽ thấy invalidations đã tăng
+        invalidationCounter.increment();
+        evict(userId);
+        Helpers.runAfterCommit(() -> evict(userId));
+    }
+
+    // ------------------------- helper -------------------------
+    private void evict(Integer userId) {
+        synchronized (cards) {
+            invalidations.incrementAndGet();
+            cards.remove(userId);
+        }
+    }
+
+    private UserCard toCard(UserRepository.SenderView view) {
+        String avatarUrl;
+        if (view.getProvider() == SocialProvider.LOCAL) {
+            avatarUrl = view.getAvatarS3Key() != null
+                    ? s3Service.generatePresignedUrl(view.getAvatarS3Key(), AVATAR_URL_TTL)
+                    : null;
+        } else {
+            avatarUrl = view.getAvatarUrl();
+        }
+        return UserCard.builder()
+                .id(view.getId())
+                .displayName(view.getFullName())
+                .avatarUrl(avatarUrl)
+                .roleName(view.getRoleName())
+                .build();
+    }
+
+    private void trim() {
+        var it = cards.entrySet().iterator();
+        while (cards.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private int size() {
+        synchronized (cards) {
+            return cards.size();
+        }
+    }
+
+    private record CachedCard(UserCard card, long expiresAt) {
+    }
+}
@@ -1,43 +1,227 @@
 package com.example.librarymanagement.service.impl;
 
+import com.example.librarymanagement.dto.chat.UserPresence;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.LastSeenService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
 import com.example.librarymanagement.service.inter.UserPresenceService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/*
+ * Registry presence: userId → các sessionId đang mở (nhiều tab / thiết bị).
+ * - Không có lock toàn cục: mỗi thay đổi là một compute() trên ConcurrentHashMap,
+ *   chỉ khoá bucket của user đó. Mảng sessionId là bất biến và được thay thế khi thay đổi.
+ * - User online ⇔ có entry trong map, nên isUserOnline là containsKey (O(1))
+ *   và getOnlineUsers trả về keySet() (view trực tiếp, không copy).
+ * - Chỉ ghi nhận thay đổi presence khi user chuyển offline → online (session đầu tiên)
+ *   hoặc online → offline (session cuối cùng).
+ *
+ * Phát presence theo tick thay vì ngay lập tức:
+ * - Thay đổi được gom theo user, chỉ giữ trạng thái mới nhất.
+ * - offline phải giữ nguyên qua grace-ms mới được phát, nên online → offline → online trong cửa sổ grace
+ *   (mạng di động chập chờn) không phát gì cả.
+ * - Mỗi tick, mỗi người nhận chỉ nhận đúng một frame UserPresence[] chứa mọi thay đổi liên quan.
+ * */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class UserPresenceServiceImpl implements UserPresenceService {
+    public static final String PRESENCE_DESTINATION = "/queue/presence";
+
+    private final ChatDeliveryService chatDeliveryService;
+    private final MembershipIndexService membershipIndexService;
+    private final LastSeenService lastSeenService;
+    private final long graceMs;
+
+    private final ConcurrentHashMap<Integer, String[]> sessionsByUser = new ConcurrentHashMap<>();
+    private final Set<Integer> onlineUsers = Collections.unmodifiableSet(sessionsByUser.keySet());
+
+    // Thay đổi chưa phát, mới nhất theo user
+    private final ConcurrentHashMap<Integer, PendingPresence> pendingChanges = new ConcurrentHashMap<>();
+    // Các user mà contact đang được thông báo là online
+    private final Set<Integer> announcedOnline = ConcurrentHashMap.newKeySet();
+
+    private final Counter changeCounter;
+    private final Counter suppressedCounter;
+    private final Counter frameCounter;
+
+    public UserPresenceServiceImpl(ChatDeliveryService chatDeliveryService,
+                                   MembershipIndexService membershipIndexService,
+                                   LastSeenService lastSeenService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${chat.presence.grace-ms}") long graceMs) {
+        this.chatDeliveryService = chatDeliveryService;
+        this.membershipIndexService = membershipIndexService;
+        this.lastSeenService = lastSeenService;
+        this.graceMs = graceMs;
+
+        Gauge.builder("chat.presence.online.users", sessionsByUser, ConcurrentHashMap::size)
+                .register(meterRegistry);
+        changeCounter = Counter.builder("chat.presence.changes")
+                .description("Raw online/offline transitions")
+                .register(meterRegistry);
+        suppressedCounter = Counter.builder("chat.presence.suppressed")
+                .description("Transitions not broadcast because the user flapped back within the grace window")
+                .register(meterRegistry);
+        frameCounter = Counter.builder("chat.presence.frames")
+                .description("Batched presence diff frames sent to subscribers")
+                .register(meterRegistry);
+    }
+
     @Override
     public void userConnected(Integer userId, String sessionId) {
-        
+        AtomicBoolean cameOnline = new AtomicBoolean();
+        sessionsByUser.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                cameOnline.set(true);
+                return new String[]{sessionId};
+            }
+            if (Arrays.asList(sessions).contains(sessionId)) {
+                return sessions;
+            }
+            String[] updated = Arrays.copyOf(sessions, sessions.length + 1);
+            updated[sessions.length] = sessionId;
+            return updated;
+        });
+
+        if (cameOnline.get()) {
+            broadcastPresence(userId, true);
+        }
     }
 
     @Override
     public void userDisconnected(Integer userId, String sessionId) {
+        AtomicBoolean wentOffline = new AtomicBoolean();
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            int index = Arrays.asList(sessions).indexOf(sessionId);
+            if (index < 0) {
+                return sessions;
+            }
+            if (sessions.length == 1) {
+                wentOffline.set(true);
+                return null; // Xoá entry → user offline
+            }
+            String[] updated = new String[sessions.length - 1];
+            System.arraycopy(sessions, 0, updated, 0, index);
+            System.arraycopy(sessions, index + 1, updated, index, sessions.length - index - 1);
+            return updated;
+        });
 
+        if (wentOffline.get()) {
+            updateLastSeen(userId);
+            broadcastPresence(userId, false);
+        }
     }
 
     @Override
     public boolean isUserOnline(Integer userId) {
-        return false;
+        return sessionsByUser.containsKey(userId);
+    }
+
+    @Override
+    public Set<Integer> getOnlineUsers() {
+        return onlineUsers;
     }
 
     @Override
-    public Set<String> getOnlineUsers() {
-        return Set.of();
+    public int getSessionCount(Integer userId) {
+        String[] sessions = sessionsByUser.get(userId);
+        return sessions != null ? sessions.length : 0;
     }
 
     @Override
     public void updateLastSeen(Integer userId) {
+        lastSeenService.touch(userId, System.currentTimeMillis());
+    }
 
+    @Override
+    public Long getLastSeen(Integer userId) {
+        return lastSeenService.getLastSeen(userId);
     }
 
+    // Chỉ ghi nhận thay đổi, việc phát được gom lại trong flushPresenceDiffs()
     @Override
     public void broadcastPresence(Integer userId, boolean online) {
+        changeCounter.increment();
+        pendingChanges.put(userId, new PendingPresence(online, System.currentTimeMillis()));
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.tick-ms}")
+    public void flushPresenceDiffs() {
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<Integer, List<UserPresence>> diffsByRecipient = new HashMap<>();
+
+        for (Map.Entry<Integer, PendingPresence> entry : pendingChanges.entrySet()) {
+            Integer userId = entry.getKey();
+            PendingPresence change = entry.getValue();
+
+            // offline chưa hết grace → chờ tick sau; nếu online lại trong lúc chờ thì entry bị ghi đè
+            if (!change.online() && now - change.changedAt() < graceMs) {
+                continue;
+            }
+            // Có thay đổi mới hơn ghi đè trong lúc đang xử lý → để tick sau xử lý
+            if (!pendingChanges.remove(userId, change)) {
+                continue;
+            }
+
+            boolean changed = change.online()
+                    ? announcedOnline.add(userId)
+                    : announcedOnline.remove(userId);
+            if (!changed) {
+                suppressedCounter.increment();
+                continue;
+            }
+
+            UserPresence presence = UserPresence.builder()
+                    .userId(userId)
+                    .online(change.online())
+                    .timestamp(change.changedAt())
+                    .lastSeenAt(change.online() ? null : getLastSeen(userId))
+                    .build();
+            for (Integer recipient : getOnlineContacts(userId)) {
+                diffsByRecipient.computeIfAbsent(recipient, id -> new ArrayList<>()).add(presence);
+            }
+        }
+
+        diffsByRecipient.forEach((recipient, diffs) -> {
+            chatDeliveryService.deliverToUser(recipient, PRESENCE_DESTINATION, diffs.toArray(new UserPresence[0]));
+            frameCounter.increment();
+        });
+    }
+
+    // Các user online cùng ít nhất một conversation với userId (mỗi người một lần)
+    private Set<Integer> getOnlineContacts(Integer userId) {
+        Set<Integer> contacts = new HashSet<>();
+        for (long conversationId : membershipIndexService.getConversationIds(userId)) {
+            membershipIndexService.forEachMember(conversationId, memberId -> {
+                if (memberId != userId && isUserOnline(memberId)) {
+                    contacts.add(memberId);
+                }
+            });
+        }
+        return contacts;
+    }
 
+    private record PendingPresence(boolean online, long changedAt) {
     }
 }
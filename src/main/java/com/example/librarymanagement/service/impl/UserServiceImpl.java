@@ -20,6 +20,7 @@ import com.example.librarymanagement.repository.VerificationTokenRepository;
 import com.example.librarymanagement.service.inter.EmailService;
 import com.example.librarymanagement.service.inter.EmailTokenService;
 import com.example.librarymanagement.service.inter.S3Service;
+import com.example.librarymanagement.service.inter.UserCardService;
 import com.example.librarymanagement.service.inter.UserService;
 import jakarta.mail.SendFailedException;
 import lombok.RequiredArgsConstructor;
@@ -44,6 +45,7 @@ public class UserServiceImpl implements UserService {
     private final S3Service s3Service;
     private final EmailService emailService;
     private final EmailTokenService emailTokenService;
+    private final UserCardService userCardService;
 
     private final PasswordEncoder passwordEncoder;
 
@@ -144,6 +146,8 @@ public class UserServiceImpl implements UserService {
         userProfileRepository.save(profile);
         user.setUserProfile(profile);
         user = userRepository.save(user);
+        // Tên / role hiển thị cạnh tin nhắn lấy từ cache
+        userCardService.onUserChanged(userId);
 
         return mapToUserResponse(user);
     }
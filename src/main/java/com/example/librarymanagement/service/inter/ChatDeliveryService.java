@@ -0,0 +1,20 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ResumeState;
+
+public interface ChatDeliveryService {
+    // Gửi tới /user/queue/messages của mọi thành viên trong conversation
+    void deliverToConversation(Long conversationId, Object payload);
+
+    // Trả về số thành viên đã được gửi
+    int deliverToConversation(Long conversationId, String destination, Object payload);
+
+    // Frame mang header seq theo user và được giữ trong replay buffer (trừ destination unsequenced: typing, presence, read)
+    void deliverToUser(Integer userId, String destination, Object payload);
+
+    // Gửi tới đúng một session (ack / lỗi cho client vừa gửi frame), không có seq
+    void sendToSession(String sessionId, String destination, Object payload);
+
+    // Gửi lại cho session các frame user đã bỏ lỡ sau lastSeq, rồi gửi ResumeState tới /user/queue/resume
+    ResumeState resume(Integer userId, String sessionId, long lastSeq);
+}
@@ -0,0 +1,26 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.AddMemberRequest;
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.UpdateMemberRoleRequest;
+import com.example.librarymanagement.dto.util.CursorPage;
+import org.springframework.security.core.Authentication;
+
+public interface ConversationService {
+    CursorPage<ChatMessage> getMessages(Long conversationId,
+                                        Long before,
+                                        Long after,
+                                        int limit,
+                                        Authentication authentication);
+
+    ChatMessage editMessage(Long conversationId, Long messageId, String content, Authentication authentication);
+
+    void deleteMessage(Long conversationId, Long messageId, Authentication authentication);
+
+    void addMember(Long conversationId, AddMemberRequest req, Authentication authentication);
+
+    void removeMember(Long conversationId, Integer userId, Authentication authentication);
+
+    void updateMemberRole(Long conversationId, Integer userId, UpdateMemberRoleRequest req,
+                          Authentication authentication);
+}
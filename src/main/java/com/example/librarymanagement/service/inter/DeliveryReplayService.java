@@ -0,0 +1,20 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ResumeState;
+
+import java.util.function.LongConsumer;
+
+public interface DeliveryReplayService {
+    // Cấp seq kế tiếp cho user, lưu frame vào replay buffer rồi gọi sender với seq đó.
+    // sender chạy trong lock của user, nên frame rời server đúng thứ tự seq.
+    // live = user còn session trên node này; không còn session quá lâu thì frame không được giữ, trả về -1
+    long append(Integer userId, String destination, Object payload, boolean live, LongConsumer sender);
+
+    // Gọi lại replayer cho các frame có seq > lastSeq (cũng trong lock của user)
+    ResumeState replay(Integer userId, long lastSeq, FrameReplayer replayer);
+
+    @FunctionalInterface
+    interface FrameReplayer {
+        void replay(long seq, String destination, Object payload);
+    }
+}
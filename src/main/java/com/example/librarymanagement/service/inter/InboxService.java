@@ -0,0 +1,21 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.InboxItem;
+import com.example.librarymanagement.dto.util.CursorPage;
+import org.springframework.security.core.Authentication;
+
+public interface InboxService {
+    // Sắp xếp theo hoạt động gần nhất; ?before=<activityId> → trang tiếp theo (cũ hơn)
+    CursorPage<InboxItem> getInbox(Long before, int limit, Authentication authentication);
+
+    void onMessageSaved(ChatMessage message);
+
+    void onMessageEdited(Long conversationId, Long messageId, String content, Long updatedAt);
+
+    void onMessageDeleted(Long conversationId, Long messageId, Long deletedAt);
+
+    void onMemberJoined(Long conversationId, Integer userId);
+
+    void onMemberLeft(Long conversationId, Integer userId);
+}
@@ -0,0 +1,12 @@
+package com.example.librarymanagement.service.inter;
+
+public interface LastSeenService {
+    // Chỉ ghi vào bộ nhớ, được flush xuống DB theo batch
+    void touch(Integer userId, long seenAt);
+
+    // Đọc từ bộ nhớ trước, chỉ truy vấn DB khi user chưa được ghi nhận từ lúc khởi động
+    Long getLastSeen(Integer userId);
+
+    // Số bản ghi đã ghi xuống DB
+    int flush();
+}
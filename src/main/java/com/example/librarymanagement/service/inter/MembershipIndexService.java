@@ -0,0 +1,26 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.entity.ConversationMember;
+
+import java.util.function.IntConsumer;
+
+public interface MembershipIndexService {
+    boolean isMember(Long conversationId, Integer userId);
+
+    ConversationMember.ConversationMemberRole getRole(Long conversationId, Integer userId);
+
+    // Mảng userId đã sắp xếp, là snapshot dùng chung → không được sửa
+    int[] getMemberIds(Long conversationId);
+
+    // Duyệt thành viên không cấp phát (không boxing, không iterator) cho fan-out
+    void forEachMember(Long conversationId, IntConsumer action);
+
+    // Mảng conversationId đã sắp xếp, là snapshot dùng chung → không được sửa
+    long[] getConversationIds(Integer userId);
+
+    void onMemberJoined(Long conversationId, Integer userId, ConversationMember.ConversationMemberRole role);
+
+    void onMemberLeft(Long conversationId, Integer userId);
+
+    void onMemberRoleChanged(Long conversationId, Integer userId, ConversationMember.ConversationMemberRole role);
+}
@@ -0,0 +1,24 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface MessageArchiveService {
+    // Tin nhắn đã lưu trữ có id < before, sắp mới → cũ, tối đa limit
+    List<ChatMessage> findBefore(Long conversationId, long before, int limit);
+
+    // Tin nhắn đã lưu trữ có id > after, sắp cũ → mới, tối đa limit
+    List<ChatMessage> findAfter(Long conversationId, long after, int limit);
+
+    // Tra từng id trong archive (preview tin nhắn gốc của reply), id không có trong archive bị bỏ qua
+    Map<Long, ChatMessage> findByIds(Long conversationId, Collection<Long> messageIds);
+
+    // Ghi bản sửa / xoá mềm của tin nhắn đã lưu trữ (content, updatedAt, deletedAt), áp lên mọi lượt đọc sau đó
+    void saveOverride(ChatMessage message);
+
+    // Chạy một lượt lưu trữ, trả về số tin nhắn đã chuyển
+    int archiveColdMessages();
+}
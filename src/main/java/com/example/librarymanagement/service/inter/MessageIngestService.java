@@ -0,0 +1,12 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface MessageIngestService {
+    // Future hoàn thành sau khi batch chứa tin nhắn đã commit (id đã được gán)
+    CompletableFuture<ChatMessage> submit(ChatMessage message);
+
+    int getQueueDepth();
+}
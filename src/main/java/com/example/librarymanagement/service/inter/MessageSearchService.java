@@ -0,0 +1,21 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.util.CursorPage;
+import org.springframework.security.core.Authentication;
+
+public interface MessageSearchService {
+    // "cụm từ" trong ngoặc kép → phrase query; ngược lại mọi từ đều phải có, từ cuối khớp theo tiền tố.
+    // Kết quả mới → cũ, ?before=<messageId> → trang tiếp theo
+    CursorPage<ChatMessage> search(Integer workspaceId, String query, Long before, int limit,
+                                   Authentication authentication);
+
+    void onMessageSaved(ChatMessage message);
+
+    void onMessageEdited(ChatMessage message);
+
+    void onMessageDeleted(Long messageId);
+
+    // Chạy nền; false nếu đang có một lần reindex khác
+    boolean startReindex();
+}
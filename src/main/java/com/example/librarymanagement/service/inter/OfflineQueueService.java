@@ -0,0 +1,16 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.OfflineBatch;
+import org.springframework.security.core.Authentication;
+
+public interface OfflineQueueService {
+    // Ghi reference tin nhắn vào queue của các thành viên không có session nào đang mở (gọi sau khi batch commit)
+    void onMessageSaved(ChatMessage message);
+
+    // Đọc tuần tự từ offset from (null → vị trí đã ack)
+    OfflineBatch getPending(Long from, int limit, Authentication authentication);
+
+    // Client đã nhận mọi tin nhắn trước offset, phần này được dọn khỏi queue
+    void acknowledge(long offset, Authentication authentication);
+}
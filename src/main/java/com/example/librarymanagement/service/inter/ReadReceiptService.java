@@ -0,0 +1,15 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.MessageRead;
+import org.springframework.security.core.Authentication;
+
+public interface ReadReceiptService {
+    // Gộp vào read pointer trong bộ nhớ; ghi DB và phát frame được thực hiện theo batch
+    void onRead(MessageRead read);
+
+    // Read pointer đã gộp của user hiện tại, đọc từ bộ nhớ
+    MessageRead getReadPointer(Long conversationId, Authentication authentication);
+
+    // Số bản ghi đã ghi xuống DB
+    int flush();
+}
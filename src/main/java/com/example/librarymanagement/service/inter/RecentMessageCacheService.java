@@ -0,0 +1,33 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+public interface RecentMessageCacheService {
+    int getMessagesPerConversation();
+
+    // Trả về limit tin nhắn mới nhất (cũ → mới) nếu cache trả lời được, ngược lại Optional.empty()
+    Optional<List<ChatMessage>> getRecent(Long conversationId, int limit);
+
+    Optional<ChatMessage> getMessage(Long conversationId, Long messageId);
+
+    // Số tin nhắn có afterId < id <= upToId không do excludeSenderId gửi,
+    // chỉ trả lời khi buffer chứa trọn khoảng đó
+    OptionalInt countBetween(Long conversationId, long afterId, long upToId, Integer excludeSenderId);
+
+    // Lấy trước khi query DB để nạp cache, truyền lại cho populate
+    long getGeneration(Long conversationId);
+
+    // newestMessages: các tin nhắn mới nhất đọc từ DB (cũ → mới); complete = DB không còn tin nào cũ hơn.
+    // Bị bỏ qua nếu có tin nhắn bị sửa / xoá sau khi lấy generation
+    void populate(Long conversationId, long generation, List<ChatMessage> newestMessages, boolean complete);
+
+    void onMessageSaved(ChatMessage message);
+
+    void onMessageEdited(Long conversationId, Long messageId, String content, Long updatedAt);
+
+    void onMessageDeleted(Long conversationId, Long messageId, Long deletedAt);
+}
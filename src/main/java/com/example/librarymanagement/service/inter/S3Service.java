@@ -9,5 +9,10 @@ public interface S3Service {
 
     byte[] downloadFile(String key);
 
+    void uploadBytes(String key, byte[] bytes, String contentType);
+
+    // Đọc length byte bắt đầu từ offset (HTTP Range), không tải cả object
+    byte[] downloadRange(String key, long offset, int length);
+
     String generatePresignedUrl(String key, Duration duration);
 }
@@ -0,0 +1,8 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.TypingIndicator;
+
+public interface TypingRelayService {
+    // Chỉ ghi nhận trạng thái, frame được phát theo tick
+    void onTyping(TypingIndicator indicator);
+}
@@ -0,0 +1,21 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import org.springframework.security.core.Authentication;
+
+import java.util.List;
+import java.util.Map;
+
+public interface UnreadCountService {
+    // +1 cho mọi thành viên trừ người gửi, chạy trong transaction INSERT batch tin nhắn
+    void applyNewMessages(List<ChatMessage> messages);
+
+    // Read pointer đã tăng trong bộ nhớ, chưa ghi DB
+    void onReadPointerAdvanced(Integer userId, Long conversationId, Long lastReadMessageId);
+
+    // Read pointer đã được ghi DB (kèm phần trừ unread_count)
+    void onReadPointerFlushed(Integer userId, Long conversationId, Long lastReadMessageId);
+
+    // conversationId → số tin chưa đọc của user hiện tại, cho mọi conversation user tham gia
+    Map<Long, Integer> getUnreadCounts(Authentication authentication);
+}
@@ -0,0 +1,16 @@
+package com.example.librarymanagement.service.inter;
+
+import com.example.librarymanagement.dto.user.response.UserCard;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface UserCardService {
+    // User không tồn tại cũng có card (chỉ có id), nên map luôn chứa đủ các id được hỏi
+    Map<Integer, UserCard> getCards(Collection<Integer> userIds);
+
+    UserCard getCard(Integer userId);
+
+    // Gọi khi tên / avatar / role của user thay đổi; card bị loại sau khi transaction hiện tại commit
+    void onUserChanged(Integer userId);
+}
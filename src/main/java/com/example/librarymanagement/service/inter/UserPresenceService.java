@@ -9,9 +9,15 @@ public interface UserPresenceService {
 
     boolean isUserOnline(Integer userId);
 
-    Set<String> getOnlineUsers();
+    // View chỉ đọc, cập nhật trực tiếp theo registry (không copy)
+    Set<Integer> getOnlineUsers();
 
+    int getSessionCount(Integer userId);
+
+    // Gọi ở mọi frame STOMP inbound, chỉ ghi vào bộ nhớ (xem LastSeenService)
     void updateLastSeen(Integer userId);
 
+    Long getLastSeen(Integer userId);
+
     void broadcastPresence(Integer userId, boolean online);
 }
@@ -0,0 +1,47 @@
+package com.example.librarymanagement.util;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.user.response.UserCard;
+import com.example.librarymanagement.entity.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ChatMessageMapper {
+
+    // Tin nhắn đã xoá mềm không trả về nội dung
+    public static ChatMessage toChatMessage(Message message) {
+        boolean deleted = message.getDeletedAt() != null;
+        // getId() trên proxy LAZY không phát sinh query
+        return ChatMessage.builder()
+                .id(message.getId())
+                .conversationId(message.getConversation().getId())
+                .sender(message.getUser().getId())
+                .parentId(message.getParent() != null ? message.getParent().getId() : null)
+                .content(deleted ? null : message.getContent())
+                .createdAt(message.getCreatedAt())
+                .updatedAt(message.getUpdatedAt())
+                .deletedAt(message.getDeletedAt())
+                .build();
+    }
+
+    // Trả về bản sao có tên / avatar người gửi, không sửa object gốc vì có thể là object dùng chung của cache
+    public static ChatMessage withSender(ChatMessage message, UserCard card) {
+        if (message == null || card == null) {
+            return message;
+        }
+        return message.toBuilder()
+                .senderName(card.getDisplayName())
+                .senderAvatar(card.getAvatarUrl())
+                .build();
+    }
+
+    public static List<ChatMessage> withSenders(List<ChatMessage> messages, Map<Integer, UserCard> cards) {
+        List<ChatMessage> result = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            result.add(withSender(message, cards.get(message.getSender())));
+        }
+        return result;
+    }
+}
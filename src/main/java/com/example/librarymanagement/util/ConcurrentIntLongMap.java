@@ -0,0 +1,254 @@
+package com.example.librarymanagement.util;
+
+import java.util.Arrays;
+import java.util.function.LongBinaryOperator;
+
+/*
+ * Map int → long an toàn đa luồng, lưu trực tiếp trong mảng primitive (không boxing Integer / Long).
+ * - Chia thành nhiều segment, mỗi segment là một bảng băm open addressing (linear probing) có lock riêng,
+ *   nên các thread ghi vào user khác nhau hầu như không tranh chấp.
+ * - drain() lấy ra và xoá toàn bộ entry, dùng cho các bộ đệm write-behind (flush định kỳ xuống DB).
+ * Key Integer.MIN_VALUE được dùng làm ô trống nên không được phép sử dụng.
+ * */
+public class ConcurrentIntLongMap {
+    private static final int FREE = Integer.MIN_VALUE;
+    private static final int DEFAULT_SEGMENT_COUNT = 32;
+    private static final int DEFAULT_SEGMENT_CAPACITY = 64;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int initialSegmentCapacity;
+
+    @FunctionalInterface
+    public interface IntLongConsumer {
+        void accept(int key, long value);
+    }
+
+    public ConcurrentIntLongMap() {
+        this(DEFAULT_SEGMENT_COUNT, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    // Map nhỏ (ví dụ một map cho mỗi conversation) nên dùng ít segment và capacity nhỏ để tiết kiệm heap
+    public ConcurrentIntLongMap(int segmentCount, int initialSegmentCapacity) {
+        if (Integer.bitCount(segmentCount) != 1 || segmentCount > 32 || Integer.bitCount(initialSegmentCapacity) != 1) {
+            throw new IllegalArgumentException("Segment count (<= 32) and capacity must be powers of two");
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        this.initialSegmentCapacity = initialSegmentCapacity;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(initialSegmentCapacity);
+        }
+    }
+
+    public long get(int key, long defaultValue) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int slot = segment.find(key, hash);
+            return slot >= 0 ? segment.values[slot] : defaultValue;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.find(key, hash) >= 0;
+        }
+    }
+
+    public void put(int key, long value) {
+        merge(key, value, (oldValue, newValue) -> newValue);
+    }
+
+    // Ghi value nếu chưa có key, ngược lại ghi function(giá trị cũ, value). Trả về giá trị mới.
+    public long merge(int key, long value, LongBinaryOperator function) {
+        checkKey(key);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int slot = segment.find(key, hash);
+            if (slot >= 0) {
+                long merged = function.applyAsLong(segment.values[slot], value);
+                segment.values[slot] = merged;
+                return merged;
+            }
+            segment.insert(key, hash, value);
+            return value;
+        }
+    }
+
+    public long addTo(int key, long delta) {
+        return merge(key, delta, Long::sum);
+    }
+
+    public boolean remove(int key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int slot = segment.find(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            segment.delete(slot);
+            return true;
+        }
+    }
+
+    // Chỉ xoá khi giá trị chưa bị đổi kể từ lúc đọc (giống ConcurrentHashMap.remove(key, value))
+    public boolean remove(int key, long expectedValue) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int slot = segment.find(key, hash);
+            if (slot < 0 || segment.values[slot] != expectedValue) {
+                return false;
+            }
+            segment.delete(slot);
+            return true;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void forEach(IntLongConsumer consumer) {
+        for (Segment segment : segments) {
+            int[] keys;
+            long[] values;
+            synchronized (segment) {
+                keys = segment.keys.clone();
+                values = segment.values.clone();
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != FREE) {
+                    consumer.accept(keys[i], values[i]);
+                }
+            }
+        }
+    }
+
+    // Lấy ra và xoá mọi entry; mỗi segment chỉ bị khoá trong lúc tráo mảng
+    public void drain(IntLongConsumer consumer) {
+        for (Segment segment : segments) {
+            int[] keys;
+            long[] values;
+            synchronized (segment) {
+                if (segment.size == 0) {
+                    continue;
+                }
+                keys = segment.keys;
+                values = segment.values;
+                segment.reset(initialSegmentCapacity);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != FREE) {
+                    consumer.accept(keys[i], values[i]);
+                }
+            }
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 27) & segmentMask];
+    }
+
+    // package-private để test dựng được chuỗi probe quấn vòng cuối bảng
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void checkKey(int key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key " + FREE + " is reserved");
+        }
+    }
+
+    private static final class Segment {
+        private int[] keys;
+        private long[] values;
+        private int size;
+
+        Segment(int capacity) {
+            reset(capacity);
+        }
+
+        void reset(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, FREE);
+            values = new long[capacity];
+            size = 0;
+        }
+
+        int find(int key, int hash) {
+            int mask = keys.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                if (keys[i] == FREE) {
+                    return -1;
+                }
+            }
+        }
+
+        void insert(int key, int hash, long value) {
+            // Giữ load factor <= 0.5 để chuỗi probe ngắn
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != FREE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        // Xoá kiểu backward shift: dồn các phần tử phía sau về để không cần tombstone
+        void delete(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+                int home = hash(keys[i]) & mask;
+                boolean canMove = hole <= i
+                        ? (home <= hole || home > i)
+                        : (home <= hole && home > i);
+                if (canMove) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = FREE;
+            values[hole] = 0;
+            size--;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            reset(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    insert(oldKeys[i], hash(oldKeys[i]), oldValues[i]);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.example.librarymanagement.util;
 
+import com.example.librarymanagement.security.service.UserDetailsImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
@@ -11,4 +16,23 @@ public class Helpers {
                 .atZone(ZoneId.systemDefault())
                 .toLocalDateTime();
     }
+
+    // Principal của request REST được JwtAuthenticationFilter gắn là UserDetailsImpl
+    public static Integer getCurrentUserId(Authentication authentication) {
+        return ((UserDetailsImpl) authentication.getPrincipal()).getId();
+    }
+
+    // Chạy action sau khi transaction hiện tại commit thành công (chạy ngay nếu không có transaction)
+    public static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
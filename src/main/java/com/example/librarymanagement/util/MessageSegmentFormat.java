@@ -0,0 +1,162 @@
+package com.example.librarymanagement.util;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/*
+ * Định dạng file segment lưu trữ tin nhắn (bất biến, ghi một lần):
+ *
+ *  | block 0 | block 1 | ... | index: BlockEntry × n | int n | int VERSION | int MAGIC |
+ *
+ * - Mỗi block là tối đa blockMessages tin nhắn liên tiếp theo id, nén deflate độc lập,
+ *   nên đọc một trang lịch sử chỉ cần tải và giải nén một hai block (range read trên S3).
+ * - Index là sparse index cấp 2: id / createdAt đầu và cuối, vị trí và độ dài của từng block.
+ * - Tin nhắn đã xoá mềm không giữ nội dung.
+ * */
+public final class MessageSegmentFormat {
+    public static final String CONTENT_TYPE = "application/x-chat-segment";
+
+    private static final int MAGIC = 0x4D534731; // "MSG1"
+    private static final int VERSION = 1;
+    private static final int ENTRY_BYTES = 8 * 4 + 4 * 2;
+    private static final int TRAILER_BYTES = 4 * 3;
+
+    private MessageSegmentFormat() {
+    }
+
+    public record BlockEntry(long firstId, long lastId, long firstCreatedAt, long offset, int length, int count) {
+    }
+
+    public record Encoded(byte[] bytes, long indexOffset) {
+    }
+
+    // messages phải cùng conversation và sắp theo id tăng dần
+    public static Encoded encode(List<ChatMessage> messages, int blockMessages) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<BlockEntry> entries = new ArrayList<>();
+        try {
+            for (int start = 0; start < messages.size(); start += blockMessages) {
+                List<ChatMessage> block = messages.subList(start, Math.min(messages.size(), start + blockMessages));
+                byte[] compressed = compress(block);
+                entries.add(new BlockEntry(block.get(0).getId(), block.get(block.size() - 1).getId(),
+                        block.get(0).getCreatedAt(), out.size(), compressed.length, block.size()));
+                out.write(compressed);
+            }
+
+            long indexOffset = out.size();
+            DataOutputStream index = new DataOutputStream(out);
+            for (BlockEntry entry : entries) {
+                index.writeLong(entry.firstId());
+                index.writeLong(entry.lastId());
+                index.writeLong(entry.firstCreatedAt());
+                index.writeLong(entry.offset());
+                index.writeInt(entry.length());
+                index.writeInt(entry.count());
+            }
+            index.writeInt(entries.size());
+            index.writeInt(VERSION);
+            index.writeInt(MAGIC);
+            index.flush();
+            return new Encoded(out.toByteArray(), indexOffset);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // bytes = phần từ indexOffset tới cuối file
+    public static BlockEntry[] decodeIndex(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int trailer = bytes.length - TRAILER_BYTES;
+        int count = buffer.getInt(trailer);
+        if (buffer.getInt(trailer + 8) != MAGIC || buffer.getInt(trailer + 4) != VERSION
+                || count * ENTRY_BYTES != trailer) {
+            throw new IllegalStateException("Corrupted message segment index");
+        }
+        BlockEntry[] entries = new BlockEntry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new BlockEntry(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    buffer.getInt(), buffer.getInt());
+        }
+        return entries;
+    }
+
+    // Tin nhắn trong block theo id tăng dần
+    public static List<ChatMessage> decodeBlock(byte[] compressed, long conversationId) {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(compressed), inflater))) {
+            int count = in.readInt();
+            List<ChatMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                int sender = in.readInt();
+                long parentId = in.readLong();
+                long createdAt = in.readLong();
+                long updatedAt = in.readLong();
+                long deletedAt = in.readLong();
+                int length = in.readInt();
+                String content = null;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    content = new String(bytes, StandardCharsets.UTF_8);
+                }
+                messages.add(ChatMessage.builder()
+                        .id(id)
+                        .conversationId(conversationId)
+                        .sender(sender)
+                        .parentId(parentId != 0 ? parentId : null)
+                        .content(content)
+                        .createdAt(createdAt)
+                        .updatedAt(updatedAt != 0 ? updatedAt : null)
+                        .deletedAt(deletedAt != 0 ? deletedAt : null)
+                        .build());
+            }
+            return messages;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] compress(List<ChatMessage> block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(block.size());
+            for (ChatMessage message : block) {
+                out.writeLong(message.getId());
+                out.writeInt(message.getSender());
+                out.writeLong(message.getParentId() != null ? message.getParentId() : 0);
+                out.writeLong(message.getCreatedAt());
+                out.writeLong(message.getUpdatedAt() != null ? message.getUpdatedAt() : 0);
+                out.writeLong(message.getDeletedAt() != null ? message.getDeletedAt() : 0);
+                if (message.getDeletedAt() != null || message.getContent() == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(content.length);
+                    out.write(content);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.librarymanagement.util;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * ID 64-bit tăng dần theo thời gian (kiểu Snowflake):
+ *
+ *  | 1 bit (0) | 41 bit: ms kể từ EPOCH | 10 bit: node id | 12 bit: sequence |
+ *
+ * - ID được sinh trước khi INSERT nên Hibernate có thể batch insert và không cần round trip để lấy ID.
+ * - So sánh ID tương đương so sánh thời điểm tạo → dùng trực tiếp làm cursor phân trang.
+ * - Lock-free: trạng thái (timestamp, sequence) được gói trong một AtomicLong và cập nhật bằng CAS.
+ *   Khi hết sequence trong một ms hoặc đồng hồ bị lùi, generator "mượn" ms kế tiếp thay vì chờ,
+ *   nên ID luôn tăng đơn điệu trên cùng một node.
+ * */
+@Component
+public class SnowflakeIdGenerator {
+    // 2024-01-01T00:00:00Z
+    public static final long EPOCH = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+    private static volatile SnowflakeIdGenerator instance;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    // (ms kể từ EPOCH << SEQUENCE_BITS) | sequence của ID được cấp gần nhất
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public SnowflakeIdGenerator(@Value("${chat.id.node-id}") long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    // Cho test điều khiển đồng hồ (hết sequence trong một ms, đồng hồ bị lùi)
+    SnowflakeIdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void register() {
+        instance = this;
+    }
+
+    // Dùng cho SnowflakeIdentifierGenerator vì Hibernate tự khởi tạo generator, không qua Spring
+    public static SnowflakeIdGenerator getInstance() {
+        SnowflakeIdGenerator generator = instance;
+        if (generator == null) {
+            throw new IllegalStateException("SnowflakeIdGenerator has not been initialized");
+        }
+        return generator;
+    }
+
+    public long nextId() {
+        while (true) {
+            long now = clock.getAsLong() - EPOCH;
+            long prev = state.get();
+            long prevTimestamp = prev >>> SEQUENCE_BITS;
+
+            long next;
+            if (now > prevTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((prev & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = prev + 1;
+            } else {
+                next = (prevTimestamp + 1) << SEQUENCE_BITS;
+            }
+
+            if (state.compareAndSet(prev, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                        | (nodeId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // Thời điểm (epoch ms) mà ID được sinh ra
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    // ID nhỏ nhất có thể sinh ra tại thời điểm epochMillis, dùng để chuyển mốc thời gian thành cursor
+    public static long minIdAt(long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH) << TIMESTAMP_SHIFT;
+    }
+}
@@ -0,0 +1,24 @@
+-- Chuyển id của messages, conversations, conversation_members từ INT AUTO_INCREMENT sang BIGINT
+-- do ứng dụng tự sinh (SnowflakeIdGenerator).
+--
+-- ID cũ vẫn giữ nguyên giá trị: mọi Snowflake ID mới đều lớn hơn ID auto-increment cũ,
+-- nên thứ tự theo id (dùng làm cursor) vẫn đúng với thứ tự thời gian.
+--
+-- Chạy script khi ứng dụng đã dừng, trước khi deploy phiên bản dùng @SnowflakeId.
+
+SET FOREIGN_KEY_CHECKS = 0;
+
+ALTER TABLE conversations
+    MODIFY id BIGINT NOT NULL;
+
+ALTER TABLE conversation_members
+    MODIFY id BIGINT NOT NULL,
+    MODIFY conversation_id BIGINT NOT NULL,
+    MODIFY last_read_message_id BIGINT NULL;
+
+ALTER TABLE messages
+    MODIFY id BIGINT NOT NULL,
+    MODIFY conversation_id BIGINT NOT NULL,
+    MODIFY parent_id BIGINT NULL;
+
+SET FOREIGN_KEY_CHECKS = 1;
@@ -0,0 +1,4 @@
+-- Index phục vụ keyset pagination lịch sử tin nhắn:
+--   WHERE conversation_id = ? AND id < ? ORDER BY id DESC LIMIT ?
+-- MySQL seek thẳng tới cursor nên chi phí không phụ thuộc trang sâu tới đâu.
+CREATE INDEX idx_messages_conversation_id_id ON messages (conversation_id, id);
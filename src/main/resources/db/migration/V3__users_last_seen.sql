@@ -0,0 +1,2 @@
+-- Thời điểm hoạt động cuối cùng của user (epoch millis), ghi theo batch bởi LastSeenService
+ALTER TABLE users ADD COLUMN last_seen_at BIGINT NULL;
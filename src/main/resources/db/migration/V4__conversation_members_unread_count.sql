@@ -0,0 +1,2 @@
+-- Số tin nhắn chưa đọc của mỗi thành viên, được UnreadCountService ghi định kỳ từ bộ nhớ
+ALTER TABLE conversation_members ADD COLUMN unread_count INT NOT NULL DEFAULT 0;
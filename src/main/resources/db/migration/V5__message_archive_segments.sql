@@ -0,0 +1,34 @@
+-- Catalog các segment tin nhắn đã lưu trữ (xem MessageArchiveService).
+-- Mỗi dòng là một file bất biến chứa các tin nhắn liên tiếp theo id của một conversation,
+-- các tin nhắn này đã bị xoá khỏi bảng messages.
+CREATE TABLE message_archive_segments
+(
+    id               BIGINT       NOT NULL PRIMARY KEY,
+    conversation_id  BIGINT       NOT NULL,
+    first_message_id BIGINT       NOT NULL,
+    last_message_id  BIGINT       NOT NULL,
+    first_created_at BIGINT       NOT NULL,
+    last_created_at  BIGINT       NOT NULL,
+    message_count    INT          NOT NULL,
+    storage          VARCHAR(16)  NOT NULL,
+    object_key       VARCHAR(512) NOT NULL,
+    size_bytes       BIGINT       NOT NULL,
+    index_offset     BIGINT       NOT NULL,
+    created_at       BIGINT       NULL
+);
+
+CREATE INDEX idx_archive_segments_conversation_first_id ON message_archive_segments (conversation_id, first_message_id);
+
+-- Reply còn trong bảng messages có thể trỏ tới tin nhắn gốc đã lưu trữ, nên bỏ foreign key của parent_id.
+-- Tên constraint do Hibernate sinh nên phải tra trong information_schema.
+SET @fk := (SELECT CONSTRAINT_NAME
+            FROM information_schema.KEY_COLUMN_USAGE
+            WHERE TABLE_SCHEMA = DATABASE()
+              AND TABLE_NAME = 'messages'
+              AND COLUMN_NAME = 'parent_id'
+              AND REFERENCED_TABLE_NAME IS NOT NULL
+            LIMIT 1);
+SET @sql := IF(@fk IS NULL, 'SELECT 1', CONCAT('ALTER TABLE messages DROP FOREIGN KEY ', @fk));
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
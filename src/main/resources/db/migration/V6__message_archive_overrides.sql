@@ -0,0 +1,11 @@
+-- Bản sửa / xoá mềm của tin nhắn đã lưu trữ (xem MessageArchiveService).
+-- File segment bất biến, nên mỗi tin nhắn đã lưu trữ bị sửa / xoá có đúng một dòng ở đây (bản mới nhất),
+-- được áp lên kết quả mỗi khi đọc archive.
+CREATE TABLE message_archive_overrides
+(
+    message_id      BIGINT NOT NULL PRIMARY KEY,
+    conversation_id BIGINT NOT NULL,
+    content         TEXT   NULL,
+    updated_at      BIGINT NULL,
+    deleted_at      BIGINT NULL
+);
@@ -0,0 +1,101 @@
+package com.example.librarymanagement.benchmark;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.handler.WireFormatConverter;
+import com.example.librarymanagement.handler.WireFormatInterceptor;
+import com.example.librarymanagement.handler.WirePayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.web.socket.TextMessage;
+
+import java.lang.management.ManagementFactory;
+
+/*
+ * Đo chi phí CPU và byte cấp phát khi fan-out một ChatMessage tới một conversation lớn,
+ * theo đúng đường outbound của một frame /user/queue/messages:
+ *   WireFormatConverter.toMessage → WireFormatInterceptor.preSend → StompEncoder → TextMessage
+ *
+ *   PER_MEMBER  mỗi thành viên một WirePayload mới (cách cũ: Jackson chạy một lần cho mỗi thành viên)
+ *   SHARED      một WirePayload cho cả lượt fan-out (ChatDeliveryServiceImpl.deliverToConversation)
+ *
+ * Phần còn lại mỗi session vẫn phải trả, ở cả hai mode: encode frame STOMP (header khác nhau theo session /
+ * subscription) và new TextMessage(byte[]), constructor này decode cả frame thành String UTF-8. Mức giảm đo được chỉ
+ * đến từ việc bỏ Jackson mỗi thành viên; decode String mỗi session vẫn nằm trong số B/member của SHARED.
+ *
+ * Không chạy cùng test suite. Chạy thủ công, ví dụ:
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *       com.example.librarymanagement.benchmark.BroadcastFanOutBenchmark [members] [rounds]
+ * */
+public class BroadcastFanOutBenchmark {
+    private enum Mode {PER_MEMBER, SHARED}
+
+    public static void main(String[] args) {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        WireFormatConverter converter = new WireFormatConverter();
+        WireFormatInterceptor interceptor = new WireFormatInterceptor(new ObjectMapper(), new SimpleMeterRegistry());
+        StompEncoder encoder = new StompEncoder();
+        ChatMessage message = ChatMessage.builder()
+                .id(1_842_117_384_192_000L)
+                .clientMessageId("c-1")
+                .conversationId(1_842_117_384_192L)
+                .sender(1024)
+                .content("Tin nhắn thử gửi tới cả kênh, nội dung ngắn như một câu thông báo bình thường.")
+                .senderName("Nguyễn Văn A")
+                .senderAvatar("https://chat-avatars.s3.ap-southeast-1.amazonaws.com/avatars/1024/3f2a9c1e.jpg")
+                .createdAt(1_767_225_600_000L)
+                .build();
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+
+        System.out.printf("%-10s %8s %14s %14s %14s%n", "mode", "members", "cpu ms/fanout", "KB/fanout", "B/member");
+        for (Mode mode : Mode.values()) {
+            // Warm-up
+            for (int i = 0; i < Math.max(1, rounds / 2); i++) {
+                fanOut(mode, message, members, converter, interceptor, encoder);
+            }
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            long allocStart = threads.getThreadAllocatedBytes(thread);
+            long sink = 0;
+            for (int i = 0; i < rounds; i++) {
+                sink += fanOut(mode, message, members, converter, interceptor, encoder);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - allocStart;
+            long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+            if (sink == 0) {
+                throw new IllegalStateException();
+            }
+            System.out.printf("%-10s %8d %14.2f %14.1f %14.0f%n", mode, members, cpu / 1e6 / rounds,
+                    allocated / 1024.0 / rounds, (double) allocated / rounds / members);
+        }
+    }
+
+    // Trả về tổng byte frame để JIT không bỏ qua vòng lặp
+    private static long fanOut(Mode mode, ChatMessage message, int members, WireFormatConverter converter,
+                               WireFormatInterceptor interceptor, StompEncoder encoder) {
+        WirePayload shared = mode == Mode.SHARED ? new WirePayload(message) : null;
+        long total = 0;
+        for (int member = 0; member < members; member++) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            accessor.setSessionId("s-" + member);
+            accessor.setSubscriptionId("sub-0");
+            accessor.setDestination("/user/queue/messages");
+            accessor.setNativeHeader("seq", String.valueOf(1_767_225_600_000_000L + member));
+            accessor.setLeaveMutable(true);
+
+            Message<?> converted = converter.toMessage(shared != null ? shared : message, accessor.getMessageHeaders());
+            Message<?> encoded = interceptor.preSend(converted, null);
+            @SuppressWarnings("unchecked")
+            byte[] frame = encoder.encode((Message<byte[]>) encoded);
+            total += new TextMessage(frame).getPayloadLength();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.librarymanagement.benchmark;
+
+import com.example.librarymanagement.config.WebSocketExecutorMode;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * So sánh hai chế độ executor của clientInboundChannel (WebSocketExecutorMode) với nhiều session giả lập,
+ * đúng như WebSocketConfig cấu hình: chỉ VIRTUAL bật preserveReceiveOrder, nên chỉ VIRTUAL gửi frame qua
+ * OrderedMessageChannelDecorator; PLATFORM gửi thẳng vào channel. Handler block một khoảng cố định
+ * (mô phỏng ghi DB / presign S3) và đếm frame của từng session tới sai thứ tự (PLATFORM có thể khác 0).
+ *
+ * Không chạy cùng test suite. Chạy thủ công, ví dụ:
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *       com.example.librarymanagement.benchmark.ChannelExecutorBenchmark [sessions] [framesPerSession] [handlerMs]
+ * */
+public class ChannelExecutorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int framesPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long handlerMs = args.length > 2 ? Long.parseLong(args[2]) : 2;
+
+        System.out.printf("sessions=%d framesPerSession=%d handlerMs=%d cpus=%d%n",
+                sessions, framesPerSession, handlerMs, Runtime.getRuntime().availableProcessors());
+        for (WebSocketExecutorMode mode : WebSocketExecutorMode.values()) {
+            run(mode, sessions, framesPerSession, handlerMs);
+        }
+    }
+
+    private static void run(WebSocketExecutorMode mode, int sessions, int framesPerSession, long handlerMs)
+            throws InterruptedException {
+        Executor executor = createExecutor(mode);
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        boolean preserveOrder = mode == WebSocketExecutorMode.VIRTUAL;
+        OrderedMessageChannelDecorator.configureInterceptor(channel, preserveOrder);
+
+        int total = sessions * framesPerSession;
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger outOfOrder = new AtomicInteger();
+        AtomicInteger[] lastSeq = new AtomicInteger[sessions];
+        AtomicLongArray latencies = new AtomicLongArray(total);
+        AtomicInteger latencyIndex = new AtomicInteger();
+        for (int i = 0; i < sessions; i++) {
+            lastSeq[i] = new AtomicInteger(-1);
+        }
+
+        channel.subscribe(message -> {
+            int session = Integer.parseInt(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+            long[] payload = (long[]) message.getPayload();
+            if (lastSeq[session].getAndSet((int) payload[0]) != payload[0] - 1) {
+                outOfOrder.incrementAndGet();
+            }
+            try {
+                Thread.sleep(handlerMs);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            latencies.set(latencyIndex.getAndIncrement(), System.nanoTime() - payload[1]);
+            done.countDown();
+        });
+
+        // Giữ thứ tự: mỗi session một decorator, như SubProtocolWebSocketHandler tạo cho từng WebSocket session
+        MessageChannel[] sessionChannels = new MessageChannel[sessions];
+        for (int i = 0; i < sessions; i++) {
+            sessionChannels[i] = preserveOrder
+                    ? new OrderedMessageChannelDecorator(channel, LogFactory.getLog("benchmark"))
+                    : channel;
+        }
+
+        long start = System.nanoTime();
+        for (int seq = 0; seq < framesPerSession; seq++) {
+            for (int session = 0; session < sessions; session++) {
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+                accessor.setSessionId(Integer.toString(session));
+                accessor.setLeaveMutable(true);
+                sessionChannels[session].send(MessageBuilder.createMessage(
+                        new long[]{seq, System.nanoTime()}, accessor.getMessageHeaders()));
+            }
+        }
+        boolean completed = done.await(10, TimeUnit.MINUTES);
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] sorted = new long[latencyIndex.get()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        System.out.printf("%-8s completed=%s elapsed=%dms throughput=%.0f frames/s p50=%.1fms p99=%.1fms "
+                        + "max=%.1fms outOfOrder=%d peakThreads=%d%n",
+                mode, completed, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                sorted.length / (elapsedNanos / 1e9),
+                percentileMs(sorted, 0.50), percentileMs(sorted, 0.99), percentileMs(sorted, 1.0),
+                outOfOrder.get(), ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    // Cùng cấu hình mặc định Spring dùng cho clientInboundChannel khi không khai báo executor
+    private static Executor createExecutor(WebSocketExecutorMode mode) {
+        if (mode == WebSocketExecutorMode.VIRTUAL) {
+            return new VirtualThreadTaskExecutor("ws-inbound-");
+        }
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        pool.setMaxPoolSize(Integer.MAX_VALUE);
+        pool.setQueueCapacity(Integer.MAX_VALUE);
+        pool.setThreadNamePrefix("ws-inbound-");
+        pool.initialize();
+        return pool;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.librarymanagement.benchmark;
+
+import com.example.librarymanagement.config.AwsBuckets;
+import com.example.librarymanagement.service.impl.S3ServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/*
+ * Chi phí mỗi presigned URL khi dựng một trang danh sách (rows key avatar khác nhau, lặp lại nhiều lần):
+ *
+ *   CREATE_PER_CALL  S3Presigner.create() cho mỗi URL (cách cũ: resolve credentials / region mỗi lần)
+ *   SHARED           một S3Presigner dùng chung, ký lại mỗi lần
+ *   CACHED           S3ServiceImpl.generatePresignedUrl (presigner dùng chung + cache URL)
+ *
+ * Presign là phép ký cục bộ, không gọi mạng. Nếu chưa có credentials, benchmark tự đặt credentials giả qua
+ * system property để chuỗi credentials mặc định vẫn được resolve như khi chạy thật.
+ *
+ * Không chạy cùng test suite. Chạy thủ công, ví dụ:
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *       com.example.librarymanagement.benchmark.PresignBenchmark [rows] [pages]
+ * */
+public class PresignBenchmark {
+    private static final String BUCKET = "chatapp-benchmark";
+    private static final Duration DURATION = Duration.ofHours(24);
+
+    private enum Mode {CREATE_PER_CALL, SHARED, CACHED}
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        if (System.getenv("AWS_ACCESS_KEY_ID") == null && System.getProperty("aws.accessKeyId") == null) {
+            System.setProperty("aws.accessKeyId", "AKIAEXAMPLE");
+            System.setProperty("aws.secretAccessKey", "benchmark-secret");
+        }
+        if (System.getenv("AWS_REGION") == null && System.getProperty("aws.region") == null) {
+            System.setProperty("aws.region", "ap-southeast-1");
+        }
+
+        String[] keys = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            keys[i] = "images/users/" + UUID.randomUUID() + ".jpg";
+        }
+
+        AwsBuckets buckets = new AwsBuckets();
+        buckets.setMain(BUCKET);
+        try (S3Presigner shared = S3Presigner.builder().region(Region.AP_SOUTHEAST_1).build()) {
+            S3ServiceImpl cached = new S3ServiceImpl(null, shared, buckets, new SimpleMeterRegistry(), 10_000, 0.1);
+
+            System.out.printf("%-16s %6s %8s %14s %14s%n", "mode", "rows", "pages", "us/url", "ms/page");
+            for (Mode mode : Mode.values()) {
+                // CREATE_PER_CALL chậm hơn nhiều bậc, chạy ít trang hơn để thời gian mỗi dòng tương đương
+                int measured = mode == Mode.CREATE_PER_CALL ? Math.max(1, pages / 20) : pages;
+                long sink = 0;
+                for (int page = 0; page < Math.max(1, measured / 2); page++) {
+                    sink += page(mode, keys, shared, cached);
+                }
+                long start = System.nanoTime();
+                for (int page = 0; page < measured; page++) {
+                    sink += page(mode, keys, shared, cached);
+                }
+                long elapsed = System.nanoTime() - start;
+                if (sink == 0) {
+                    throw new IllegalStateException();
+                }
+                System.out.printf("%-16s %6d %8d %14.2f %14.3f%n", mode, rows, measured,
+                        elapsed / 1e3 / measured / rows, elapsed / 1e6 / measured);
+            }
+        }
+    }
+
+    // Trả về tổng độ dài URL để JIT không bỏ qua vòng lặp
+    private static long page(Mode mode, String[] keys, S3Presigner shared, S3ServiceImpl cached) {
+        long total = 0;
+        for (String key : keys) {
+            String url = switch (mode) {
+                case CREATE_PER_CALL -> {
+                    try (S3Presigner presigner = S3Presigner.create()) {
+                        yield presign(presigner, key);
+                    }
+                }
+                case SHARED -> presign(shared, key);
+                case CACHED -> cached.generatePresignedUrl(key, DURATION);
+            };
+            total += url.length();
+        }
+        return total;
+    }
+
+    private static String presign(S3Presigner presigner, String key) {
+        return presigner.presignGetObject(GetObjectPresignRequest.builder()
+                        .signatureDuration(DURATION)
+                        .getObjectRequest(GetObjectRequest.builder().bucket(BUCKET).key(key).build())
+                        .build())
+                .url()
+                .toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.entity.Conversation;
+import com.example.librarymanagement.entity.Message;
+import com.example.librarymanagement.entity.Role;
+import com.example.librarymanagement.entity.User;
+import com.example.librarymanagement.entity.Workspace;
+import com.example.librarymanagement.enumeration.SocialProvider;
+import com.example.librarymanagement.security.service.UserDetailsImpl;
+import com.example.librarymanagement.service.inter.ChatDeliveryService;
+import com.example.librarymanagement.service.inter.InboxService;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.MessageArchiveService;
+import com.example.librarymanagement.service.inter.MessageSearchService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.util.SnowflakeIdGenerator;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/*
+ * Đếm prepared statement thật của Hibernate cho một trang lịch sử có reply: mapping entity → ChatMessage
+ * không được lazy-load conversation / user / parent theo từng dòng.
+ * Chạy trên datasource cấu hình qua DATABASE_URL (như LibrarymanagementApplicationTests), schema theo
+ * db/migration; dữ liệu tạo trong transaction của test và được rollback.
+ * */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ConversationServiceImpl.class, SnowflakeIdGenerator.class})
+class ConversationServiceImplJpaTest {
+    private static final int PAGE_SIZE = 10;
+
+    @Autowired
+    private ConversationServiceImpl conversationService;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean
+    private RecentMessageCacheService recentMessageCacheService;
+    @MockitoBean
+    private MembershipIndexService membershipIndexService;
+    @MockitoBean
+    private ChatDeliveryService chatDeliveryService;
+    @MockitoBean
+    private InboxService inboxService;
+    @MockitoBean
+    private MessageSearchService messageSearchService;
+    @MockitoBean
+    private MessageArchiveService messageArchiveService;
+    @MockitoBean
+    private UserCardService userCardService;
+
+    private Conversation conversation;
+    private List<Message> messages;
+    private Authentication authentication;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = Long.toString(System.nanoTime());
+        Role role = entityManager.persist(new Role(null, "TEST_" + suffix));
+        User user = entityManager.persist(User.builder()
+                .email("history-" + suffix + "@test.local")
+                .role(role)
+                .isEmailVerified(true)
+                .status(User.UserStatus.ACTIVE)
+                .provider(SocialProvider.LOCAL)
+                .build());
+        Workspace workspace = entityManager.persist(Workspace.builder().name("workspace").build());
+        conversation = entityManager.persist(Conversation.builder()
+                .workspace(workspace)
+                .name("history")
+                .type(Conversation.ConversationType.CHANNEL)
+                .isPrivate(false)
+                .build());
+
+        // 5 tin cũ làm parent ngoài trang, sau đó 2 * PAGE_SIZE tin, mỗi tin thứ hai trả lời một tin cũ
+        messages = new ArrayList<>();
+        for (int i = 0; i < 5 + 2 * PAGE_SIZE; i++) {
+            Message parent = i >= 5 && i % 2 == 0 ? messages.get(i % 5) : null;
+            messages.add(entityManager.persist(Message.builder()
+                    .conversation(conversation)
+                    .user(user)
+                    .parent(parent)
+                    .content("message " + i)
+                    .build()));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        authentication = new UsernamePasswordAuthenticationToken(
+                UserDetailsImpl.builder().id(user.getId()).build(), null, List.of());
+        when(membershipIndexService.isMember(conversation.getId(), user.getId())).thenReturn(true);
+        when(recentMessageCacheService.getMessage(any(), anyLong())).thenReturn(Optional.empty());
+        when(messageArchiveService.findBefore(any(), anyLong(), anyInt())).thenReturn(List.of());
+        when(userCardService.getCards(anyCollection())).thenReturn(Map.of());
+    }
+
+    @Test
+    void historyPageWithRepliesRunsTwoStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        long before = messages.get(messages.size() - 1).getId() + 1;
+        CursorPage<ChatMessage> page = conversationService.getMessages(conversation.getId(), before, null,
+                PAGE_SIZE, authentication);
+
+        // Một query cho trang (keyset), một query IN cho mọi parent không nằm trong trang
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityFetchCount()).isZero();
+        assertThat(page.getItems()).hasSize(PAGE_SIZE);
+        for (ChatMessage item : page.getItems()) {
+            if (item.getParentId() != null) {
+                assertThat(item.getParent()).isNotNull();
+                assertThat(item.getParent().getContent()).startsWith("message ");
+            }
+        }
+        assertThat(page.getItems()).anyMatch(item -> item.getParent() != null);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.util.CursorPage;
+import com.example.librarymanagement.entity.Conversation;
+import com.example.librarymanagement.entity.Message;
+import com.example.librarymanagement.entity.User;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.security.service.UserDetailsImpl;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.MessageArchiveService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+// Số query cho một trang lịch sử phải cố định, không phụ thuộc số reply trong trang
+@ExtendWith(MockitoExtension.class)
+class ConversationServiceImplTest {
+    private static final long CONVERSATION_ID = 1L;
+    private static final int USER_ID = 7;
+
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private RecentMessageCacheService recentMessageCacheService;
+    @Mock
+    private MembershipIndexService membershipIndexService;
+    @Mock
+    private MessageArchiveService messageArchiveService;
+    @Mock
+    private UserCardService userCardService;
+
+    @InjectMocks
+    private ConversationServiceImpl conversationService;
+
+    private Authentication authentication;
+
+    @BeforeEach
+    void setUp() {
+        authentication = new UsernamePasswordAuthenticationToken(
+                UserDetailsImpl.builder().id(USER_ID).build(), null, List.of());
+        when(membershipIndexService.isMember(CONVERSATION_ID, USER_ID)).thenReturn(true);
+    }
+
+    @Test
+    void historyPageResolvesAllParentsWithOneQuery() {
+        // 105 trả lời 104 (cùng trang), 104 trả lời 50 (trong cache), 103 / 102 trả lời 40 / 41 (chỉ có trong DB)
+        List<Message> rows = List.of(
+                message(105L, 104L),
+                message(104L, 50L),
+                message(103L, 40L),
+                message(102L, 41L),
+                message(101L, 40L));
+        when(messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(eq(CONVERSATION_ID), eq(200L),
+                any(Limit.class))).thenReturn(rows);
+        when(recentMessageCacheService.getMessage(eq(CONVERSATION_ID), anyLong())).thenReturn(Optional.empty());
+        when(recentMessageCacheService.getMessage(CONVERSATION_ID, 50L)).thenReturn(Optional.of(
+                ChatMessage.builder().id(50L).sender(2).content("cached parent").build()));
+        when(messageRepository.findParentViews(eq(CONVERSATION_ID), eq(Set.of(40L, 41L)), anyInt()))
+                .thenReturn(List.of(parentView(40L, "db parent", null), parentView(41L, null, 123L)));
+
+        CursorPage<ChatMessage> page = conversationService.getMessages(CONVERSATION_ID, 200L, null, 10,
+                authentication);
+
+        verify(messageRepository).findByConversationIdAndIdLessThanOrderByIdDesc(eq(CONVERSATION_ID), eq(200L),
+                any(Limit.class));
+        verify(messageRepository).findParentViews(eq(CONVERSATION_ID), eq(Set.of(40L, 41L)), anyInt());
+        verifyNoMoreInteractions(messageRepository);
+
+        Map<Long, ChatMessage> byId = page.getItems().stream()
+                .collect(Collectors.toMap(ChatMessage::getId, Function.identity()));
+        assertThat(byId.get(105L).getParent().getContent()).isEqualTo("message 104");
+        assertThat(byId.get(104L).getParent().getContent()).isEqualTo("cached parent");
+        assertThat(byId.get(103L).getParent().getContent()).isEqualTo("db parent");
+        assertThat(byId.get(101L).getParent().getId()).isEqualTo(40L);
+        assertThat(byId.get(102L).getParent().getDeleted()).isTrue();
+        assertThat(byId.get(102L).getParent().getContent()).isNull();
+    }
+
+    @Test
+    void historyPageContinuesIntoArchiveWhenTableRunsOut() {
+        // Bảng chỉ còn 2 dòng cũ hơn cursor, phần còn lại của trang đọc từ archive (mới → cũ)
+        when(messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(eq(CONVERSATION_ID), eq(200L),
+                any(Limit.class))).thenReturn(List.of(message(150L, null), message(149L, null)));
+        when(messageArchiveService.findBefore(CONVERSATION_ID, 149L, 2)).thenReturn(List.of(
+                ChatMessage.builder().id(90L).sender(2).content("archived").build(),
+                ChatMessage.builder().id(89L).sender(2).content("archived").build()));
+
+        CursorPage<ChatMessage> page = conversationService.getMessages(CONVERSATION_ID, 200L, null, 3,
+                authentication);
+
+        assertThat(page.getItems()).extracting(ChatMessage::getId).containsExactly(90L, 149L, 150L);
+        assertThat(page.getHasMore()).isTrue();
+        assertThat(page.getBeforeCursor()).isEqualTo(90L);
+    }
+
+    @Test
+    void cachedPageWithCachedParentsRunsNoQuery() {
+        List<ChatMessage> cached = List.of(
+                ChatMessage.builder().id(10L).sender(2).content("first").build(),
+                ChatMessage.builder().id(11L).sender(3).parentId(10L).content("reply").build(),
+                ChatMessage.builder().id(12L).sender(2).parentId(5L).content("older reply").build());
+        when(recentMessageCacheService.getRecent(CONVERSATION_ID, 11)).thenReturn(Optional.of(cached));
+        when(recentMessageCacheService.getMessage(CONVERSATION_ID, 5L)).thenReturn(Optional.of(
+                ChatMessage.builder().id(5L).sender(3).content("x".repeat(500)).build()));
+
+        CursorPage<ChatMessage> page = conversationService.getMessages(CONVERSATION_ID, null, null, 10,
+                authentication);
+
+        verifyNoInteractions(messageRepository);
+        assertThat(page.getItems()).hasSize(3);
+        assertThat(page.getItems().get(1).getParent().getContent()).isEqualTo("first");
+        assertThat(page.getItems().get(2).getParent().getContent()).hasSize(100);
+        // Object trong cache không bị sửa
+        assertThat(cached.get(1).getParent()).isNull();
+    }
+
+    private static Message message(long id, Long parentId) {
+        return Message.builder()
+                .id(id)
+                .conversation(Conversation.builder().id(CONVERSATION_ID).build())
+                .user(User.builder().id(USER_ID).build())
+                .parent(parentId != null ? Message.builder().id(parentId).build() : null)
+                .content("message " + id)
+                .build();
+    }
+
+    private static MessageRepository.ParentView parentView(long id, String content, Long deletedAt) {
+        return new MessageRepository.ParentView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Integer getSender() {
+                return 2;
+            }
+
+            @Override
+            public String getContent() {
+                return content;
+            }
+
+            @Override
+            public Long getDeletedAt() {
+                return deletedAt;
+            }
+        };
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.entity.MessageArchiveSegment;
+import com.example.librarymanagement.entity.MessageArchiveSegment.Storage;
+import com.example.librarymanagement.repository.MessageArchiveSegmentRepository;
+import com.example.librarymanagement.util.MessageSegmentFormat;
+import com.example.librarymanagement.util.MessageSegmentFormat.Encoded;
+import com.example.librarymanagement.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ * Đọc archive qua catalog → footer → block trên hai segment local (25 tin mỗi segment, block 10 tin),
+ * cursor nằm ở ranh giới block và ranh giới segment; override sửa / xoá được áp lên kết quả đọc.
+ * */
+@ExtendWith(MockitoExtension.class)
+class MessageArchiveServiceImplTest {
+    private static final long CONVERSATION_ID = 9L;
+    private static final int BLOCK_MESSAGES = 10;
+    private static final int SEGMENT_MESSAGES = 25;
+
+    @Mock
+    private MessageArchiveSegmentRepository segmentRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    private Path directory;
+
+    private final List<MessageArchiveSegment> segments = new ArrayList<>();
+    // Bảng message_archive_overrides trong bộ nhớ
+    private final Map<Long, ChatMessage> overrides = new HashMap<>();
+    // ids[i]: id của tin nhắn thứ i, cách nhau 1 ms và đủ cũ để nằm trong archive
+    private final long[] ids = new long[SEGMENT_MESSAGES * 2];
+
+    private MessageArchiveServiceImpl archiveService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        long start = SnowflakeIdGenerator.minIdAt(System.currentTimeMillis() - Duration.ofDays(60).toMillis());
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = start + ((long) i << 22);
+            messages.add(ChatMessage.builder()
+                    .id(ids[i])
+                    .conversationId(CONVERSATION_ID)
+                    .sender(1)
+                    .content("message " + i)
+                    .createdAt(SnowflakeIdGenerator.timestampOf(ids[i]))
+                    .build());
+        }
+        writeSegment(1L, messages.subList(0, SEGMENT_MESSAGES));
+        writeSegment(2L, messages.subList(SEGMENT_MESSAGES, ids.length));
+
+        archiveService = new MessageArchiveServiceImpl(segmentRepository, null, jdbcTemplate, null, new SimpleMeterRegistry(),
+                false, Storage.LOCAL, directory.toString(), "archive/", 30, 10, 100, BLOCK_MESSAGES, 10, 16);
+
+        // Mô phỏng đúng ba query catalog trên danh sách segment trong bộ nhớ
+        lenient().when(segmentRepository.findByConversationIdAndFirstMessageIdLessThanOrderByFirstMessageIdDesc(
+                eq(CONVERSATION_ID), anyLong(), any())).thenAnswer(invocation -> segments.stream()
+                .filter(segment -> segment.getFirstMessageId() < (Long) invocation.getArgument(1))
+                .sorted(Comparator.comparing(MessageArchiveSegment::getFirstMessageId).reversed())
+                .limit(1)
+                .toList());
+        lenient().when(segmentRepository.findByConversationIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(
+                eq(CONVERSATION_ID), anyLong(), any())).thenAnswer(invocation -> segments.stream()
+                .filter(segment -> segment.getLastMessageId() > (Long) invocation.getArgument(1))
+                .sorted(Comparator.comparing(MessageArchiveSegment::getFirstMessageId))
+                .limit(1)
+                .toList());
+        lenient().when(segmentRepository.findFirstByConversationIdAndFirstMessageIdLessThanEqualOrderByFirstMessageIdDesc(
+                eq(CONVERSATION_ID), anyLong())).thenAnswer(invocation -> segments.stream()
+                .filter(segment -> segment.getFirstMessageId() <= (Long) invocation.getArgument(1))
+                .max(Comparator.comparing(MessageArchiveSegment::getFirstMessageId)));
+
+        // UPSERT: (message_id, conversation_id, content, updated_at, deleted_at)
+        lenient().when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = (Object[]) invocation.getRawArguments()[1];
+            overrides.put((Long) args[0], ChatMessage.builder()
+                    .id((Long) args[0])
+                    .content((String) args[2])
+                    .updatedAt((Long) args[3])
+                    .deletedAt((Long) args[4])
+                    .build());
+            return 1;
+        });
+        // SELECT override theo (conversation_id, message_id...)
+        lenient().doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            Object[] args = (Object[]) invocation.getRawArguments()[2];
+            for (int i = 1; i < args.length; i++) {
+                ChatMessage override = overrides.get((Long) args[i]);
+                if (override != null) {
+                    handler.processRow(resultSetOf(override));
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void findBeforeCrossesBlockBoundary() {
+        assertThat(archiveService.findBefore(CONVERSATION_ID, ids[12], 4))
+                .extracting(ChatMessage::getId).containsExactly(ids[11], ids[10], ids[9], ids[8]);
+    }
+
+    @Test
+    void findBeforeCrossesSegmentBoundary() {
+        assertThat(archiveService.findBefore(CONVERSATION_ID, ids[27], 5))
+                .extracting(ChatMessage::getId).containsExactly(ids[26], ids[25], ids[24], ids[23], ids[22]);
+    }
+
+    @Test
+    void findBeforeStopsAtOldestArchivedMessage() {
+        assertThat(archiveService.findBefore(CONVERSATION_ID, ids[3], 10))
+                .extracting(ChatMessage::getId).containsExactly(ids[2], ids[1], ids[0]);
+    }
+
+    @Test
+    void findAfterCrossesBlockAndSegmentBoundaries() {
+        assertThat(archiveService.findAfter(CONVERSATION_ID, ids[17], 10))
+                .extracting(ChatMessage::getId)
+                .containsExactly(ids[18], ids[19], ids[20], ids[21], ids[22], ids[23], ids[24], ids[25], ids[26],
+                        ids[27]);
+    }
+
+    @Test
+    void findByIdsReadsFirstAndLastOfEveryBlockAndSkipsMissingIds() {
+        Map<Long, ChatMessage> found = archiveService.findByIds(CONVERSATION_ID, List.of(
+                ids[0], ids[9], ids[10], ids[24], ids[25], ids[49], ids[5] + 1, ids[49] + 1));
+
+        assertThat(found).containsOnlyKeys(ids[0], ids[9], ids[10], ids[24], ids[25], ids[49]);
+        assertThat(found.get(ids[25]).getContent()).isEqualTo("message 25");
+        assertThat(found.get(ids[25]).getConversationId()).isEqualTo(CONVERSATION_ID);
+    }
+
+    @Test
+    void overridesAreAppliedToEveryRead() {
+        archiveService.saveOverride(ChatMessage.builder()
+                .id(ids[11]).conversationId(CONVERSATION_ID).content("edited").updatedAt(1000L).build());
+        archiveService.saveOverride(ChatMessage.builder()
+                .id(ids[30]).conversationId(CONVERSATION_ID).deletedAt(2000L).build());
+
+        List<ChatMessage> before = archiveService.findBefore(CONVERSATION_ID, ids[12], 2);
+        assertThat(before).extracting(ChatMessage::getContent).containsExactly("edited", "message 10");
+        assertThat(before.get(0).getUpdatedAt()).isEqualTo(1000L);
+        assertThat(before.get(0).getSender()).isEqualTo(1);
+
+        List<ChatMessage> after = archiveService.findAfter(CONVERSATION_ID, ids[29], 2);
+        assertThat(after).extracting(ChatMessage::getId).containsExactly(ids[30], ids[31]);
+        assertThat(after.get(0).getContent()).isNull();
+        assertThat(after.get(0).getDeletedAt()).isEqualTo(2000L);
+
+        Map<Long, ChatMessage> found = archiveService.findByIds(CONVERSATION_ID, List.of(ids[11], ids[12]));
+        assertThat(found.get(ids[11]).getContent()).isEqualTo("edited");
+        assertThat(found.get(ids[12]).getContent()).isEqualTo("message 12");
+    }
+
+    private static ResultSet resultSetOf(ChatMessage override) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("message_id")).thenReturn(override.getId());
+        when(rs.getString("content")).thenReturn(override.getContent());
+        when(rs.getLong("updated_at")).thenReturn(override.getUpdatedAt() != null ? override.getUpdatedAt() : 0);
+        when(rs.getLong("deleted_at")).thenReturn(override.getDeletedAt() != null ? override.getDeletedAt() : 0);
+        return rs;
+    }
+
+    private void writeSegment(long segmentId, List<ChatMessage> messages) throws IOException {
+        Encoded encoded = MessageSegmentFormat.encode(messages, BLOCK_MESSAGES);
+        ChatMessage first = messages.get(0);
+        ChatMessage last = messages.get(messages.size() - 1);
+        String objectKey = CONVERSATION_ID + "/" + first.getId() + "-" + last.getId() + ".seg";
+        Path file = directory.resolve(objectKey);
+        Files.createDirectories(file.getParent());
+        Files.write(file, encoded.bytes());
+        segments.add(MessageArchiveSegment.builder()
+                .id(segmentId)
+                .conversationId(CONVERSATION_ID)
+                .firstMessageId(first.getId())
+                .lastMessageId(last.getId())
+                .firstCreatedAt(first.getCreatedAt())
+                .lastCreatedAt(last.getCreatedAt())
+                .messageCount(messages.size())
+                .storage(Storage.LOCAL)
+                .objectKey(objectKey)
+                .sizeBytes((long) encoded.bytes().length)
+                .indexOffset(encoded.indexOffset())
+                .build());
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.librarymanagement.service.impl;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.dto.chat.OfflineBatch;
+import com.example.librarymanagement.repository.MessageRepository;
+import com.example.librarymanagement.security.service.UserDetailsImpl;
+import com.example.librarymanagement.service.inter.MembershipIndexService;
+import com.example.librarymanagement.service.inter.RecentMessageCacheService;
+import com.example.librarymanagement.service.inter.UserCardService;
+import com.example.librarymanagement.service.inter.UserPresenceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+
+// Log offline của một user trên thư mục tạm: append → ack → compact → mở lại file, record ghi dở, offset sai, evict
+@ExtendWith(MockitoExtension.class)
+class OfflineQueueServiceImplTest {
+    private static final long CONVERSATION_ID = 3L;
+    private static final int SENDER_ID = 1;
+    private static final int USER_ID = 2;
+    private static final long COMPACT_THRESHOLD = 4;
+
+    @Mock
+    private MembershipIndexService membershipIndexService;
+    @Mock
+    private UserPresenceService userPresenceService;
+    @Mock
+    private RecentMessageCacheService recentMessageCacheService;
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private UserCardService userCardService;
+
+    @TempDir
+    private Path directory;
+
+    private final Authentication authentication = new UsernamePasswordAuthenticationToken(
+            UserDetailsImpl.builder().id(USER_ID).build(), null, List.of());
+
+    private OfflineQueueServiceImpl offlineQueue;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().when(membershipIndexService.getMemberIds(CONVERSATION_ID)).thenReturn(new int[]{SENDER_ID, USER_ID});
+        lenient().when(membershipIndexService.isMember(CONVERSATION_ID, USER_ID)).thenReturn(true);
+        // Mọi tin nhắn đều có trong recent cache, nội dung chỉ để đối chiếu id
+        lenient().when(recentMessageCacheService.getMessage(eq(CONVERSATION_ID), anyLong())).thenAnswer(invocation ->
+                Optional.of(ChatMessage.builder().id(invocation.getArgument(1)).sender(SENDER_ID).build()));
+        lenient().when(userCardService.getCards(anyCollection())).thenReturn(Map.of());
+        offlineQueue = open();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        offlineQueue.close();
+    }
+
+    @Test
+    void appendAckCompactAndReopenKeepsOffsets() throws IOException, InterruptedException {
+        for (long id = 100; id < 110; id++) {
+            send(id);
+        }
+        assertThat(ids(offlineQueue.getPending(null, 3, authentication))).containsExactly(100L, 101L, 102L);
+
+        // Ack 2 record: chưa tới ngưỡng compact, chỉ ghi header
+        offlineQueue.acknowledge(2, authentication);
+        OfflineBatch afterAck = offlineQueue.getPending(null, 3, authentication);
+        assertThat(ids(afterAck)).containsExactly(102L, 103L, 104L);
+        assertThat(afterAck.getNextOffset()).isEqualTo(5L);
+
+        // Ack 6 record: vượt ngưỡng → file chỉ còn header + 4 record chưa ack
+        offlineQueue.acknowledge(6, authentication);
+        assertThat(Files.size(logFile())).isEqualTo(16 + 4 * 16);
+
+        reopen();
+        OfflineBatch afterReopen = offlineQueue.getPending(null, 10, authentication);
+        assertThat(ids(afterReopen)).containsExactly(106L, 107L, 108L, 109L);
+        assertThat(afterReopen.getNextOffset()).isEqualTo(10L);
+        assertThat(afterReopen.getHasMore()).isFalse();
+
+        // Offset tiếp tục tăng sau compaction và mở lại
+        send(110);
+        assertThat(ids(offlineQueue.getPending(10L, 10, authentication))).containsExactly(110L);
+
+        // Ack hết → chỉ còn header
+        offlineQueue.acknowledge(11, authentication);
+        assertThat(Files.size(logFile())).isEqualTo(16);
+        assertThat(offlineQueue.getPending(null, 10, authentication).getMessages()).isEmpty();
+    }
+
+    @Test
+    void reopenDropsTruncatedRecord() throws IOException, InterruptedException {
+        send(100);
+        send(101);
+        offlineQueue.close();
+        // Process chết giữa lúc ghi record thứ ba: chỉ 7 byte được ghi
+        Files.write(logFile(), new byte[7], StandardOpenOption.APPEND);
+
+        offlineQueue = open();
+        OfflineBatch batch = offlineQueue.getPending(null, 10, authentication);
+        assertThat(ids(batch)).containsExactly(100L, 101L);
+        assertThat(Files.size(logFile())).isEqualTo(16 + 2 * 16);
+
+        // Record mới ghi đè đúng chỗ phần ghi dở
+        send(102);
+        assertThat(ids(offlineQueue.getPending(2L, 10, authentication))).containsExactly(102L);
+    }
+
+    @Test
+    void readClampsInvalidOffsetsToAckedPosition() {
+        for (long id = 100; id < 105; id++) {
+            send(id);
+        }
+        offlineQueue.acknowledge(2, authentication);
+
+        // Cũ hơn phần đã ack, vượt cuối log → đọc từ vị trí đã ack
+        assertThat(ids(offlineQueue.getPending(0L, 10, authentication))).containsExactly(102L, 103L, 104L);
+        assertThat(ids(offlineQueue.getPending(99L, 10, authentication))).containsExactly(102L, 103L, 104L);
+        // Offset hợp lệ giữa log, limit nhỏ hơn phần còn lại
+        OfflineBatch middle = offlineQueue.getPending(3L, 1, authentication);
+        assertThat(ids(middle)).containsExactly(103L);
+        assertThat(middle.getHasMore()).isTrue();
+        // Đúng cuối log → rỗng
+        OfflineBatch end = offlineQueue.getPending(5L, 10, authentication);
+        assertThat(end.getMessages()).isEmpty();
+        assertThat(end.getNextOffset()).isEqualTo(5L);
+        assertThat(end.getHasMore()).isFalse();
+    }
+
+    @Test
+    void evictedLogKeepsRecordsAndOffsets() throws IOException, InterruptedException {
+        offlineQueue.close();
+        offlineQueue = new OfflineQueueServiceImpl(membershipIndexService, userPresenceService,
+                recentMessageCacheService, messageRepository, userCardService, new SimpleMeterRegistry(),
+                directory.toString(), 1, COMPACT_THRESHOLD, 64);
+        int otherUserId = USER_ID + 1;
+        lenient().when(membershipIndexService.getMemberIds(CONVERSATION_ID + 1))
+                .thenReturn(new int[]{SENDER_ID, otherUserId});
+
+        send(100);
+        // Log của user khác đẩy log của USER_ID ra khỏi LRU (max-open-files = 1) trước khi sync
+        offlineQueue.onMessageSaved(ChatMessage.builder()
+                .id(200L)
+                .conversationId(CONVERSATION_ID + 1)
+                .sender(SENDER_ID)
+                .build());
+        offlineQueue.appendPending();
+        offlineQueue.sync();
+
+        // Mở lại log từ file: record ghi trước khi bị evict vẫn còn, append tiếp đúng offset
+        send(101);
+        assertThat(ids(offlineQueue.getPending(null, 10, authentication))).containsExactly(100L, 101L);
+    }
+
+    private OfflineQueueServiceImpl open() throws IOException {
+        return new OfflineQueueServiceImpl(membershipIndexService, userPresenceService, recentMessageCacheService,
+                messageRepository, userCardService, new SimpleMeterRegistry(), directory.toString(), 16,
+                COMPACT_THRESHOLD, 64);
+    }
+
+    private void reopen() throws IOException, InterruptedException {
+        offlineQueue.close();
+        offlineQueue = open();
+    }
+
+    private void send(long messageId) {
+        offlineQueue.onMessageSaved(ChatMessage.builder()
+                .id(messageId)
+                .conversationId(CONVERSATION_ID)
+                .sender(SENDER_ID)
+                .build());
+        // Thread appender không được start trong test → ghi ngay trên thread test
+        offlineQueue.appendPending();
+    }
+
+    private Path logFile() {
+        return directory.resolve(Integer.toString(USER_ID % 256)).resolve(USER_ID + ".log");
+    }
+
+    private static List<Long> ids(OfflineBatch batch) {
+        return batch.getMessages().stream().map(ChatMessage::getId).toList();
+    }
+}
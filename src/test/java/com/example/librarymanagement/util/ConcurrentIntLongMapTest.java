@@ -0,0 +1,147 @@
+package com.example.librarymanagement.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Bảng băm open addressing: xoá backward shift qua cuối bảng, grow qua ngưỡng load factor, addTo song song với drain
+class ConcurrentIntLongMapTest {
+    // Một segment, 16 ô: chỉ số ô "nhà" của key = hash & 15, grow khi chèn phần tử thứ 8
+    private static final int CAPACITY = 16;
+
+    @Test
+    void deleteInsideWrappedProbeChainKeepsKeysReachable() {
+        ConcurrentIntLongMap map = new ConcurrentIntLongMap(1, CAPACITY);
+        // Chuỗi probe: ô 14 ← a, ô 15 ← b, quấn về ô 0 ← c, ô 1 ← d (cả b, c, d cùng nhà 15), ô 2 ← e (nhà 0)
+        List<Integer> home15 = keysWithHome(15, 3);
+        int a = keysWithHome(14, 1).get(0);
+        int b = home15.get(0);
+        int c = home15.get(1);
+        int d = home15.get(2);
+        int e = keysWithHome(0, 1).get(0);
+        for (int key : new int[]{a, b, c, d, e}) {
+            map.put(key, key * 10L);
+        }
+
+        // Xoá b: c, d phải dồn ngược qua ranh giới 0 → 15; e (nhà 0) không được dồn lên trước nhà của nó
+        assertThat(map.remove(b)).isTrue();
+        assertValues(map, Map.of(a, a * 10L, c, c * 10L, d, d * 10L, e, e * 10L));
+
+        // Xoá phần tử đã quấn vòng rồi chèn lại: chuỗi vẫn liền mạch
+        assertThat(map.remove(c, c * 10L)).isTrue();
+        assertThat(map.remove(d, 0L)).isFalse();
+        map.put(b, 7L);
+        assertValues(map, Map.of(a, a * 10L, b, 7L, d, d * 10L, e, e * 10L));
+
+        assertThat(map.remove(a)).isTrue();
+        assertThat(map.remove(e)).isTrue();
+        assertValues(map, Map.of(b, 7L, d, d * 10L));
+    }
+
+    @Test
+    void growsAcrossResizeThresholdAndMatchesHashMap() {
+        ConcurrentIntLongMap map = new ConcurrentIntLongMap(1, 2);
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // Chèn / cộng / xoá ngẫu nhiên trên dải key nhỏ để có nhiều va chạm, nhiều lần grow và xoá giữa chuỗi probe
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000) - 2_500;
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    map.put(key, i);
+                    expected.put(key, (long) i);
+                }
+                case 1 -> assertThat(map.addTo(key, 3)).isEqualTo(expected.merge(key, 3L, Long::sum));
+                default -> assertThat(map.remove(key)).isEqualTo(expected.remove(key) != null);
+            }
+        }
+        assertValues(map, expected);
+
+        // Một lượng key lớn vượt xa capacity ban đầu
+        for (int key = 10_000; key < 60_000; key++) {
+            map.put(key, -key);
+            expected.put(key, (long) -key);
+        }
+        assertValues(map, expected);
+    }
+
+    @Test
+    void concurrentAddToAndDrainLoseNothing() throws Exception {
+        ConcurrentIntLongMap map = new ConcurrentIntLongMap();
+        int writers = 4;
+        int incrementsPerWriter = 200_000;
+        int keys = 1_000;
+        ConcurrentHashMap<Integer, Long> drained = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<Thread> writerThreads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            Thread thread = new Thread(() -> {
+                await(start);
+                for (int i = 0; i < incrementsPerWriter; i++) {
+                    map.addTo(i % keys, 1);
+                }
+            });
+            thread.start();
+            writerThreads.add(thread);
+        }
+        // Flush định kỳ kiểu write-behind chạy song song với các writer
+        Thread drainer = new Thread(() -> {
+            await(start);
+            while (writing.get()) {
+                map.drain((key, value) -> drained.merge(key, value, Long::sum));
+            }
+        });
+        drainer.start();
+
+        start.countDown();
+        for (Thread thread : writerThreads) {
+            thread.join();
+        }
+        writing.set(false);
+        drainer.join();
+        map.drain((key, value) -> drained.merge(key, value, Long::sum));
+
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(drained).hasSize(keys);
+        long perKey = (long) writers * incrementsPerWriter / keys;
+        assertThat(drained.values()).allMatch(total -> total == perKey);
+    }
+
+    private static void assertValues(ConcurrentIntLongMap map, Map<Integer, Long> expected) {
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key, Long.MIN_VALUE)).isEqualTo(value));
+        Map<Integer, Long> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        assertThat(iterated).isEqualTo(expected);
+    }
+
+    private static List<Integer> keysWithHome(int home, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 1; keys.size() < count; key++) {
+            if ((ConcurrentIntLongMap.hash(key) & (CAPACITY - 1)) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.librarymanagement.util;
+
+import com.example.librarymanagement.dto.chat.ChatMessage;
+import com.example.librarymanagement.util.MessageSegmentFormat.BlockEntry;
+import com.example.librarymanagement.util.MessageSegmentFormat.Encoded;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// encode → decodeIndex / decodeBlock phải trả lại đúng tin nhắn, kể cả các field null
+class MessageSegmentFormatTest {
+    private static final long CONVERSATION_ID = 42L;
+
+    @Test
+    void roundTripsAllBlocks() {
+        List<ChatMessage> messages = messages(25);
+        Encoded encoded = MessageSegmentFormat.encode(messages, 10);
+
+        BlockEntry[] blocks = MessageSegmentFormat.decodeIndex(indexBytes(encoded));
+
+        assertThat(blocks).extracting(BlockEntry::count).containsExactly(10, 10, 5);
+        assertThat(blocks).extracting(BlockEntry::firstId).containsExactly(1000L, 1010L, 1020L);
+        assertThat(blocks).extracting(BlockEntry::lastId).containsExactly(1009L, 1019L, 1024L);
+        assertThat(blocks[0].offset()).isZero();
+        assertThat(blocks[2].offset() + blocks[2].length()).isEqualTo(encoded.indexOffset());
+
+        List<ChatMessage> decoded = new ArrayList<>();
+        for (BlockEntry block : blocks) {
+            decoded.addAll(MessageSegmentFormat.decodeBlock(blockBytes(encoded, block), CONVERSATION_ID));
+        }
+        assertThat(decoded).isEqualTo(messages);
+    }
+
+    @Test
+    void keepsNullableFieldsAndDropsDeletedContent() {
+        List<ChatMessage> messages = List.of(
+                message(1L).build(),
+                message(2L).parentId(1L).updatedAt(5_000L).content("đã sửa").build(),
+                message(3L).parentId(2L).deletedAt(6_000L).content("nội dung đã xoá").build());
+
+        Encoded encoded = MessageSegmentFormat.encode(messages, 10);
+        BlockEntry[] blocks = MessageSegmentFormat.decodeIndex(indexBytes(encoded));
+        List<ChatMessage> decoded = MessageSegmentFormat.decodeBlock(blockBytes(encoded, blocks[0]), CONVERSATION_ID);
+
+        assertThat(decoded.get(0).getParentId()).isNull();
+        assertThat(decoded.get(0).getUpdatedAt()).isNull();
+        assertThat(decoded.get(0).getDeletedAt()).isNull();
+        assertThat(decoded.get(1).getParentId()).isEqualTo(1L);
+        assertThat(decoded.get(1).getUpdatedAt()).isEqualTo(5_000L);
+        assertThat(decoded.get(1).getContent()).isEqualTo("đã sửa");
+        assertThat(decoded.get(2).getDeletedAt()).isEqualTo(6_000L);
+        assertThat(decoded.get(2).getContent()).isNull();
+    }
+
+    @Test
+    void rejectsCorruptedIndex() {
+        Encoded encoded = MessageSegmentFormat.encode(messages(3), 10);
+        byte[] index = indexBytes(encoded);
+        index[index.length - 1] ^= 1;
+
+        assertThatThrownBy(() -> MessageSegmentFormat.decodeIndex(index)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static List<ChatMessage> messages(int count) {
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(1000L + i).parentId(i % 3 == 0 && i > 0 ? 1000L + i - 1 : null).build());
+        }
+        return messages;
+    }
+
+    private static ChatMessage.ChatMessageBuilder message(long id) {
+        return ChatMessage.builder()
+                .id(id)
+                .conversationId(CONVERSATION_ID)
+                .sender((int) (id % 5) + 1)
+                .content("message " + id)
+                .createdAt(1_700_000_000_000L + id);
+    }
+
+    private static byte[] indexBytes(Encoded encoded) {
+        return Arrays.copyOfRange(encoded.bytes(), (int) encoded.indexOffset(), encoded.bytes().length);
+    }
+
+    private static byte[] blockBytes(Encoded encoded, BlockEntry block) {
+        return Arrays.copyOfRange(encoded.bytes(), (int) block.offset(), (int) block.offset() + block.length());
+    }
+}
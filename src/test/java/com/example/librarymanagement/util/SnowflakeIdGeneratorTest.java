@@ -0,0 +1,128 @@
+package com.example.librarymanagement.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// ID phải duy nhất và tăng dần trên một node, kể cả khi hết sequence trong một ms hoặc đồng hồ bị lùi
+class SnowflakeIdGeneratorTest {
+    private static final long NODE_ID = 5;
+    private static final int SEQUENCE_PER_MS = 4096;
+    // 2025-01-01T00:00:00Z
+    private static final long NOW = 1735689600000L;
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasingPerThread() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(NODE_ID);
+        int threads = 8;
+        int idsPerThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Callable<long[]> task = () -> {
+            start.await();
+            long[] ids = new long[idsPerThread];
+            for (int i = 0; i < idsPerThread; i++) {
+                ids[i] = generator.nextId();
+            }
+            return ids;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = IntStream.range(0, threads).mapToObj(i -> executor.submit(task)).toList();
+            start.countDown();
+
+            Set<Long> unique = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0) {
+                        assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+                    }
+                    unique.add(ids[i]);
+                }
+            }
+            assertThat(unique).hasSize(threads * idsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsNextMillisecond() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(NODE_ID, () -> NOW);
+
+        long previous = -1;
+        for (int i = 0; i < SEQUENCE_PER_MS; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(NOW);
+            previous = id;
+        }
+
+        // Đồng hồ vẫn đứng ở NOW nhưng sequence đã hết → ID tiếp theo mang timestamp NOW + 1
+        long borrowed = generator.nextId();
+        assertThat(borrowed).isGreaterThan(previous);
+        assertThat(SnowflakeIdGenerator.timestampOf(borrowed)).isEqualTo(NOW + 1);
+    }
+
+    @Test
+    void clockGoingBackwardsKeepsIdsIncreasing() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(NODE_ID, clock::get);
+
+        long beforeJump = generator.nextId();
+        clock.set(NOW - 10_000);
+        long afterJump = generator.nextId();
+
+        assertThat(afterJump).isGreaterThan(beforeJump);
+        assertThat(SnowflakeIdGenerator.timestampOf(afterJump)).isEqualTo(NOW);
+
+        // Đồng hồ đuổi kịp → quay lại dùng thời gian thật
+        clock.set(NOW + 1);
+        long caughtUp = generator.nextId();
+        assertThat(caughtUp).isGreaterThan(afterJump);
+        assertThat(SnowflakeIdGenerator.timestampOf(caughtUp)).isEqualTo(NOW + 1);
+    }
+
+    @Test
+    void minIdAtRoundTripsThroughTimestamp() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(NODE_ID, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            long id = generator.nextId();
+            long timestamp = SnowflakeIdGenerator.timestampOf(id);
+
+            // Cursor theo thời gian: mọi ID sinh tại timestamp đều >= minIdAt(timestamp) và < minIdAt(timestamp + 1)
+            assertThat(SnowflakeIdGenerator.minIdAt(timestamp)).isLessThanOrEqualTo(id);
+            assertThat(SnowflakeIdGenerator.minIdAt(timestamp + 1)).isGreaterThan(id);
+            assertThat(SnowflakeIdGenerator.timestampOf(SnowflakeIdGenerator.minIdAt(timestamp))).isEqualTo(timestamp);
+            clock.addAndGet(1);
+        }
+        // Mốc trước EPOCH không sinh cursor âm
+        assertThat(SnowflakeIdGenerator.minIdAt(SnowflakeIdGenerator.EPOCH - 1)).isZero();
+    }
+
+    @Test
+    void nodeIdSeparatesGeneratorsAndIsValidated() {
+        long first = new SnowflakeIdGenerator(1, () -> NOW).nextId();
+        long second = new SnowflakeIdGenerator(2, () -> NOW).nextId();
+        assertThat(first).isNotEqualTo(second);
+        assertThat(SnowflakeIdGenerator.timestampOf(first)).isEqualTo(SnowflakeIdGenerator.timestampOf(second));
+
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(1024)).isInstanceOf(IllegalArgumentException.class);
+    }
+}